@@ -25,6 +25,7 @@ import play.libs.Crypto;
 import play.mvc.Http.Header;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
+import play.templates.TemplateLoader;
 
 /**
  * Plugin used for core tasks
@@ -284,6 +285,13 @@ public class CorePlugin extends PlayPlugin {
         return root;
     }
 
+    @Override
+    public void afterApplicationStart() {
+        if (Boolean.parseBoolean(Play.configuration.getProperty("play.templates.warmup", "false"))) {
+            TemplateLoader.warmup();
+        }
+    }
+
     @Override
     public void enhance(ApplicationClass applicationClass) throws Exception {
         Class<?>[] enhancers = new Class[]{
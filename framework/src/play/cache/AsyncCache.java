@@ -0,0 +1,191 @@
+package play.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import play.libs.F;
+import play.utils.PThreadFactory;
+
+/**
+ * Runs the cache operations in the background, and coalesces the gets issued within a short
+ * window into one bulk get, so that many concurrent gets cost one round trip.
+ */
+class AsyncCache {
+
+    final CacheImpl cache;
+    /** how long the gets are collected before being sent (milliseconds), 0 to send each get at once */
+    final long window;
+    final int maxKeys;
+    /** how long the synchronous gets wait for their batch (milliseconds) */
+    final long timeout;
+    final ScheduledThreadPoolExecutor executor;
+    private Batch pending;
+
+    AsyncCache(CacheImpl cache, long window, int maxKeys, int threads) {
+        this(cache, window, maxKeys, threads, window + 1000);
+    }
+
+    AsyncCache(CacheImpl cache, long window, int maxKeys, int threads, long timeout) {
+        this.cache = cache;
+        this.window = window;
+        this.maxKeys = maxKeys;
+        this.timeout = timeout;
+        this.executor = new ScheduledThreadPoolExecutor(threads, new PThreadFactory("cache"));
+    }
+
+    F.Promise<Object> get(final String key) {
+        final F.Promise<Object> promise = new F.Promise<Object>();
+        final Batch batch = batch(new String[]{key});
+        batch.result.onRedeem(new F.Action<F.Promise<Map<String, Object>>>() {
+            public void invoke(F.Promise<Map<String, Object>> result) {
+                try {
+                    Throwable error = batch.errors.get(key);
+                    if (error != null) {
+                        promise.invokeWithException(error);
+                        return;
+                    }
+                    promise.invoke(result.get().get(key));
+                } catch (Exception e) {
+                    promise.invokeWithException(e.getCause() == null ? e : e.getCause());
+                }
+            }
+        });
+        return promise;
+    }
+
+    F.Promise<Map<String, Object>> get(final String[] keys) {
+        final F.Promise<Map<String, Object>> promise = new F.Promise<Map<String, Object>>();
+        final Batch batch = batch(keys);
+        batch.result.onRedeem(new F.Action<F.Promise<Map<String, Object>>>() {
+            public void invoke(F.Promise<Map<String, Object>> result) {
+                try {
+                    Map<String, Object> values = result.get();
+                    Map<String, Object> found = new HashMap<String, Object>(keys.length);
+                    for (String key : keys) {
+                        Throwable error = batch.errors.get(key);
+                        if (error != null) {
+                            promise.invokeWithException(error);
+                            return;
+                        }
+                        if (values.get(key) != null) {
+                            found.put(key, values.get(key));
+                        }
+                    }
+                    promise.invoke(found);
+                } catch (Exception e) {
+                    promise.invokeWithException(e.getCause() == null ? e : e.getCause());
+                }
+            }
+        });
+        return promise;
+    }
+
+    F.Promise<Boolean> set(final String key, final Object value, final int expiration) {
+        final F.Promise<Boolean> promise = new F.Promise<Boolean>();
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    promise.invoke(cache.safeSet(key, value, expiration));
+                } catch (Throwable e) {
+                    promise.invokeWithException(e);
+                }
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Add the keys to the batch being collected
+     * @return The batch
+     */
+    private synchronized Batch batch(String[] keys) {
+        if (pending == null) {
+            pending = new Batch();
+            if (window > 0) {
+                final Batch batch = pending;
+                executor.schedule(new Runnable() {
+                    public void run() {
+                        send(batch);
+                    }
+                }, window, TimeUnit.MILLISECONDS);
+            }
+        }
+        Batch batch = pending;
+        for (String key : keys) {
+            batch.keys.add(key);
+        }
+        if (window <= 0 || batch.keys.size() >= maxKeys) {
+            pending = null;
+            executor.execute(batch);
+        }
+        return batch;
+    }
+
+    private void send(Batch batch) {
+        synchronized (this) {
+            if (pending != batch) {
+                // already sent because full
+                return;
+            }
+            pending = null;
+        }
+        batch.run();
+    }
+
+    void stop() {
+        executor.shutdown();
+    }
+
+    class Batch implements Runnable {
+
+        final Set<String> keys = new LinkedHashSet<String>();
+        final F.Promise<Map<String, Object>> result = new F.Promise<Map<String, Object>>();
+        /** the errors of the keys read one by one after the bulk get failed */
+        final Map<String, Throwable> errors = new HashMap<String, Throwable>();
+
+        public void run() {
+            try {
+                String[] all;
+                synchronized (AsyncCache.this) {
+                    all = keys.toArray(new String[keys.size()]);
+                }
+                Map<String, Object> values;
+                if (all.length == 1) {
+                    values = singleGet(all[0]);
+                } else {
+                    try {
+                        values = cache.get(all);
+                    } catch (RuntimeException e) {
+                        // One bad key (eg. too long for memcached) must not fail the gets of the other callers
+                        values = eachGet(all);
+                    }
+                }
+                result.invoke(values);
+            } catch (Throwable e) {
+                result.invokeWithException(e);
+            }
+        }
+
+        private Map<String, Object> eachGet(String[] all) {
+            Map<String, Object> values = new HashMap<String, Object>(all.length);
+            for (String key : all) {
+                try {
+                    values.put(key, cache.get(key));
+                } catch (RuntimeException e) {
+                    errors.put(key, e);
+                }
+            }
+            return values;
+        }
+
+        private Map<String, Object> singleGet(String key) {
+            Map<String, Object> values = new HashMap<String, Object>(2);
+            values.put(key, cache.get(key));
+            return values;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package play.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compact binary format for the common values: strings, boxed primitives, byte arrays,
+ * dates, the standard collections and the classes with a registered {@link Codec} (eg. the
+ * results cached by @CacheFor). The other values are written with the Java serialization.
+ *
+ * The values written by the Java serialization alone can be read too.
+ */
+public class BinarySerializer implements CacheSerializer {
+
+    static final byte NULL = 0;
+    static final byte STRING = 1;
+    static final byte INTEGER = 2;
+    static final byte LONG = 3;
+    static final byte TRUE = 4;
+    static final byte FALSE = 5;
+    static final byte DOUBLE = 6;
+    static final byte FLOAT = 7;
+    static final byte SHORT = 8;
+    static final byte BYTE = 9;
+    static final byte CHARACTER = 10;
+    static final byte BYTES = 11;
+    static final byte DATE = 12;
+    static final byte ARRAY_LIST = 13;
+    static final byte LINKED_LIST = 14;
+    static final byte HASH_SET = 15;
+    static final byte LINKED_HASH_SET = 16;
+    static final byte TREE_SET = 17;
+    static final byte HASH_MAP = 18;
+    static final byte LINKED_HASH_MAP = 19;
+    static final byte TREE_MAP = 20;
+    static final byte CODEC = 21;
+    static final byte JAVA = 22;
+    /** the first byte of a Java serialization stream */
+    static final byte JAVA_STREAM = (byte) 0xAC;
+
+    private static final Map<Class<?>, Codec<?>> codecs = new ConcurrentHashMap<Class<?>, Codec<?>>();
+    private static final JavaSerializer java = new JavaSerializer();
+
+    /**
+     * Writes and reads the values of a class
+     */
+    public static abstract class Codec<T> {
+
+        public abstract void write(T value, Output out) throws IOException;
+
+        public abstract T read(Input in) throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * Use a codec for the values of a class (but not of its subclasses). A codec is usually
+     * registered by a static initializer of the class, as the class is loaded by name before
+     * its values are read.
+     */
+    public static <T> void register(Class<T> type, Codec<T> codec) {
+        codecs.put(type, codec);
+    }
+
+    public byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        Output out = new Output(bytes);
+        out.writeValue(value);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        if (data.length > 0 && data[0] == JAVA_STREAM) {
+            return java.deserialize(data);
+        }
+        return new Input(new ByteArrayInputStream(data)).readValue();
+    }
+
+    public static class Output extends DataOutputStream {
+
+        public Output(OutputStream out) {
+            super(out);
+        }
+
+        public void writeString(String s) throws IOException {
+            if (s == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] utf8 = s.getBytes("utf-8");
+            writeInt(utf8.length);
+            write(utf8);
+        }
+
+        public void writeBytes(byte[] b) throws IOException {
+            writeInt(b.length);
+            write(b);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void writeValue(Object value) throws IOException {
+            if (value == null) {
+                writeByte(NULL);
+                return;
+            }
+            Class<?> type = value.getClass();
+            if (type == String.class) {
+                writeByte(STRING);
+                writeString((String) value);
+            } else if (type == Integer.class) {
+                writeByte(INTEGER);
+                writeInt((Integer) value);
+            } else if (type == Long.class) {
+                writeByte(LONG);
+                writeLong((Long) value);
+            } else if (type == Boolean.class) {
+                writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (type == Double.class) {
+                writeByte(DOUBLE);
+                writeDouble((Double) value);
+            } else if (type == Float.class) {
+                writeByte(FLOAT);
+                writeFloat((Float) value);
+            } else if (type == Short.class) {
+                writeByte(SHORT);
+                writeShort((Short) value);
+            } else if (type == Byte.class) {
+                writeByte(BYTE);
+                writeByte((Byte) value);
+            } else if (type == Character.class) {
+                writeByte(CHARACTER);
+                writeChar((Character) value);
+            } else if (type == byte[].class) {
+                writeByte(BYTES);
+                writeBytes((byte[]) value);
+            } else if (type == Date.class) {
+                writeByte(DATE);
+                writeLong(((Date) value).getTime());
+            } else if (type == ArrayList.class) {
+                writeCollection(ARRAY_LIST, (Collection<?>) value);
+            } else if (type == LinkedList.class) {
+                writeCollection(LINKED_LIST, (Collection<?>) value);
+            } else if (type == HashSet.class) {
+                writeCollection(HASH_SET, (Collection<?>) value);
+            } else if (type == LinkedHashSet.class) {
+                writeCollection(LINKED_HASH_SET, (Collection<?>) value);
+            } else if (type == TreeSet.class && ((TreeSet<?>) value).comparator() == null) {
+                writeCollection(TREE_SET, (Collection<?>) value);
+            } else if (type == HashMap.class) {
+                writeMap(HASH_MAP, (Map<?, ?>) value);
+            } else if (type == LinkedHashMap.class) {
+                writeMap(LINKED_HASH_MAP, (Map<?, ?>) value);
+            } else if (type == TreeMap.class && ((TreeMap<?, ?>) value).comparator() == null) {
+                writeMap(TREE_MAP, (Map<?, ?>) value);
+            } else if (codecs.containsKey(type)) {
+                writeByte(CODEC);
+                writeString(type.getName());
+                ((Codec<Object>) codecs.get(type)).write(value, this);
+            } else {
+                writeByte(JAVA);
+                writeBytes(java.serialize(value));
+            }
+        }
+
+        private void writeCollection(byte tag, Collection<?> values) throws IOException {
+            writeByte(tag);
+            writeInt(values.size());
+            for (Object value : values) {
+                writeValue(value);
+            }
+        }
+
+        private void writeMap(byte tag, Map<?, ?> values) throws IOException {
+            writeByte(tag);
+            writeInt(values.size());
+            for (Map.Entry<?, ?> entry : values.entrySet()) {
+                writeValue(entry.getKey());
+                writeValue(entry.getValue());
+            }
+        }
+    }
+
+    public static class Input extends DataInputStream {
+
+        public Input(InputStream in) {
+            super(in);
+        }
+
+        public String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] utf8 = new byte[length];
+            readFully(utf8);
+            return new String(utf8, "utf-8");
+        }
+
+        public byte[] readBytes() throws IOException {
+            byte[] b = new byte[readInt()];
+            readFully(b);
+            return b;
+        }
+
+        public Object readValue() throws IOException, ClassNotFoundException {
+            byte tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case STRING:
+                    return readString();
+                case INTEGER:
+                    return readInt();
+                case LONG:
+                    return readLong();
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case DOUBLE:
+                    return readDouble();
+                case FLOAT:
+                    return readFloat();
+                case SHORT:
+                    return readShort();
+                case BYTE:
+                    return readByte();
+                case CHARACTER:
+                    return readChar();
+                case BYTES:
+                    return readBytes();
+                case DATE:
+                    return new Date(readLong());
+                case ARRAY_LIST:
+                    int size = readInt();
+                    return readCollection(new ArrayList<Object>(size), size);
+                case LINKED_LIST:
+                    return readCollection(new LinkedList<Object>(), readInt());
+                case HASH_SET:
+                    size = readInt();
+                    return readCollection(new HashSet<Object>(size * 4 / 3 + 1), size);
+                case LINKED_HASH_SET:
+                    size = readInt();
+                    return readCollection(new LinkedHashSet<Object>(size * 4 / 3 + 1), size);
+                case TREE_SET:
+                    return readCollection(new TreeSet<Object>(), readInt());
+                case HASH_MAP:
+                    size = readInt();
+                    return readMap(new HashMap<Object, Object>(size * 4 / 3 + 1), size);
+                case LINKED_HASH_MAP:
+                    size = readInt();
+                    return readMap(new LinkedHashMap<Object, Object>(size * 4 / 3 + 1), size);
+                case TREE_MAP:
+                    return readMap(new TreeMap<Object, Object>(), readInt());
+                case CODEC:
+                    String name = readString();
+                    Class<?> type = Class.forName(name, true, JavaSerializer.classLoader());
+                    Codec<?> codec = codecs.get(type);
+                    if (codec == null) {
+                        throw new IOException("No codec for " + name);
+                    }
+                    return codec.read(this);
+                case JAVA:
+                    return java.deserialize(readBytes());
+                default:
+                    throw new IOException("Bad value type " + tag);
+            }
+        }
+
+        private Collection<Object> readCollection(Collection<Object> values, int size) throws IOException, ClassNotFoundException {
+            for (int i = 0; i < size; i++) {
+                values.add(readValue());
+            }
+            return values;
+        }
+
+        private Map<Object, Object> readMap(Map<Object, Object> values, int size) throws IOException, ClassNotFoundException {
+            for (int i = 0; i < size; i++) {
+                values.put(readValue(), readValue());
+            }
+            return values;
+        }
+    }
+}
@@ -2,11 +2,21 @@ package play.cache;
 
 import java.io.NotSerializableException;
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import play.Logger;
 import play.Play;
 import play.exceptions.CacheException;
+import play.exceptions.ConfigurationException;
+import play.libs.Codec;
+import play.libs.F;
+import play.libs.IO;
 import play.libs.Time;
 
 /**
@@ -26,6 +36,22 @@ public abstract class Cache {
      */
     public static CacheImpl forcedCacheImpl;
 
+    /**
+     * How the values are turned into bytes by the caches storing them outside of the JVM
+     */
+    public static CacheSerializer serializer = new CompressingSerializer(new JavaSerializer(), 16384);
+
+    /**
+     * Runs the asynchronous operations, and coalesces the gets
+     */
+    static volatile AsyncCache asyncCache;
+
+    /** the prefix of the keys of the tag generations */
+    static final String TAG_PREFIX = "__play.tag:";
+    private static final Random generations = new Random();
+    /** the longest key kept as is, leaving room for the suffixes added to it (|lock, |stale...) */
+    static final int MAX_KEY_LENGTH = 200;
+
     /**
      * Add an element only if it doesn't exist.
      * @param key Element key
@@ -171,6 +197,10 @@ public abstract class Cache {
      * @return The element value or null
      */
     public static Object get(String key) {
+        AsyncCache async = asyncCache();
+        if (async.window > 0) {
+            return await(async.get(key), async.timeout, null);
+        }
         return cacheImpl.get(key);
     }
 
@@ -180,9 +210,115 @@ public abstract class Cache {
      * @return Map of keys & values
      */
     public static Map<String, Object> get(String... key) {
+        AsyncCache async = asyncCache();
+        if (async.window > 0) {
+            return await(async.get(key), async.timeout, Collections.<String, Object>emptyMap());
+        }
         return cacheImpl.get(key);
     }
 
+    /**
+     * Retrieve an object, computing and caching it when missing. The value is computed by a
+     * single thread of a single node at a time, the others wait for it.
+     * @param key The element key
+     * @param expiration Ex: 10s, 3mn, 8h
+     * @param compute Computes the value (a null value is not cached)
+     * @return The element value
+     */
+    public static <T> T getOrElse(String key, String expiration, Callable<T> compute) {
+        return CacheAside.getOrElse(key, expiration, null, compute);
+    }
+
+    /**
+     * Retrieve an object, computing and caching it when missing. While a node computes it, the
+     * other nodes are served the previous value if it has expired for less than stale.
+     * @param key The element key
+     * @param expiration Ex: 10s, 3mn, 8h
+     * @param stale How long the previous value can be served after its expiration. Ex: 1mn
+     * @param compute Computes the value (a null value is not cached)
+     * @return The element value
+     */
+    public static <T> T getOrElse(String key, String expiration, String stale, Callable<T> compute) {
+        return CacheAside.getOrElse(key, expiration, stale, compute);
+    }
+
+    /**
+     * Retrieve an object without waiting, eg. to use with await().
+     * @param key The element key
+     * @return The promise of the element value or null
+     */
+    public static F.Promise<Object> getAsync(String key) {
+        return asyncCache().get(key);
+    }
+
+    /**
+     * Bulk retrieve without waiting, eg. to use with await().
+     * @param keys List of keys
+     * @return The promise of the map of the found keys & values
+     */
+    public static F.Promise<Map<String, Object>> getBulkAsync(String... keys) {
+        return asyncCache().get(keys);
+    }
+
+    /**
+     * Set an element without waiting.
+     * @param key Element key
+     * @param value Element value
+     * @param expiration Ex: 10s, 3mn, 8h
+     * @return The promise of whether the element has been cached
+     */
+    public static F.Promise<Boolean> setAsync(String key, Object value, String expiration) {
+        checkSerializable(value);
+        return asyncCache().set(key, value, Time.parseDuration(expiration));
+    }
+
+    /**
+     * Set an element without waiting and store it indefinitely.
+     * @param key Element key
+     * @param value Element value
+     * @return The promise of whether the element has been cached
+     */
+    public static F.Promise<Boolean> setAsync(String key, Object value) {
+        return setAsync(key, value, null);
+    }
+
+    static AsyncCache asyncCache() {
+        AsyncCache async = asyncCache;
+        if (async == null || async.cache != cacheImpl) {
+            synchronized (Cache.class) {
+                if (asyncCache == null || asyncCache.cache != cacheImpl) {
+                    if (asyncCache != null) {
+                        asyncCache.stop();
+                    }
+                    asyncCache = newAsyncCache(cacheImpl);
+                }
+                async = asyncCache;
+            }
+        }
+        return async;
+    }
+
+    private static AsyncCache newAsyncCache(CacheImpl cache) {
+        long window = Long.parseLong(Play.configuration.getProperty("cache.coalesce.window", "0"));
+        int maxKeys = Integer.parseInt(Play.configuration.getProperty("cache.coalesce.maxKeys", "100"));
+        int threads = Integer.parseInt(Play.configuration.getProperty("cache.async.threads", "2"));
+        long timeout = Long.parseLong(Play.configuration.getProperty("memcached.timeout", "1000"));
+        return new AsyncCache(cache, window, maxKeys, threads, window + timeout);
+    }
+
+    private static <T> T await(F.Promise<T> promise, long timeout, T defaultValue) {
+        try {
+            return promise.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Like a read timing out in memcached: a miss
+            return defaultValue;
+        } catch (InterruptedException e) {
+            throw new CacheException("Interrupted while reading the cache", e);
+        } catch (ExecutionException e) {
+            throw new CacheException("Error while reading the cache", e.getCause());
+        }
+    }
+
     /**
      * Delete an element from the cache.
      * @param key The element key
@@ -201,6 +337,88 @@ public abstract class Cache {
         return cacheImpl.safeDelete(key);
     }
 
+    /**
+     * A key usable with every implementation: memcached keys are limited to 250 bytes, without
+     * spaces or control characters. An invalid key is replaced by its prefix (up to the first ':')
+     * followed by the MD5 of the key.
+     * @param key The element key
+     * @return The key itself if it is valid, or its hash
+     */
+    public static String safeKey(String key) {
+        if (isSafe(key, 0, key.length()) && key.length() <= MAX_KEY_LENGTH) {
+            return key;
+        }
+        int prefix = key.indexOf(':');
+        if (prefix > 0 && prefix < 32 && isSafe(key, 0, prefix)) {
+            return key.substring(0, prefix + 1) + Codec.hexMD5(key);
+        }
+        return "hash:" + Codec.hexMD5(key);
+    }
+
+    private static boolean isSafe(String key, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = key.charAt(i);
+            if (c <= ' ' || c >= 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The key to use for a value depending on tags (eg. "product:42"). Each tag has a generation
+     * stored in the cache: invalidating the tag changes its generation, and so the keys of all
+     * the values depending on it, which are then no longer found and expire.
+     * @param key The element key
+     * @param tags The tags of the element
+     * @return The key including the current generations of the tags
+     */
+    public static String tagged(String key, String... tags) {
+        if (tags.length == 0) {
+            return key;
+        }
+        String[] generationKeys = new String[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            generationKeys[i] = generationKey(tags[i]);
+        }
+        Map<String, Object> generations = get(generationKeys);
+        StringBuilder tagged = new StringBuilder(key).append("|tags");
+        for (String generationKey : generationKeys) {
+            Object generation = generations.get(generationKey);
+            if (generation == null) {
+                generation = newGeneration();
+                if (!cacheImpl.safeAdd(generationKey, generation, Time.parseDuration(null))) {
+                    // Created by someone else in the meantime
+                    Object existing = cacheImpl.get(generationKey);
+                    generation = existing == null ? generation : existing;
+                }
+            }
+            tagged.append(':').append(generation);
+        }
+        return tagged.toString();
+    }
+
+    /**
+     * Invalidate all the elements cached with tagged keys depending on these tags.
+     * @param tags The tags
+     */
+    public static void invalidate(String... tags) {
+        for (String tag : tags) {
+            cacheImpl.set(generationKey(tag), newGeneration(), Time.parseDuration(null));
+        }
+    }
+
+    /**
+     * @return The key of the generation of a tag, hashed if the tag has spaces (eg. from a request parameter)
+     */
+    static String generationKey(String tag) {
+        return safeKey(TAG_PREFIX + tag);
+    }
+
+    private static String newGeneration() {
+        return Long.toString(generations.nextLong() & Long.MAX_VALUE, 36);
+    }
+
     /**
      * Clear all data from cache.
      */
@@ -224,6 +442,7 @@ public abstract class Cache {
      * Initialize the cache system.
      */
     public static void init() {
+        serializer = newSerializer();
         if(forcedCacheImpl != null) {
             cacheImpl = forcedCacheImpl;
             return;
@@ -232,20 +451,49 @@ public abstract class Cache {
             try {
                 cacheImpl = MemcachedImpl.getInstance(true);
                 Logger.info("Connected to memcached");
+                if (Play.configuration.getProperty("memcached.nearcache", "disabled").equals("enabled")) {
+                    cacheImpl = new NearCacheImpl(cacheImpl);
+                }
             } catch (Exception e) {
                 Logger.error(e, "Error while connecting to memcached");
                 Logger.warn("Fallback to local cache");
                 cacheImpl = EhCacheImpl.newInstance();
             }
+        } else if (Play.configuration.getProperty("cache.offheap", "disabled").equals("enabled")) {
+            cacheImpl = OffHeapCacheImpl.newInstance();
         } else {
             cacheImpl = EhCacheImpl.newInstance();
         }
     }
 
+    static CacheSerializer newSerializer() {
+        String name = Play.configuration.getProperty("cache.serializer", "java");
+        CacheSerializer serializer;
+        if (name.equals("java")) {
+            serializer = new JavaSerializer();
+        } else if (name.equals("binary")) {
+            serializer = new BinarySerializer();
+        } else {
+            try {
+                serializer = (CacheSerializer) Class.forName(name, true, Play.classloader).newInstance();
+            } catch (Exception e) {
+                throw new ConfigurationException("Cannot create the cache serializer " + name + ": " + e);
+            }
+        }
+        String threshold = Play.configuration.getProperty("cache.compression.threshold", "16kb");
+        return new CompressingSerializer(serializer, threshold.equals("none") ? -1 : (int) IO.parseSize(threshold, "cache.compression.threshold"));
+    }
+
     /**
      * Stop the cache system.
      */
     public static void stop() {
+        synchronized (Cache.class) {
+            if (asyncCache != null) {
+                asyncCache.stop();
+                asyncCache = null;
+            }
+        }
         cacheImpl.stop();
     }
     
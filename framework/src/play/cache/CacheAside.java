@@ -0,0 +1,201 @@
+package play.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.jamonapi.Monitor;
+import com.jamonapi.MonitorFactory;
+
+import play.exceptions.UnexpectedException;
+import play.libs.Codec;
+import play.libs.Time;
+
+/**
+ * The Cache.getOrElse() handling of a key.
+ *
+ * A missing value is computed once per node. Across the nodes, the one adding the lease key with
+ * Cache.safeAdd() computes it. The other threads and nodes are served the stale copy of the
+ * value if there is one. Otherwise they wait for the new one for WAIT at most, then compute it
+ * too, so that a slow computation does not hold the invoker threads.
+ *
+ * The hits, misses, stale values served and computations are counted by key prefix in the
+ * monitors ("Cache hit: user" for the key user:42).
+ *
+ * The leases are also used by @CacheFor, around the invocation of the action.
+ */
+public class CacheAside {
+
+    /** how long a node may hold the lease of a key */
+    public static final int LEASE = 30;
+    /** how long (in ms) a thread waits for a value computed elsewhere before computing it too */
+    public static final int WAIT = 1000;
+    /** the number of prefixes monitored, the keys with other prefixes are monitored together */
+    static final int MAX_PREFIXES = 200;
+
+    private static final ConcurrentMap<String, FutureTask<Object>> inflight = new ConcurrentHashMap<String, FutureTask<Object>>();
+    private static final ConcurrentMap<String, String> prefixes = new ConcurrentHashMap<String, String>();
+
+    @SuppressWarnings("unchecked")
+    static <T> T getOrElse(final String key, final String expiration, final String stale, final Callable<T> compute) {
+        final String prefix = prefix(key);
+        Object value = Cache.get(key);
+        if (value != null) {
+            count("hit", prefix);
+            return (T) value;
+        }
+        count("miss", prefix);
+        FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() throws Exception {
+                return load(key, expiration, stale, compute, prefix);
+            }
+        });
+        FutureTask<Object> existing = inflight.putIfAbsent(key, task);
+        try {
+            if (existing != null) {
+                Object previous = stale(key, stale, prefix);
+                if (previous != null) {
+                    return (T) previous;
+                }
+                try {
+                    return (T) existing.get(WAIT, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // The computation is slow, compute it too
+                    return (T) compute(key, expiration, stale, compute, prefix);
+                }
+            }
+            task.run();
+            return (T) task.get();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            throw new UnexpectedException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new UnexpectedException(e.getCause());
+        } catch (Exception e) {
+            throw new UnexpectedException(e);
+        } finally {
+            if (existing == null) {
+                inflight.remove(key, task);
+            }
+        }
+    }
+
+    private static Object load(String key, String expiration, String stale, Callable<?> compute, String prefix) throws Exception {
+        String lease = lease(key);
+        if (lease == null) {
+            // Another node is computing it
+            Object previous = stale(key, stale, prefix);
+            if (previous != null) {
+                return previous;
+            }
+            long deadline = System.currentTimeMillis() + WAIT;
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+                Object value = Cache.get(key);
+                if (value != null) {
+                    return value;
+                }
+                if (!isLeased(key)) {
+                    // The other node gave up
+                    break;
+                }
+            }
+        }
+        try {
+            return compute(key, expiration, stale, compute, prefix);
+        } finally {
+            if (lease != null) {
+                release(key, lease);
+            }
+        }
+    }
+
+    private static Object compute(String key, String expiration, String stale, Callable<?> compute, String prefix) throws Exception {
+        Monitor monitor = MonitorFactory.start("Cache compute: " + prefix);
+        Object value;
+        try {
+            value = compute.call();
+        } finally {
+            monitor.stop();
+        }
+        if (value != null) {
+            Cache.set(key, value, expiration);
+            if (stale != null) {
+                Cache.set(staleKey(key), value, (Time.parseDuration(expiration) + Time.parseDuration(stale)) + "s");
+            }
+        }
+        return value;
+    }
+
+    private static Object stale(String key, String stale, String prefix) {
+        if (stale == null) {
+            return null;
+        }
+        Object value = Cache.get(staleKey(key));
+        if (value != null) {
+            count("stale", prefix);
+        }
+        return value;
+    }
+
+    /**
+     * Take the lease of a key, for LEASE seconds at most
+     * @return The token to release it with, or null if another node holds it
+     */
+    public static String lease(String key) {
+        String token = Codec.UUID();
+        return Cache.safeAdd(leaseKey(key), token, LEASE + "s") ? token : null;
+    }
+
+    /**
+     * Release the lease of a key, unless it has expired and been taken by another node since
+     * (the check and the delete are not atomic, but the window is short)
+     */
+    public static void release(String key, String token) {
+        if (token.equals(Cache.get(leaseKey(key)))) {
+            Cache.delete(leaseKey(key));
+        }
+    }
+
+    public static boolean isLeased(String key) {
+        return Cache.get(leaseKey(key)) != null;
+    }
+
+    static String leaseKey(String key) {
+        return key + "|lease";
+    }
+
+    static String staleKey(String key) {
+        return key + "|stale";
+    }
+
+    /**
+     * @return The key up to the first separator (:._-|/)
+     */
+    static String prefix(String key) {
+        int end = 0;
+        while (end < key.length() && ":._-|/".indexOf(key.charAt(end)) < 0) {
+            end++;
+        }
+        String prefix = key.substring(0, end);
+        if (!prefixes.containsKey(prefix)) {
+            if (prefixes.size() >= MAX_PREFIXES) {
+                return "*";
+            }
+            prefixes.putIfAbsent(prefix, prefix);
+        }
+        return prefix;
+    }
+
+    private static void count(String event, String prefix) {
+        MonitorFactory.add("Cache " + event + ": " + prefix, "hits", 1);
+    }
+}
@@ -11,10 +11,50 @@ import java.lang.annotation.Target;
  * <p>If a time is not specified, the results will be cached for 1 hour by default.
  *
  * <p>Example: <code>@CacheFor("1h")</code>
+ *
+ * <p>Only one request at a time (per key, across all nodes sharing the cache) computes an
+ * expired result; concurrent requests wait for it, or are served the previous result during
+ * the <code>staleWhileRevalidate</code> window. Served results carry an ETag, and a matching
+ * <code>If-None-Match</code> is answered with 304 Not Modified.
+ *
+ * <p>Example: <code>@CacheFor(value = "10mn", staleWhileRevalidate = "1mn", staleIfError = "1h", vary = "Accept-Encoding", varyLang = true)</code>
+ *
+ * <p>Example: <code>@CacheFor(value = "1d", tags = "product:{id}")</code>, dropped by <code>Cache.invalidate("product:" + id)</code>
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface CacheFor {
     String value() default "1h";
     String id() default "";
+
+    /**
+     * How long an expired result may still be served while a single request computes the new one
+     */
+    String staleWhileRevalidate() default "";
+
+    /**
+     * How long an expired result may still be served when computing the new one fails
+     */
+    String staleIfError() default "";
+
+    /**
+     * Request headers whose values select a distinct cached result
+     */
+    String[] vary() default {};
+
+    /**
+     * Cache a distinct result per request format
+     */
+    boolean varyFormat() default false;
+
+    /**
+     * Cache a distinct result per language
+     */
+    boolean varyLang() default false;
+
+    /**
+     * Tags of the result, invalidated with Cache.invalidate(). {name} is replaced by the value
+     * of the request parameter name, eg. "product:{id}"
+     */
+    String[] tags() default {};
 }
@@ -0,0 +1,16 @@
+package play.cache;
+
+import java.io.IOException;
+
+/**
+ * Turns the cached values into bytes, for the caches storing them outside of the JVM.
+ * An implementation is named by cache.serializer, and must have a public constructor without
+ * arguments.
+ * @see play.cache.Cache#serializer
+ */
+public interface CacheSerializer {
+
+    public byte[] serialize(Object value) throws IOException;
+
+    public Object deserialize(byte[] data) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,74 @@
+package play.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the serialized values bigger than a threshold, with a fast gzip.
+ *
+ * The values that are not compressed are left as written by the serializer, so that they can be
+ * read by the nodes not knowing about the compression. The compressed values are recognized by
+ * the gzip header, which the built-in serializers never write first. In memcached, the compressed
+ * values are marked by the transcoder flag instead, as before this serializer existed.
+ */
+public class CompressingSerializer implements CacheSerializer {
+
+    final CacheSerializer serializer;
+    /** the size from which the values are compressed, or -1 to never compress them */
+    final int threshold;
+
+    public CompressingSerializer(CacheSerializer serializer, int threshold) {
+        this.serializer = serializer;
+        this.threshold = threshold;
+    }
+
+    public byte[] serialize(Object value) throws IOException {
+        byte[] data = serializer.serialize(value);
+        if (threshold >= 0 && data.length > threshold) {
+            byte[] compressed = compress(data);
+            if (compressed.length < data.length) {
+                return compressed;
+            }
+        }
+        return data;
+    }
+
+    public Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        return serializer.deserialize(isCompressed(data) ? decompress(data) : data);
+    }
+
+    static boolean isCompressed(byte[] data) {
+        return data.length > 2 && data[0] == (byte) GZIPInputStream.GZIP_MAGIC && data[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
+    static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 32);
+        GZIPOutputStream out = new GZIPOutputStream(bytes, 8192) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        };
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    static byte[] decompress(byte[] data) throws IOException {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data), 8192);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
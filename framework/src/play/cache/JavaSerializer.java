@@ -0,0 +1,42 @@
+package play.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+import play.Play;
+
+/**
+ * The Java serialization, resolving the classes with the application classloader
+ */
+public class JavaSerializer implements CacheSerializer {
+
+    public byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bos);
+        out.writeObject(value);
+        out.close();
+        return bos.toByteArray();
+    }
+
+    public Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        return deserialize(data, 0, data.length);
+    }
+
+    Object deserialize(byte[] data, int offset, int length) throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(data, offset, length)) {
+
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                return Class.forName(desc.getName(), false, classLoader());
+            }
+        }.readObject();
+    }
+
+    static ClassLoader classLoader() {
+        return Play.classloader == null ? JavaSerializer.class.getClassLoader() : Play.classloader;
+    }
+}
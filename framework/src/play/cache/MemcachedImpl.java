@@ -1,21 +1,22 @@
 package play.cache;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.ObjectStreamClass;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.spy.memcached.AddrUtil;
 import net.spy.memcached.ConnectionFactory;
 import net.spy.memcached.ConnectionFactoryBuilder;
+import net.spy.memcached.FailureMode;
+import net.spy.memcached.HashAlgorithm;
 import net.spy.memcached.MemcachedClient;
 import net.spy.memcached.auth.AuthDescriptor;
 import net.spy.memcached.auth.PlainCallbackHandler;
@@ -27,13 +28,27 @@ import play.exceptions.ConfigurationException;
 /**
  * Memcached implementation (using http://code.google.com/p/spymemcached/)
  *
+ * The keys are spread over the servers by consistent hashing (Ketama), so that adding or removing
+ * a server only moves the keys of this server. The hot keys can be written to several copies
+ * (key#1, key#2...), likely on other servers, and each read goes to one of them.
+ *
  * expiration is specified in seconds
  */
 public class MemcachedImpl implements CacheImpl {
 
     private static MemcachedImpl uniqueInstance;
 
-    MemcachedClient client;
+    /** the clients, each with its own connection to every server, used in turn */
+    MemcachedClient[] clients;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /** how long, in milliseconds, the safe operations and the gets wait for memcached */
+    long timeout;
+    /** the number of copies of the replicated keys, besides the key itself */
+    int replicas;
+    /** the prefixes of the replicated keys */
+    List<String> replicated = new ArrayList<String>();
+    private final Random random = new Random();
 
     SerializingTranscoder tc;
 
@@ -60,14 +75,7 @@ public class MemcachedImpl implements CacheImpl {
             @Override
             protected Object deserialize(byte[] data) {
                 try {
-                    return new ObjectInputStream(new ByteArrayInputStream(data)) {
-
-                        @Override
-                        protected Class<?> resolveClass(ObjectStreamClass desc)
-                                throws IOException, ClassNotFoundException {
-                            return Class.forName(desc.getName(), false, Play.classloader);
-                        }
-                    }.readObject();
+                    return Cache.serializer.deserialize(data);
                 } catch (Exception e) {
                     Logger.error(e, "Could not deserialize");
                 }
@@ -77,14 +85,26 @@ public class MemcachedImpl implements CacheImpl {
             @Override
             protected byte[] serialize(Object object) {
                 try {
-                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                    new ObjectOutputStream(bos).writeObject(object);
-                    return bos.toByteArray();
+                    CacheSerializer serializer = Cache.serializer;
+                    if (serializer instanceof CompressingSerializer) {
+                        // Compressed by the transcoder, with a flag that all the nodes understand
+                        serializer = ((CompressingSerializer) serializer).serializer;
+                    }
+                    return serializer.serialize(object);
                 } catch (IOException e) {
                     Logger.error(e, "Could not serialize");
                 }
                 return null;
             }
+
+            @Override
+            protected byte[] compress(byte[] in) {
+                try {
+                    return CompressingSerializer.compress(in);
+                } catch (IOException e) {
+                    throw new RuntimeException("Could not compress", e);
+                }
+            }
         };
         initClient();
     }
@@ -107,6 +127,56 @@ public class MemcachedImpl implements CacheImpl {
             throw new ConfigurationException("Bad configuration for memcached: missing host(s)");
         }
         
+        int threshold = Cache.serializer instanceof CompressingSerializer ? ((CompressingSerializer) Cache.serializer).threshold : -1;
+        tc.setCompressionThreshold(threshold < 0 ? Integer.MAX_VALUE : threshold);
+        timeout = Long.parseLong(Play.configuration.getProperty("memcached.timeout", "1000"));
+        replicas = Integer.parseInt(Play.configuration.getProperty("memcached.replicas", "0"));
+        replicated.clear();
+        for (String prefix : Play.configuration.getProperty("memcached.replicas.keys", "").split(",")) {
+            if (prefix.trim().length() > 0) {
+                replicated.add(prefix.trim());
+            }
+        }
+        if (replicas > 0 && replicated.isEmpty()) {
+            Logger.warn("memcached.replicas is set but no key is replicated: list their prefixes in memcached.replicas.keys");
+        }
+        int connections = Integer.parseInt(Play.configuration.getProperty("memcached.connections", "1"));
+        if (connections < 1) {
+            throw new ConfigurationException("Bad configuration for memcached: memcached.connections must be at least 1");
+        }
+        ConnectionFactory cf = connectionFactory();
+        MemcachedClient[] newClients = new MemcachedClient[connections];
+        for (int i = 0; i < connections; i++) {
+            newClients[i] = new MemcachedClient(cf, addrs);
+        }
+        clients = newClients;
+    }
+
+    static ConnectionFactory connectionFactory() {
+        ConnectionFactoryBuilder builder = new ConnectionFactoryBuilder();
+        // All the nodes must spread the keys the same way: modulo, as before, unless they all switch
+        String locator = Play.configuration.getProperty("memcached.locator", "modulo");
+        if (locator.equals("consistent")) {
+            builder.setLocatorType(ConnectionFactoryBuilder.Locator.CONSISTENT).setHashAlg(HashAlgorithm.KETAMA_HASH);
+        } else if (locator.equals("modulo")) {
+            builder.setLocatorType(ConnectionFactoryBuilder.Locator.ARRAY_MOD);
+        } else {
+            throw new ConfigurationException("Bad configuration for memcached: unknown locator " + locator);
+        }
+        String failureMode = Play.configuration.getProperty("memcached.failureMode", "redistribute");
+        if (failureMode.equals("redistribute")) {
+            builder.setFailureMode(FailureMode.Redistribute);
+        } else if (failureMode.equals("retry")) {
+            builder.setFailureMode(FailureMode.Retry);
+        } else if (failureMode.equals("cancel")) {
+            builder.setFailureMode(FailureMode.Cancel);
+        } else {
+            throw new ConfigurationException("Bad configuration for memcached: unknown failure mode " + failureMode);
+        }
+        long opTimeout = Long.parseLong(Play.configuration.getProperty("memcached.timeout", "1000"));
+        // Do not wait longer than the timeout for room in the queue of a slow server either
+        builder.setOpTimeout(opTimeout).setOpQueueMaxBlockTime(opTimeout);
+
         if (Play.configuration.containsKey("memcached.user")) {
             String memcacheUser = Play.configuration.getProperty("memcached.user");
             String memcachePassword = Play.configuration.getProperty("memcached.password");
@@ -117,106 +187,186 @@ public class MemcachedImpl implements CacheImpl {
             // Use plain SASL to connect to memcached
             AuthDescriptor ad = new AuthDescriptor(new String[]{"PLAIN"},
                                     new PlainCallbackHandler(memcacheUser, memcachePassword));
-            ConnectionFactory cf = new ConnectionFactoryBuilder()
-                                        .setProtocol(ConnectionFactoryBuilder.Protocol.BINARY)
-                                        .setAuthDescriptor(ad)
-                                        .build();
-            
-            client = new MemcachedClient(cf, addrs);
-        } else {
-            client = new MemcachedClient(addrs);
+            builder.setProtocol(ConnectionFactoryBuilder.Protocol.BINARY).setAuthDescriptor(ad);
         }
+        return builder.build();
     }
 
-    public void add(String key, Object value, int expiration) {
-        client.add(key, expiration, value, tc);
+    MemcachedClient client() {
+        MemcachedClient[] clients = this.clients;
+        if (clients.length == 1) {
+            return clients[0];
+        }
+        return clients[(next.getAndIncrement() & Integer.MAX_VALUE) % clients.length];
     }
 
-    public Object get(String key) {
-        Future<Object> future = client.asyncGet(key, tc);
+    boolean isReplicated(String key) {
+        if (replicas == 0) {
+            return false;
+        }
+        for (String prefix : replicated) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String copy(String key, int replica) {
+        return replica == 0 ? key : key + "#" + replica;
+    }
+
+    /**
+     * @return The copy of the key to read: the key itself, or one of its replicas
+     */
+    String readCopy(String key) {
+        if (!isReplicated(key)) {
+            return key;
+        }
+        int replica;
+        synchronized (random) {
+            replica = random.nextInt(replicas + 1);
+        }
+        return copy(key, replica);
+    }
+
+    /**
+     * Write the replicas of a key, without waiting
+     */
+    private void setReplicas(String key, Object value, int expiration) {
+        if (isReplicated(key)) {
+            for (int i = 1; i <= replicas; i++) {
+                client().set(copy(key, i), expiration, value, tc);
+            }
+        }
+    }
+
+    private void deleteReplicas(String key) {
+        if (isReplicated(key)) {
+            for (int i = 1; i <= replicas; i++) {
+                client().delete(copy(key, i));
+            }
+        }
+    }
+
+    private <T> T await(Future<T> future, T defaultValue) {
         try {
-            return future.get(1, TimeUnit.SECONDS);
+            return future.get(timeout, TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             future.cancel(false);
         }
-        return null;
+        return defaultValue;
+    }
+
+    public void add(String key, Object value, int expiration) {
+        if (isReplicated(key)) {
+            safeAdd(key, value, expiration);
+        } else {
+            client().add(key, expiration, value, tc);
+        }
+    }
+
+    public Object get(String key) {
+        String copy = readCopy(key);
+        Object value = await(client().asyncGet(copy, tc), null);
+        if (value == null && !copy.equals(key)) {
+            // The replica was evicted, or its server is down
+            value = await(client().asyncGet(key, tc), null);
+        }
+        return value;
     }
 
     public void clear() {
-        client.flush();
+        client().flush();
     }
 
     public void delete(String key) {
-        client.delete(key);
+        client().delete(key);
+        deleteReplicas(key);
     }
 
     public Map<String, Object> get(String[] keys) {
-        Future<Map<String, Object>> future = client.asyncGetBulk(tc, keys);
-        try {
-            return future.get(1, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            future.cancel(false);
+        Map<String, String> copies = new HashMap<String, String>();
+        List<String> read = new ArrayList<String>(keys.length);
+        for (String key : keys) {
+            String copy = readCopy(key);
+            if (!copy.equals(key)) {
+                copies.put(copy, key);
+            }
+            read.add(copy);
         }
-        return Collections.<String, Object>emptyMap();
+        if (copies.isEmpty()) {
+            return await(client().asyncGetBulk(tc, keys), Collections.<String, Object>emptyMap());
+        }
+        Map<String, Object> values = await(client().asyncGetBulk(read, tc), Collections.<String, Object>emptyMap());
+        Map<String, Object> result = new HashMap<String, Object>(values);
+        List<String> missing = new ArrayList<String>();
+        for (Map.Entry<String, String> copy : copies.entrySet()) {
+            Object value = result.remove(copy.getKey());
+            if (value != null) {
+                result.put(copy.getValue(), value);
+            } else {
+                missing.add(copy.getValue());
+            }
+        }
+        if (!missing.isEmpty()) {
+            result.putAll(await(client().asyncGetBulk(missing, tc), Collections.<String, Object>emptyMap()));
+        }
+        return result;
     }
 
     public long incr(String key, int by) {
-        return client.incr(key, by, 0);
+        return client().incr(key, by, 0);
     }
 
     public long decr(String key, int by) {
-        return client.decr(key, by, 0);
+        return client().decr(key, by, 0);
     }
 
     public void replace(String key, Object value, int expiration) {
-        client.replace(key, expiration, value, tc);
+        if (isReplicated(key)) {
+            safeReplace(key, value, expiration);
+        } else {
+            client().replace(key, expiration, value, tc);
+        }
     }
 
     public boolean safeAdd(String key, Object value, int expiration) {
-        Future<Boolean> future = client.add(key, expiration, value, tc);
-        try {
-            return future.get(1, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            future.cancel(false);
+        boolean added = await(client().add(key, expiration, value, tc), false);
+        if (added) {
+            setReplicas(key, value, expiration);
         }
-        return false;
+        return added;
     }
 
     public boolean safeDelete(String key) {
-        Future<Boolean> future = client.delete(key);
-        try {
-            return future.get(1, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            future.cancel(false);
-        }
-        return false;
+        boolean deleted = await(client().delete(key), false);
+        deleteReplicas(key);
+        return deleted;
     }
 
     public boolean safeReplace(String key, Object value, int expiration) {
-        Future<Boolean> future = client.replace(key, expiration, value, tc);
-        try {
-            return future.get(1, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            future.cancel(false);
+        boolean replaced = await(client().replace(key, expiration, value, tc), false);
+        if (replaced) {
+            setReplicas(key, value, expiration);
         }
-        return false;
+        return replaced;
     }
 
     public boolean safeSet(String key, Object value, int expiration) {
-        Future<Boolean> future = client.set(key, expiration, value, tc);
-        try {
-            return future.get(1, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            future.cancel(false);
-        }
-        return false;
+        boolean set = await(client().set(key, expiration, value, tc), false);
+        setReplicas(key, value, expiration);
+        return set;
     }
 
     public void set(String key, Object value, int expiration) {
-        client.set(key, expiration, value, tc);
+        client().set(key, expiration, value, tc);
+        setReplicas(key, value, expiration);
     }
 
     public void stop() {
-        client.shutdown();
+        for (MemcachedClient client : clients) {
+            client.shutdown();
+        }
     }
 }
@@ -0,0 +1,665 @@
+package play.cache;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import play.Logger;
+import play.Play;
+import play.exceptions.ConfigurationException;
+import play.libs.IO;
+import play.libs.Time;
+import play.utils.PThreadFactory;
+
+/**
+ * A local cache kept in front of a distributed cache (memcached), so that most of the reads of
+ * the hot keys never leave the JVM.
+ *
+ * The local entries are bounded in number and in (estimated) size, and live at most
+ * memcached.nearcache.ttl. The other nodes are told about the writes either through a version
+ * per key prefix ("user" for user:42) stored in the distributed cache, checked every
+ * memcached.nearcache.versionCheck (a write seen by a node drops its local entries with the same
+ * prefix), or by broadcasting the written keys with a {@link Transport}. The versions are
+ * incremented in the background, so that the writes do not wait for them.
+ *
+ * Like with the standalone cache, the values read locally are shared and must not be modified.
+ *
+ * expiration is specified in seconds
+ */
+public class NearCacheImpl implements CacheImpl {
+
+    static final String VERSION_KEY = "__play.nearcache.version:";
+    /** the number of segments of the local entries, each one with its own lock */
+    static final int SEGMENTS = 16;
+
+    final CacheImpl cache;
+    final int maxEntries;
+    final long maxSize;
+    final long ttl;
+    final long versionCheck;
+    final String[] excluded;
+    final Transport transport;
+
+    private final Segment[] segments;
+    /** the last version seen of each prefix of the local entries */
+    private final ConcurrentMap<String, String> versions = new ConcurrentHashMap<String, String>();
+    /** the prefixes written locally, whose version is about to be incremented */
+    private final ConcurrentMap<String, Boolean> bumps = new ConcurrentHashMap<String, Boolean>();
+    /** increments the versions, null with the broadcast invalidation */
+    private final ExecutorService bumper;
+    private volatile long versionCheckedAt;
+
+    public NearCacheImpl(CacheImpl cache) {
+        this(cache, Play.configuration);
+    }
+
+    public NearCacheImpl(CacheImpl cache, Properties configuration) {
+        this.cache = cache;
+        this.maxEntries = Integer.parseInt(configuration.getProperty("memcached.nearcache.maxEntries", "10000"));
+        this.maxSize = IO.parseSize(configuration.getProperty("memcached.nearcache.maxSize", "32mb"), "memcached.nearcache.maxSize");
+        this.ttl = Time.parseDuration(configuration.getProperty("memcached.nearcache.ttl", "10s")) * 1000L;
+        this.versionCheck = Time.parseDuration(configuration.getProperty("memcached.nearcache.versionCheck", "1s")) * 1000L;
+        String exclude = configuration.getProperty("memcached.nearcache.exclude", "").trim();
+        this.excluded = exclude.length() == 0 ? new String[0] : exclude.split("\\s*,\\s*");
+        // A small cache keeps a single segment, so that its bounds are exact
+        this.segments = new Segment[maxEntries < 1024 ? 1 : SEGMENTS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(maxEntries / segments.length, maxSize / segments.length);
+        }
+        String invalidation = configuration.getProperty("memcached.nearcache.invalidation", "version");
+        if (invalidation.equals("broadcast")) {
+            this.transport = newTransport(configuration.getProperty("memcached.nearcache.transport", LocalTransport.class.getName()));
+            this.transport.subscribe(new Listener() {
+                public void invalidate(String key) {
+                    evict(key);
+                }
+            });
+            this.bumper = null;
+        } else if (invalidation.equals("version")) {
+            this.transport = null;
+            this.bumper = Executors.newSingleThreadExecutor(new PThreadFactory("nearcache"));
+        } else {
+            throw new ConfigurationException("Bad configuration for memcached.nearcache.invalidation: " + invalidation + " (version or broadcast)");
+        }
+    }
+
+    private static Transport newTransport(String className) {
+        try {
+            ClassLoader classLoader = Play.classloader == null ? NearCacheImpl.class.getClassLoader() : Play.classloader;
+            return (Transport) Class.forName(className, true, classLoader).newInstance();
+        } catch (Exception e) {
+            throw new ConfigurationException("Cannot create the near cache transport " + className + ": " + e);
+        }
+    }
+
+    /**
+     * @return Whether the key is never kept locally
+     */
+    boolean isExcluded(String key) {
+        for (String prefix : excluded) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Object get(String key) {
+        if (isExcluded(key)) {
+            return cache.get(key);
+        }
+        checkVersion();
+        Segment segment = segment(key);
+        Object value = segment.get(key);
+        if (value != null) {
+            return value;
+        }
+        String prefix = track(key);
+        long stamp = segment.invalidations;
+        value = cache.get(key);
+        keep(key, prefix, value, 0, stamp);
+        return value;
+    }
+
+    public Map<String, Object> get(String[] keys) {
+        checkVersion();
+        Map<String, Object> result = new HashMap<String, Object>(keys.length);
+        String[] missing = new String[keys.length];
+        int count = 0;
+        for (String key : keys) {
+            Object value = isExcluded(key) ? null : segment(key).get(key);
+            if (value != null) {
+                result.put(key, value);
+            } else {
+                missing[count++] = key;
+            }
+        }
+        if (count > 0) {
+            String[] remote = new String[count];
+            System.arraycopy(missing, 0, remote, 0, count);
+            Map<String, Long> stamps = new HashMap<String, Long>(count);
+            for (String key : remote) {
+                if (!isExcluded(key)) {
+                    track(key);
+                    stamps.put(key, segment(key).invalidations);
+                }
+            }
+            for (Map.Entry<String, Object> entry : cache.get(remote).entrySet()) {
+                result.put(entry.getKey(), entry.getValue());
+                Long stamp = stamps.get(entry.getKey());
+                if (stamp != null) {
+                    keep(entry.getKey(), CacheAside.prefix(entry.getKey()), entry.getValue(), 0, stamp);
+                }
+            }
+        }
+        return result;
+    }
+
+    public void add(String key, Object value, int expiration) {
+        cache.add(key, value, expiration);
+        written(key);
+    }
+
+    public boolean safeAdd(String key, Object value, int expiration) {
+        boolean added = cache.safeAdd(key, value, expiration);
+        if (added) {
+            writtenLocally(key, value, expiration);
+        }
+        return added;
+    }
+
+    public void set(String key, Object value, int expiration) {
+        cache.set(key, value, expiration);
+        writtenLocally(key, value, expiration);
+    }
+
+    public boolean safeSet(String key, Object value, int expiration) {
+        boolean set = cache.safeSet(key, value, expiration);
+        if (set) {
+            writtenLocally(key, value, expiration);
+        } else {
+            written(key);
+        }
+        return set;
+    }
+
+    public void replace(String key, Object value, int expiration) {
+        cache.replace(key, value, expiration);
+        written(key);
+    }
+
+    public boolean safeReplace(String key, Object value, int expiration) {
+        boolean replaced = cache.safeReplace(key, value, expiration);
+        if (replaced) {
+            writtenLocally(key, value, expiration);
+        }
+        return replaced;
+    }
+
+    public long incr(String key, int by) {
+        long value = cache.incr(key, by);
+        written(key);
+        return value;
+    }
+
+    public long decr(String key, int by) {
+        long value = cache.decr(key, by);
+        written(key);
+        return value;
+    }
+
+    public void delete(String key) {
+        cache.delete(key);
+        written(key);
+    }
+
+    public boolean safeDelete(String key) {
+        boolean deleted = cache.safeDelete(key);
+        written(key);
+        return deleted;
+    }
+
+    public void clear() {
+        cache.clear();
+        evict(null);
+        if (transport != null) {
+            transport.publish(null);
+        }
+    }
+
+    public void stop() {
+        if (transport != null) {
+            transport.close();
+        }
+        if (bumper != null) {
+            bumper.shutdown();
+        }
+        evict(null);
+        cache.stop();
+    }
+
+    /**
+     * Drop a local entry
+     * @param key The key, or null for all the entries
+     */
+    public void evict(String key) {
+        if (key == null) {
+            for (Segment segment : segments) {
+                segment.clear();
+            }
+            versions.clear();
+        } else {
+            segment(key).remove(key);
+        }
+    }
+
+    /**
+     * @return The number of local entries
+     */
+    public int localSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segment(String key) {
+        return segments.length == 1 ? segments[0] : segments[(key.hashCode() & 0x7fffffff) % segments.length];
+    }
+
+    /**
+     * Drop the local entries with this prefix
+     */
+    private void evictPrefix(String prefix) {
+        for (Segment segment : segments) {
+            segment.removePrefix(prefix);
+        }
+    }
+
+    private void keep(String key, String prefix, Object value, int expiration, long stamp) {
+        if (value == null) {
+            return;
+        }
+        Segment segment = segment(key);
+        long weight = weigh(value);
+        if (weight < 0 || weight > segment.maxSize) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expires = now + ttl;
+        if (expiration > 0) {
+            expires = Math.min(expires, now + expiration * 1000L);
+        }
+        segment.put(key, new Entry(prefix, value, expires, weight), stamp);
+    }
+
+    private void written(String key) {
+        if (isExcluded(key)) {
+            return;
+        }
+        evict(key);
+        if (transport != null) {
+            transport.publish(key);
+        } else {
+            bumpVersion(CacheAside.prefix(key));
+        }
+    }
+
+    private void writtenLocally(String key, Object value, int expiration) {
+        if (isExcluded(key)) {
+            return;
+        }
+        written(key);
+        keep(key, CacheAside.prefix(key), value, expiration, segment(key).invalidations);
+    }
+
+    /**
+     * Read the version of the prefix of a key the first time it is kept locally
+     * @return The prefix
+     */
+    private String track(String key) {
+        String prefix = CacheAside.prefix(key);
+        if (transport == null && !versions.containsKey(prefix)) {
+            versions.putIfAbsent(prefix, String.valueOf(cache.get(VERSION_KEY + prefix)).trim());
+        }
+        return prefix;
+    }
+
+    private void checkVersion() {
+        if (transport != null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - versionCheckedAt < versionCheck) {
+            return;
+        }
+        versionCheckedAt = now;
+        String[] prefixes = versions.keySet().toArray(new String[0]);
+        if (prefixes.length == 0) {
+            return;
+        }
+        String[] keys = new String[prefixes.length];
+        for (int i = 0; i < prefixes.length; i++) {
+            keys[i] = VERSION_KEY + prefixes[i];
+        }
+        Map<String, Object> current = cache.get(keys);
+        for (int i = 0; i < prefixes.length; i++) {
+            String version = String.valueOf(current.get(keys[i])).trim();
+            String seen = versions.get(prefixes[i]);
+            if (seen != null && !seen.equals(version) && versions.replace(prefixes[i], seen, version)) {
+                evictPrefix(prefixes[i]);
+            }
+        }
+    }
+
+    /**
+     * Increment the version of a prefix in the background. The writes made while an increment is
+     * waiting share it.
+     */
+    private void bumpVersion(final String prefix) {
+        if (bumps.putIfAbsent(prefix, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            bumper.execute(new Runnable() {
+                public void run() {
+                    bumps.remove(prefix);
+                    try {
+                        long next = cache.incr(VERSION_KEY + prefix, 1);
+                        String seen = versions.put(prefix, String.valueOf(next));
+                        if (seen != null && !String.valueOf(next - 1).equals(seen)) {
+                            // another node has written since the last check
+                            evictPrefix(prefix);
+                        }
+                    } catch (RuntimeException e) {
+                        Logger.warn("Cannot increment the near cache version of %s: %s", prefix, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // stopped
+            bumps.remove(prefix);
+        }
+    }
+
+    /**
+     * Wait for the versions being incremented
+     */
+    void awaitVersions() throws InterruptedException, ExecutionException {
+        if (bumper != null) {
+            bumper.submit(new Callable<Object>() {
+                public Object call() {
+                    return null;
+                }
+            }).get();
+        }
+    }
+
+    /**
+     * The memory taken by a value, estimated from its content for the common types (strings,
+     * numbers, arrays, collections and maps, from a sample of their elements), and from its
+     * serialized size for the others.
+     * @return The estimated size, or -1 if the value cannot be kept
+     */
+    static long weigh(Object value) {
+        long weight = estimate(value, 0);
+        return weight >= 0 ? weight : serializedSize(value);
+    }
+
+    /** the number of elements weighed in a collection, the others are assumed to be alike */
+    private static final int SAMPLE = 8;
+
+    private static long estimate(Object value, int depth) {
+        if (value == null || value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Date) {
+            return 16;
+        }
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof char[]) {
+            return 16 + 2L * ((char[]) value).length;
+        }
+        if (depth > 2) {
+            return -1;
+        }
+        if (value instanceof Collection) {
+            return 32 + sample(((Collection<?>) value).iterator(), ((Collection<?>) value).size(), depth);
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            long keys = sample(map.keySet().iterator(), map.size(), depth);
+            long values = sample(map.values().iterator(), map.size(), depth);
+            return keys < 0 || values < 0 ? -1 : 48 + keys + values + 32L * map.size();
+        }
+        if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            long weight = 0;
+            int sampled = Math.min(array.length, SAMPLE);
+            for (int i = 0; i < sampled; i++) {
+                long element = estimate(array[i], depth + 1);
+                if (element < 0) {
+                    return -1;
+                }
+                weight += element;
+            }
+            return 16 + 8L * array.length + (sampled == 0 ? 0 : weight * array.length / sampled);
+        }
+        return -1;
+    }
+
+    private static long sample(Iterator<?> elements, int size, int depth) {
+        long weight = 0;
+        int sampled = 0;
+        while (sampled < SAMPLE && elements.hasNext()) {
+            long element = estimate(elements.next(), depth + 1);
+            if (element < 0) {
+                return -1;
+            }
+            weight += element;
+            sampled++;
+        }
+        return 8L * size + (sampled == 0 ? 0 : weight * size / sampled);
+    }
+
+    private static long serializedSize(Object value) {
+        try {
+            CountingOutputStream counter = new CountingOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(counter);
+            out.writeObject(value);
+            out.flush();
+            return counter.count;
+        } catch (IOException e) {
+            Logger.warn("Cannot keep %s in the near cache: %s", value.getClass().getName(), e);
+            return -1;
+        }
+    }
+
+    /**
+     * A part of the local entries, with its own lock and its share of the bounds
+     */
+    static class Segment {
+
+        final int maxEntries;
+        final long maxSize;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        private long size;
+        /** incremented on every invalidation, so that a value read before it is not kept */
+        volatile long invalidations;
+
+        Segment(int maxEntries, long maxSize) {
+            this.maxEntries = maxEntries;
+            this.maxSize = maxSize;
+        }
+
+        synchronized Object get(String key) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expires > System.currentTimeMillis()) {
+                return entry.value;
+            }
+            entries.remove(key);
+            size -= entry.weight;
+            return null;
+        }
+
+        synchronized void put(String key, Entry entry, long stamp) {
+            if (stamp != invalidations) {
+                // the key may have been written, or the version changed, in the meantime
+                return;
+            }
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                size -= previous.weight;
+            }
+            size += entry.weight;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (eldest.hasNext() && (size > maxSize || entries.size() > maxEntries)) {
+                size -= eldest.next().weight;
+                eldest.remove();
+            }
+        }
+
+        synchronized void remove(String key) {
+            invalidations++;
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                size -= entry.weight;
+            }
+        }
+
+        synchronized void removePrefix(String prefix) {
+            invalidations++;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.prefix.equals(prefix)) {
+                    size -= entry.weight;
+                    iterator.remove();
+                }
+            }
+        }
+
+        synchronized void clear() {
+            invalidations++;
+            entries.clear();
+            size = 0;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    static class Entry {
+
+        final String prefix;
+        final Object value;
+        final long expires;
+        final long weight;
+
+        Entry(String prefix, Object value, long expires, long weight) {
+            this.prefix = prefix;
+            this.value = value;
+            this.expires = expires;
+            this.weight = weight;
+        }
+    }
+
+    static class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Receives the keys written by the other nodes
+     */
+    public interface Listener {
+
+        /**
+         * @param key The written key, or null when the whole cache has been cleared
+         */
+        void invalidate(String key);
+    }
+
+    /**
+     * Broadcasts the written keys between the nodes (memcached.nearcache.invalidation=broadcast).
+     * An implementation is named by memcached.nearcache.transport, and must have a public
+     * constructor without arguments.
+     */
+    public interface Transport {
+
+        /**
+         * Tell the other nodes that a key has been written
+         * @param key The key, or null when the whole cache has been cleared
+         */
+        void publish(String key);
+
+        void subscribe(Listener listener);
+
+        void close();
+    }
+
+    /**
+     * A transport between the caches of this JVM only, standing in for a real message bus
+     * (eg. in tests or when several applications share a JVM)
+     */
+    public static class LocalTransport implements Transport {
+
+        private static final CopyOnWriteArrayList<LocalTransport> nodes = new CopyOnWriteArrayList<LocalTransport>();
+        private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+        public LocalTransport() {
+            nodes.add(this);
+        }
+
+        public void publish(String key) {
+            for (LocalTransport node : nodes) {
+                if (node != this) {
+                    for (Listener listener : node.listeners) {
+                        listener.invalidate(key);
+                    }
+                }
+            }
+        }
+
+        public void subscribe(Listener listener) {
+            listeners.add(listener);
+        }
+
+        public void close() {
+            nodes.remove(this);
+            listeners.clear();
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package play.cache;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import play.Logger;
+import play.Play;
+import play.libs.IO;
+
+/**
+ * A local cache keeping the serialized values out of the Java heap, so that big caches do not
+ * slow the garbage collections down.
+ *
+ * The values are split in blocks of direct buffers, allocated by slabs up to the capacity. When
+ * it is reached, the entries are evicted with the CLOCK algorithm (an approximated LRU): the
+ * entries read since the last pass are spared once.
+ *
+ * The buffers count in the JVM direct memory (-XX:MaxDirectMemorySize), not in the heap.
+ *
+ * expiration is specified in seconds
+ */
+public class OffHeapCacheImpl implements CacheImpl {
+
+    private static OffHeapCacheImpl uniqueInstance;
+
+    /** the size of the slabs the blocks are taken from */
+    static final int SLAB_SIZE = 64 * 1024 * 1024;
+
+    final long capacity;
+    final int blockSize;
+    final int blocksPerSlab;
+    final int blockCount;
+
+    private final ConcurrentHashMap<String, Entry> index = new ConcurrentHashMap<String, Entry>();
+    /** guards the blocks: read to copy a value out, written to allocate or free blocks */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ByteBuffer[] slabs;
+    /** the entry using each block */
+    private final Entry[] owners;
+    private int[] free;
+    private int freeCount;
+    /** the blocks never used so far start there */
+    private int fresh;
+    private int hand;
+
+    OffHeapCacheImpl(long capacity, int blockSize) {
+        this.blockSize = blockSize;
+        this.blocksPerSlab = Math.max(1, (int) Math.min(SLAB_SIZE, capacity) / blockSize);
+        this.blockCount = (int) Math.min(Integer.MAX_VALUE, capacity / blockSize);
+        this.capacity = (long) blockCount * blockSize;
+        this.slabs = new ByteBuffer[(blockCount + blocksPerSlab - 1) / blocksPerSlab];
+        this.owners = new Entry[blockCount];
+        this.free = new int[64];
+    }
+
+    public static OffHeapCacheImpl getInstance() {
+        return uniqueInstance;
+    }
+
+    public static OffHeapCacheImpl newInstance() {
+        long capacity = IO.parseSize(Play.configuration.getProperty("cache.offheap.size", "256mb"), "cache.offheap.size");
+        int blockSize = (int) IO.parseSize(Play.configuration.getProperty("cache.offheap.blockSize", "1kb"), "cache.offheap.blockSize");
+        uniqueInstance = new OffHeapCacheImpl(capacity, blockSize);
+        return uniqueInstance;
+    }
+
+    public void add(String key, Object value, int expiration) {
+        safeAdd(key, value, expiration);
+    }
+
+    public boolean safeAdd(String key, Object value, int expiration) {
+        return store(key, value, expiration, true, false);
+    }
+
+    public void set(String key, Object value, int expiration) {
+        safeSet(key, value, expiration);
+    }
+
+    public boolean safeSet(String key, Object value, int expiration) {
+        return store(key, value, expiration, false, false);
+    }
+
+    public void replace(String key, Object value, int expiration) {
+        safeReplace(key, value, expiration);
+    }
+
+    public boolean safeReplace(String key, Object value, int expiration) {
+        return store(key, value, expiration, false, true);
+    }
+
+    public Object get(String key) {
+        byte[] data = read(key);
+        if (data == null) {
+            return null;
+        }
+        try {
+            return Cache.serializer.deserialize(data);
+        } catch (Exception e) {
+            Logger.error(e, "Could not deserialize");
+            return null;
+        }
+    }
+
+    public Map<String, Object> get(String[] keys) {
+        Map<String, Object> result = new HashMap<String, Object>(keys.length);
+        for (String key : keys) {
+            result.put(key, get(key));
+        }
+        return result;
+    }
+
+    public long incr(String key, int by) {
+        return add(key, by);
+    }
+
+    public long decr(String key, int by) {
+        return add(key, -by);
+    }
+
+    private long add(String key, int by) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = index.get(key);
+            Object value = get(key);
+            if (entry == null || !(value instanceof Number)) {
+                return -1;
+            }
+            long newValue = ((Number) value).longValue() + by;
+            int expiration = entry.expires == 0 ? 0 : (int) Math.max(1, (entry.expires - System.currentTimeMillis()) / 1000);
+            store(key, newValue, expiration, false, true);
+            return newValue;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (Entry entry : index.values()) {
+                remove(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(String key) {
+        safeDelete(key);
+    }
+
+    public boolean safeDelete(String key) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = index.get(key);
+            if (entry != null) {
+                remove(entry);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void stop() {
+        clear();
+    }
+
+    /**
+     * @return The number of bytes used by the blocks of the entries
+     */
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return (long) (fresh - freeCount) * blockSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of entries
+     */
+    public int count() {
+        return index.size();
+    }
+
+    private boolean store(String key, Object value, int expiration, boolean onlyIfAbsent, boolean onlyIfPresent) {
+        byte[] data;
+        try {
+            data = Cache.serializer.serialize(value);
+        } catch (Exception e) {
+            Logger.error(e, "Could not serialize");
+            return false;
+        }
+        int blocks = (data.length + blockSize - 1) / blockSize;
+        long now = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            Entry previous = index.get(key);
+            if (previous != null && previous.isExpired(now)) {
+                remove(previous);
+                previous = null;
+            }
+            if ((onlyIfAbsent && previous != null) || (onlyIfPresent && previous == null)) {
+                return false;
+            }
+            if (previous != null) {
+                remove(previous);
+            }
+            if (blocks > blockCount) {
+                Logger.warn("Cannot cache %s: %s bytes is bigger than the off-heap cache", key, data.length);
+                return false;
+            }
+            Entry entry = new Entry(key, new int[blocks], data.length, expiration > 0 ? now + expiration * 1000L : 0);
+            // The blocks are owned once all are allocated, so that the evictions cannot take the entry itself
+            for (int i = 0; i < blocks; i++) {
+                entry.blocks[i] = allocate(now);
+            }
+            for (int i = 0; i < blocks; i++) {
+                int block = entry.blocks[i];
+                owners[block] = entry;
+                ByteBuffer slab = slab(block).duplicate();
+                slab.position((block % blocksPerSlab) * blockSize);
+                slab.put(data, i * blockSize, Math.min(blockSize, data.length - i * blockSize));
+            }
+            index.put(key, entry);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private byte[] read(String key) {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            lock.writeLock().lock();
+            try {
+                if (index.get(key) == entry) {
+                    remove(entry);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (entry.removed) {
+                return null;
+            }
+            entry.referenced = true;
+            byte[] data = new byte[entry.length];
+            for (int i = 0; i < entry.blocks.length; i++) {
+                int block = entry.blocks[i];
+                ByteBuffer slab = slab(block).duplicate();
+                slab.position((block % blocksPerSlab) * blockSize);
+                slab.get(data, i * blockSize, Math.min(blockSize, data.length - i * blockSize));
+            }
+            return data;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Take a free block, evicting entries if needed (with the write lock)
+     */
+    private int allocate(long now) {
+        while (freeCount == 0) {
+            if (fresh < blockCount) {
+                return fresh++;
+            }
+            evict(now);
+        }
+        return free[--freeCount];
+    }
+
+    /**
+     * Move the hand of the clock until an entry is evicted
+     */
+    private void evict(long now) {
+        while (true) {
+            Entry owner = owners[hand];
+            hand = (hand + 1) % fresh;
+            if (owner == null) {
+                continue;
+            }
+            if (owner.referenced && !owner.isExpired(now)) {
+                owner.referenced = false;
+                continue;
+            }
+            remove(owner);
+            return;
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entry.removed) {
+            return;
+        }
+        entry.removed = true;
+        index.remove(entry.key, entry);
+        for (int block : entry.blocks) {
+            if (owners[block] == entry) {
+                owners[block] = null;
+                if (freeCount == free.length) {
+                    int[] more = new int[free.length * 2];
+                    System.arraycopy(free, 0, more, 0, freeCount);
+                    free = more;
+                }
+                free[freeCount++] = block;
+            }
+        }
+    }
+
+    private ByteBuffer slab(int block) {
+        int i = block / blocksPerSlab;
+        if (slabs[i] == null) {
+            int blocks = Math.min(blocksPerSlab, blockCount - i * blocksPerSlab);
+            slabs[i] = ByteBuffer.allocateDirect(blocks * blockSize);
+        }
+        return slabs[i];
+    }
+
+    static class Entry {
+
+        final String key;
+        final int[] blocks;
+        final int length;
+        /** when it expires (milliseconds), or 0 */
+        final long expires;
+        volatile boolean referenced;
+        boolean removed;
+
+        Entry(String key, int[] blocks, int length, long expires) {
+            this.key = key;
+            this.blocks = blocks;
+            this.length = length;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return expires != 0 && now >= expires;
+        }
+    }
+}
@@ -7,8 +7,8 @@ import java.util.*;
 import play.Logger;
 import play.classloading.enhancers.PropertiesEnhancer.PlayPropertyAccessor;
 import play.exceptions.UnexpectedException;
-import play.utils.Utils;
-import java.util.concurrent.ConcurrentHashMap;
+import play.utils.ClassloaderCache;
+import play.utils.MethodInvoker;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -18,9 +18,11 @@ public abstract class BeanWrapper {
 
     final static int notwritableField = Modifier.FINAL | Modifier.NATIVE | Modifier.STATIC;
     final static int notaccessibleMethod = Modifier.NATIVE | Modifier.STATIC;
-    final static ConcurrentMap<Class<?>, BeanWrapper> beanWrapperCache = new ConcurrentHashMap<Class<?>, BeanWrapper>();
+    // Wrappers of reloaded classes are dropped when the application classloader state changes
+    final static ClassloaderCache<Class<?>, BeanWrapper> beanWrapperCache = new ClassloaderCache<Class<?>, BeanWrapper>();
 
     private final Class<?> beanClass;
+    private Constructor<?> constructor;
 
     /**
      * a cache for our properties and setters
@@ -43,14 +45,15 @@ public abstract class BeanWrapper {
      */
 
     public static BeanWrapper forClass(Class<?> forClass) {
-        final BeanWrapper wrapper = beanWrapperCache.get(forClass);
+        final ConcurrentMap<Class<?>, BeanWrapper> wrappers = beanWrapperCache.get();
+        final BeanWrapper wrapper = wrappers.get(forClass);
         if (wrapper == null) {
             final BeanWrapper newWrapper = BeanWrapper.generateForClass(forClass);
             /*
               Sometimes it create an instance, but it won't be used, as
               somebody has generated another yet, and put it into the cache
             */
-            final BeanWrapper cachedWrapper = beanWrapperCache.putIfAbsent(forClass, newWrapper);
+            final BeanWrapper cachedWrapper = wrappers.putIfAbsent(forClass, newWrapper);
 
             return cachedWrapper == null ? newWrapper : cachedWrapper;
             /*
@@ -84,11 +87,10 @@ public abstract class BeanWrapper {
     }
 
     public void set(String name, Object instance, Object value) {
-        for (Property prop : wrappers.values()) {
-            if (name.equals(prop.name)) {
-                prop.setValue(instance, value);
-                return;
-            }
+        Property prop = wrappers.get(name);
+        if (prop != null) {
+            prop.setValue(instance, value);
+            return;
         }
         String message = String.format("Can't find property with name '%s' on class %s", name, instance.getClass().getName());
         Logger.warn(message);
@@ -99,8 +101,11 @@ public abstract class BeanWrapper {
     abstract boolean isSetter(Method method);
 
     protected Object newBeanInstance() throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
-        Constructor constructor = beanClass.getDeclaredConstructor();
-        constructor.setAccessible(true);
+        if (constructor == null) {
+            Constructor<?> c = beanClass.getDeclaredConstructor();
+            c.setAccessible(true);
+            constructor = c;
+        }
         return constructor.newInstance();
     }
 
@@ -189,6 +194,8 @@ public abstract class BeanWrapper {
         final private Type genericType;
         final private String name;
         final private String[] profiles;
+        // binding annotations used when no profile is inherited, computed once
+        final private BindingAnnotations bindingAnnotations;
 
         Property(String propertyName, Method setterMethod) {
             name = propertyName;
@@ -198,6 +205,7 @@ public abstract class BeanWrapper {
             genericType = setter.getGenericParameterTypes()[0];
             field = null;
             profiles = createProfiles(this.annotations);
+            bindingAnnotations = new BindingAnnotations(annotations, new String[0]);
         }
 
         Property(Field field) {
@@ -209,6 +217,7 @@ public abstract class BeanWrapper {
             genericType = field.getGenericType();
             setter = null;
             profiles = createProfiles(this.annotations);
+            bindingAnnotations = new BindingAnnotations(annotations, new String[0]);
         }
 
         private static String[] createProfiles(Annotation[] annotations) {
@@ -229,7 +238,7 @@ public abstract class BeanWrapper {
                     if (Logger.isTraceEnabled()) {
                         Logger.trace("invoke setter %s on %s with value %s", setter, instance, value);
                     }
-                    setter.invoke(instance, value);
+                    MethodInvoker.of(setter).invoke(instance, new Object[]{value});
                 } else {
                     if (Logger.isTraceEnabled()) {
                         Logger.trace("field.set(%s, %s)", instance, value);
@@ -258,6 +267,13 @@ public abstract class BeanWrapper {
             return annotations;
         }
 
+        BindingAnnotations getBindingAnnotations(String[] inheritedProfiles) {
+            if (inheritedProfiles == null || inheritedProfiles.length == 0) {
+                return bindingAnnotations;
+            }
+            return new BindingAnnotations(annotations, inheritedProfiles);
+        }
+
         @Override
         public String toString() {
             return type + "." + name;
@@ -10,6 +10,7 @@ import play.data.validation.Validation;
 import play.db.Model;
 import play.exceptions.BinderException;
 import play.exceptions.UnexpectedException;
+import play.utils.ClassloaderCache;
 
 import java.io.File;
 import java.lang.annotation.Annotation;
@@ -31,6 +32,9 @@ public abstract class Binder {
 
     static final Map<Class<?>, TypeBinder<?>> supportedTypes = new HashMap<Class<?>, TypeBinder<?>>();
 
+    // Direct binding plans, resolved once per type
+    static final ClassloaderCache<Class<?>, DirectBinders> directBindingPlans = new ClassloaderCache<Class<?>, DirectBinders>();
+
     // TODO: something a bit more dynamic? The As annotation allows you to inject your own binder
     static {
         supportedTypes.put(Date.class, new DateBinder());
@@ -49,6 +53,46 @@ public abstract class Binder {
 
     public static <T> void register(Class<T> clazz, TypeBinder<T> typeBinder) {
         supportedTypes.put(clazz, typeBinder);
+        directBindingPlans.clear();
+    }
+
+    /**
+     * The binders able to directly bind a type: the application @Global binders first, then
+     * the first matching built-in binder (if any).
+     */
+    static class DirectBinders {
+        final List<Class<TypeBinder<?>>> globalBinders;
+        final TypeBinder<?> supportedTypeBinder;
+
+        DirectBinders(Class<?> clazz) {
+            globalBinders = new ArrayList<Class<TypeBinder<?>>>();
+            for (Class<TypeBinder<?>> c : Play.classloader.getAssignableClasses(TypeBinder.class)) {
+                if (c.isAnnotationPresent(Global.class)) {
+                    Class<?> forType = (Class) ((ParameterizedType) c.getGenericInterfaces()[0]).getActualTypeArguments()[0];
+                    if (forType.isAssignableFrom(clazz)) {
+                        globalBinders.add(c);
+                    }
+                }
+            }
+            TypeBinder<?> binder = null;
+            for (Class<?> c : supportedTypes.keySet()) {
+                if (c.isAssignableFrom(clazz)) {
+                    binder = supportedTypes.get(c);
+                    break;
+                }
+            }
+            supportedTypeBinder = binder;
+        }
+    }
+
+    static DirectBinders directBinders(Class<?> clazz) {
+        Map<Class<?>, DirectBinders> binders = directBindingPlans.get();
+        DirectBinders plan = binders.get(clazz);
+        if (plan == null) {
+            plan = new DirectBinders(clazz);
+            binders.put(clazz, plan);
+        }
+        return plan;
     }
 
     public static class MethodAndParamInfo {
@@ -306,11 +350,8 @@ public abstract class Binder {
         for (BeanWrapper.Property prop : bw.getWrappers()) {
             ParamNode propParamNode = paramNode.getChild(prop.getName());
             if (propParamNode != null) {
-                // Create new ParamsContext for this property
-                Annotation[] annotations = null;
                 // first we try with annotations resolved from property
-                annotations = prop.getAnnotations();
-                BindingAnnotations propBindingAnnotations = new BindingAnnotations(annotations, bindingAnnotations.getProfiles());
+                BindingAnnotations propBindingAnnotations = prop.getBindingAnnotations(bindingAnnotations.getProfiles());
                 Object value = internalBind(propParamNode, prop.getType(), prop.getGenericType(), propBindingAnnotations);
                 if (value != MISSING) {
                     if (value != NO_BINDING) {
@@ -551,31 +592,22 @@ public abstract class Binder {
             }
         }
 
+        DirectBinders binders = directBinders(clazz);
+
         // application custom types have higher priority. If unable to bind proceed with the next one
-        for (Class<TypeBinder<?>> c : Play.classloader.getAssignableClasses(TypeBinder.class)) {
-            if (c.isAnnotationPresent(Global.class)) {
-                Class<?> forType = (Class) ((ParameterizedType) c.getGenericInterfaces()[0]).getActualTypeArguments()[0];
-                if (forType.isAssignableFrom(clazz)) {
-                    Object result = c.newInstance().bind(name, annotations, value, clazz, type);
-                    if (result != null) {
-                        return result;
-                    }
-                }
+        for (Class<TypeBinder<?>> c : binders.globalBinders) {
+            Object result = c.newInstance().bind(name, annotations, value, clazz, type);
+            if (result != null) {
+                return result;
             }
         }
 
         // custom types
-        for (Class<?> c : supportedTypes.keySet()) {
+        if (binders.supportedTypeBinder != null) {
             if (Logger.isTraceEnabled()) {
-                Logger.trace("directBind: value [" + value + "] c [" + c + "] Class [" + clazz + "]");
-            }
-
-            if (c.isAssignableFrom(clazz)) {
-                if (Logger.isTraceEnabled()) {
-                    Logger.trace("directBind: isAssignableFrom is true");
-                }
-                return supportedTypes.get(c).bind(name, annotations, value, clazz, type);
+                Logger.trace("directBind: value [" + value + "] binder [" + binders.supportedTypeBinder + "] Class [" + clazz + "]");
             }
+            return binders.supportedTypeBinder.bind(name, annotations, value, clazz, type);
         }
 
         // raw String
@@ -2,17 +2,27 @@ package play.data.binding;
 
 import play.utils.Utils;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * A node of the params tree.
+ *
+ * Children are materialized on demand: the params below a node are only dispatched to its
+ * children (one level at a time) the first time they are accessed. Binding a nested object
+ * only touches the keys of its own sub tree.
+ */
 public class ParamNode {
     private final String name;
     private final Map<String, ParamNode> _children = new HashMap<String, ParamNode>(8);
     private String[] values = null;
     private String originalKey;
+    // params below this node not yet dispatched to the children
+    private List<PendingParam> pending = null;
 
     // splits a string on one-ore-more instances of .[]
     // this works so that all the following strings (param naming syntaxes)
@@ -36,6 +46,7 @@ public class ParamNode {
     }
 
     public String getFirstValue(Class<?> type) {
+        String[] values = getValues();
         if (values == null) {
             return null;
         }
@@ -49,6 +60,7 @@ public class ParamNode {
     }
 
     public void addChild( ParamNode child) {
+        materialize();
         _children.put(child.name, child);
     }
 
@@ -57,13 +69,36 @@ public class ParamNode {
     }
 
     public ParamNode getChild(String name, boolean returnEmptyChildIfNotFound) {
-        ParamNode child = getChild( name.split(keyPartDelimiterRegexpString));
+        ParamNode child;
+        if (isSimpleName(name)) {
+            // fast path: a direct child, no need to split the name
+            materialize();
+            child = _children.get(name);
+        } else {
+            child = getChild( name.split(keyPartDelimiterRegexpString));
+        }
         if (child == null && returnEmptyChildIfNotFound) {
             child = new ParamNode(name);
         }
         return child;
     }
 
+    private static boolean isSimpleName(String name) {
+        if (name.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (isDelimiter(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == '.' || c == '[' || c == ']';
+    }
+
     public static class RemovedNode {
         public final ParamNode removedFrom;
         public final ParamNode removedNode;
@@ -85,6 +120,7 @@ public class ParamNode {
      * @return true if anything was removed.
      */
     public boolean removeChild(String name, List<RemovedNode> removedNodesList) {
+        materialize();
         ParamNode removedNode = _children.remove(name);
         if ( removedNode != null) {
             removedNodesList.add( new RemovedNode(this, removedNode));
@@ -103,6 +139,7 @@ public class ParamNode {
     private ParamNode getChild(String[] nestedNames) {
         ParamNode currentChildNode = this;
         for (int i=0; i<nestedNames.length; i++) {
+            currentChildNode.materialize();
             currentChildNode = currentChildNode._children.get(nestedNames[i]);
             if (currentChildNode == null) {
                 return null;
@@ -112,10 +149,12 @@ public class ParamNode {
     }
 
     public Collection<ParamNode> getAllChildren() {
+        materialize();
         return _children.values();
     }
 
     public Set<String> getAllChildrenKeys() {
+        materialize();
         return _children.keySet();
     }
 
@@ -131,32 +170,73 @@ public class ParamNode {
         return originalKey;
     }
 
-    public static RootParamNode convert(Map<String, String[]> params) {
-        RootParamNode root = new RootParamNode( params);
-
-        for (Map.Entry<String, String[]> e : params.entrySet()) {
-            String key = e.getKey();
-            String[] values = e.getValue();
-            if (values != null && values.length == 0) {
-                values = null;
-            }
-
-            ParamNode currentParent = root;
+    /**
+     * Dispatch the pending params of this node to its children
+     */
+    void materialize() {
+        if (pending == null) {
+            return;
+        }
+        List<PendingParam> toDispatch = pending;
+        pending = null;
+        for (PendingParam param : toDispatch) {
+            dispatch(param);
+        }
+    }
 
-            for ( String name : key.split(keyPartDelimiterRegexpString)) {
-                ParamNode paramNode = currentParent.getChild( name );
-                if (paramNode ==null) {
-                    // first time we see this node - create it and add it to parent
-                    paramNode = new ParamNode(name);
-                    currentParent.addChild(paramNode);
-                }
-                currentParent = paramNode;
+    /**
+     * Place a param in the direct child of this node matching the next part of its key
+     */
+    void dispatch(PendingParam param) {
+        String key = param.key;
+        int start = param.position;
+        int end = start;
+        while (end < key.length() && !isDelimiter(key.charAt(end))) {
+            end++;
+        }
+        int next = end;
+        while (next < key.length() && isDelimiter(key.charAt(next))) {
+            next++;
+        }
+        if (start == end && next == key.length() && key.length() > 0) {
+            // The key is only made of delimiters: it has no part (same as String.split)
+            setValue(param.values, key);
+            return;
+        }
+        String childName = key.substring(start, end);
+        ParamNode child = _children.get(childName);
+        if (child == null) {
+            // first time we see this node - create it and add it to parent
+            child = new ParamNode(childName);
+            _children.put(childName, child);
+        }
+        if (next == key.length()) {
+            // last part of the key, the child holds the values
+            child.setValue(param.values, key);
+        } else {
+            param.position = next;
+            if (child.pending == null) {
+                child.pending = new ArrayList<PendingParam>(4);
             }
+            child.pending.add(param);
+        }
+    }
 
-            // currentParent is now the last node where we should place the values
-            currentParent.setValue( values, key);
+    public static RootParamNode convert(Map<String, String[]> params) {
+        return new RootParamNode( params);
+    }
 
+    /**
+     * A param not yet placed in the tree, with the position of the remaining part of its key
+     */
+    static class PendingParam {
+        final String key;
+        final String[] values;
+        int position;
+
+        PendingParam(String key, String[] values) {
+            this.key = key;
+            this.values = values != null && values.length == 0 ? null : values;
         }
-        return root;
     }
-}
\ No newline at end of file
+}
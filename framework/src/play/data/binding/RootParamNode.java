@@ -5,8 +5,31 @@ import java.util.Map;
 public class RootParamNode extends ParamNode {
 
     public final Map<String, String[]> originalParams;
+    private boolean materialized = false;
+
     public RootParamNode(Map<String, String[]> originalParams) {
         super("root");
         this.originalParams = originalParams;
     }
+
+    @Override
+    public String[] getValues() {
+        // a key made only of delimiters holds its values in the root node
+        materialize();
+        return super.getValues();
+    }
+
+    /**
+     * The first level of the tree is built on first access, deeper levels when they are reached
+     */
+    @Override
+    void materialize() {
+        if (!materialized) {
+            materialized = true;
+            for (Map.Entry<String, String[]> e : originalParams.entrySet()) {
+                dispatch(new PendingParam(e.getKey(), e.getValue()));
+            }
+        }
+        super.materialize();
+    }
 }
@@ -32,7 +32,9 @@ import play.data.FileUpload;
 import play.data.MemoryUpload;
 import play.data.Upload;
 import play.exceptions.UnexpectedException;
+import play.mvc.Http;
 import play.mvc.Http.Request;
+import play.mvc.results.Status;
 import play.utils.HTTP;
 
 /**
@@ -565,24 +567,31 @@ public class ApacheMultipartParser extends DataParser {
         }
     }
 
+    /**
+     * Stream the file parts of the current request to this sink instead of temporary files.
+     * Must be called before the request params are read, eg. in PlayPlugin.routeRequest(): the
+     * arguments of actions with validation annotations are bound before the @Before interceptors.
+     * @throws IllegalStateException if the request body was already parsed
+     */
+    public static void streamTo(UploadSink sink) {
+        if (Request.current().args.containsKey(PARSED)) {
+            throw new IllegalStateException("The multipart body of this request was already parsed, the upload sink must be set before the params are read");
+        }
+        Request.current().args.put(SINK, sink);
+    }
+
     public Map<String, String[]> parse(InputStream body) {
         Map<String, String[]> result = new HashMap<String, String[]>();
+        Request.current().args.put(PARSED, Boolean.TRUE);
         try {
+            UploadSink sink = resolveSink();
             FileItemIteratorImpl iter = new FileItemIteratorImpl(body, Request.current().headers.get("content-type").value(), Request.current().encoding);
             while (iter.hasNext()) {
                 FileItemStream item = iter.next();
-                FileItem fileItem = new AutoFileItem(item);
-                try {
-                    Streams.copy(item.openStream(), fileItem.getOutputStream(), true);
-                } catch (FileUploadIOException e) {
-                    throw (FileUploadException) e.getCause();
-                } catch (IOException e) {
-                    throw new IOFileUploadException("Processing of " + MULTIPART_FORM_DATA + " request failed. " + e.getMessage(), e);
-                }
-                if (fileItem.isFormField()) {
+                if (item.isFormField()) {
                     // must resolve encoding
                     String _encoding = Request.current().encoding; // this is our default
-                    String _contentType = fileItem.getContentType();
+                    String _contentType = item.getContentType();
                     if( _contentType != null ) {
                         HTTP.ContentTypeWithEncoding contentTypeEncoding = HTTP.parseContentType(_contentType);
                         if( contentTypeEncoding.encoding != null ) {
@@ -590,13 +599,28 @@ public class ApacheMultipartParser extends DataParser {
                         }
                     }
 
-                    putMapEntry(result, fileItem.getFieldName(), fileItem.getString( _encoding ));
+                    putMapEntry(result, item.getFieldName(), read(item, _encoding));
+                } else if (sink != null) {
+                    Upload upload;
+                    try {
+                        upload = sink.store(item.getFieldName(), item.getName(), item.getContentType(), item.openStream());
+                    } catch (FileUploadIOException e) {
+                        throw (FileUploadException) e.getCause();
+                    }
+                    if (upload != null) {
+                        uploads().add(upload);
+                        putMapEntry(result, item.getFieldName(), item.getFieldName());
+                    }
                 } else {
-                    @SuppressWarnings("unchecked") List<Upload> uploads = (List<Upload>) Request.current().args.get("__UPLOADS");
-                    if (uploads == null) {
-                        uploads = new ArrayList<Upload>();
-                        Request.current().args.put("__UPLOADS", uploads);
+                    FileItem fileItem = new AutoFileItem(item);
+                    try {
+                        Streams.copy(item.openStream(), fileItem.getOutputStream(), true);
+                    } catch (FileUploadIOException e) {
+                        throw (FileUploadException) e.getCause();
+                    } catch (IOException e) {
+                        throw new IOFileUploadException("Processing of " + MULTIPART_FORM_DATA + " request failed. " + e.getMessage(), e);
                     }
+                    List<Upload> uploads = uploads();
                     try {
                         uploads.add(new FileUpload(fileItem));
                     } catch (Exception e) {
@@ -606,7 +630,14 @@ public class ApacheMultipartParser extends DataParser {
                     putMapEntry(result, fileItem.getFieldName(), fileItem.getFieldName());
                 }
             }
+        } catch (SizeException e) {
+            Logger.warn("%s. Can be configured using 'upload.maxSize' and 'upload.maxPartSize'", e.getMessage());
+            throw new Status(413); //413 Request Entity Too Large
         } catch (FileUploadIOException e) {
+            if (e.getCause() instanceof SizeException) {
+                Logger.warn("%s. Can be configured using 'upload.maxSize' and 'upload.maxPartSize'", e.getCause().getMessage());
+                throw new Status(413); //413 Request Entity Too Large
+            }
             Logger.debug(e, "error");
             throw new IllegalStateException("Error when handling upload", e);
         } catch (IOException e) {
@@ -615,12 +646,44 @@ public class ApacheMultipartParser extends DataParser {
         } catch (FileUploadException e) {
             Logger.debug(e, "error");
             throw new IllegalStateException("Error when handling upload", e);
+        } catch (Status e) {
+            throw e;
         } catch (Exception e) {
             Logger.debug(e, "error");
             throw new UnexpectedException(e);
         }
         return result;
-    }    // ---------------------------------------------------------- Class methods
+    }
+
+    private static String read(FileItemStream item, String encoding) throws IOException, FileUploadException {
+        try {
+            return Streams.asString(item.openStream(), encoding);
+        } catch (FileUploadIOException e) {
+            throw (FileUploadException) e.getCause();
+        }
+    }
+
+    private static List<Upload> uploads() {
+        @SuppressWarnings("unchecked") List<Upload> uploads = (List<Upload>) Request.current().args.get("__UPLOADS");
+        if (uploads == null) {
+            uploads = new ArrayList<Upload>();
+            Request.current().args.put("__UPLOADS", uploads);
+        }
+        return uploads;
+    }
+
+    private static UploadSink resolveSink() throws Exception {
+        UploadSink sink = (UploadSink) Request.current().args.get(SINK);
+        if (sink == null) {
+            String sinkClass = Play.configuration.getProperty("upload.sink");
+            if (sinkClass != null && sinkClass.length() > 0) {
+                sink = (UploadSink) Play.classloader.loadClass(sinkClass).newInstance();
+            }
+        }
+        return sink;
+    }
+
+    // ---------------------------------------------------------- Class methods
     // ----------------------------------------------------- Manifest constants
     /**
      * HTTP content type header name.
@@ -650,17 +713,22 @@ public class ApacheMultipartParser extends DataParser {
      * HTTP content type header for multiple uploads.
      */
     private static final String MULTIPART_MIXED = "multipart/mixed";
+    /**
+     * Request arg holding the {@link UploadSink} of the current request.
+     */
+    private static final String SINK = "__UPLOAD_SINK";
+    private static final String PARSED = "__MULTIPART_PARSED";
     // ----------------------------------------------------------- Data members
     /**
      * The maximum size permitted for the complete request, as opposed to
      * {@link #fileSizeMax}. A value of -1 indicates no maximum.
      */
-    private long sizeMax = -1;
+    private final long sizeMax = Long.parseLong(Play.configuration.getProperty("upload.maxSize", "-1"));
     /**
      * The maximum size permitted for a single uploaded file, as opposed to
      * {@link #sizeMax}. A value of -1 indicates no maximum.
      */
-    private long fileSizeMax = -1;
+    private final long fileSizeMax = Long.parseLong(Play.configuration.getProperty("upload.maxPartSize", "-1"));
 
     // ------------------------------------------------------ Protected methods
 
@@ -1034,7 +1102,19 @@ public class ApacheMultipartParser extends DataParser {
             }
 
             if (sizeMax >= 0) {
-                // TODO check size
+                // reject without reading the body when the announced size is already too large
+                Http.Header contentLength = Request.current().headers.get("content-length");
+                if (contentLength != null) {
+                    long requestSize = -1;
+                    try {
+                        requestSize = Long.parseLong(contentLength.value());
+                    } catch (NumberFormatException e) {
+                        // Ignore, the body is checked while it is read
+                    }
+                    if (requestSize > sizeMax) {
+                        throw new SizeLimitExceededException("the request was rejected because" + " its size (" + requestSize + ") exceeds the configured maximum" + " (" + sizeMax + ")", requestSize, sizeMax);
+                    }
+                }
 
                 input = new LimitedInputStream(input, sizeMax) {
 
@@ -0,0 +1,27 @@
+package play.data.parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import play.data.Upload;
+
+/**
+ * Consumes the file parts of a multipart request while they are parsed.
+ *
+ * A sink receives the raw part content as a stream, so it can pipe it to its final destination
+ * (a blob store, a digest, ...) without the part being buffered in memory or spooled to a
+ * temporary file first. A sink is either configured for the whole application with
+ * upload.sink=my.UploadSinkClass or set for the current request with
+ * {@link ApacheMultipartParser#streamTo(UploadSink)} before the params are read (eg. in a @Before).
+ */
+public interface UploadSink {
+
+    /**
+     * Consume a file part.
+     * @param fieldName The form field name
+     * @param fileName The file name sent by the browser
+     * @param contentType The part content type, or null
+     * @param data The part content; it is limited to upload.maxPartSize bytes and does not need to be closed
+     * @return The upload to bind to the action parameters, or null if the part must not be bound
+     */
+    Upload store(String fieldName, String fileName, String contentType, InputStream data) throws IOException;
+}
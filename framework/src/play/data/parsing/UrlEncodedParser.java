@@ -2,6 +2,7 @@ package play.data.parsing;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
@@ -14,8 +15,6 @@ import play.mvc.Http;
 import play.mvc.results.Status;
 import play.utils.Utils;
 
-import org.apache.commons.codec.net.URLCodec;
-
 /**
  * Parse url-encoded requests.
  */
@@ -23,6 +22,10 @@ public class UrlEncodedParser extends DataParser {
 
     // Sets the maximum count of accepted POST params - protection against Hash collision DOS attacks
     private static final int maxParams = Integer.parseInt(Play.configuration.getProperty("http.maxParams", "1000")); // 0 == no limit
+    // Sets the maximum size in bytes of a single url-encoded param (key and value)
+    private static final int maxParamSize = Integer.parseInt(Play.configuration.getProperty("http.maxParamSize", "0")); // 0 == no limit
+
+    private static final byte[] CHARSET_PARAM = {'_', 'c', 'h', 'a', 'r', 's', 'e', 't', '_'};
     
     boolean forQueryString = false;
     
@@ -46,16 +49,8 @@ public class UrlEncodedParser extends DataParser {
         // Encoding is either retrieved from contentType or it is the default encoding
         final String encoding = Http.Request.current().encoding;
         try {
-            Map<String, String[]> params = new HashMap<String, String[]>();
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ( (bytesRead = is.read(buffer)) > 0 ) {
-                os.write( buffer, 0, bytesRead);
-            }
-
-            String data = new String(os.toByteArray(), encoding);
-            if (data.length() == 0) {
+            byte[] data = readAll(is);
+            if (data.length == 0) {
                 //data is empty - can skip the rest
                 return new HashMap<String, String[]>(0);
             }
@@ -63,8 +58,8 @@ public class UrlEncodedParser extends DataParser {
             // data is o the form:
             // a=b&b=c%12...
 
-            // Let us parse in two phases - we wait until everything is parsed before
-            // we decoded it - this makes it possible for use to look for the
+            // Let us parse in two phases - we first locate the params in the raw bytes, then
+            // we decode them - this makes it possible for use to look for the
             // special _charset_ param which can hold the charset the form is encoded in.
             //
             // http://www.crazysquirrel.com/computing/general/form-encoding.jspx
@@ -72,40 +67,53 @@ public class UrlEncodedParser extends DataParser {
             //
             // NB: _charset_ must always be used with accept-charset and it must have the same value
 
-            String[] keyValues = data.split("&");
-
-
-            // to prevent the Play-server from being vulnerable to POST hash collision DOS-attack (Denial of Service through hash table multi-collisions),
-            // we should by default not parse the params into HashMap if the count exceeds a maximum limit
-            if(maxParams != 0 && keyValues.length > maxParams) {
-                Logger.warn("Number of request parameters %d is higher than maximum of %d, aborting. Can be configured using 'http.maxParams'", keyValues.length, maxParams);
-                throw new Status(413); //413 Request Entity Too Large
-            }
-
-            for (String keyValue : keyValues) {
-                // split this key-value on the first '='
-                int i = keyValue.indexOf('=');
-                String key=null;
-                String value=null;
-                if ( i > 0) {
-                    key = keyValue.substring(0,i);
-                    value = keyValue.substring(i+1);
-                } else {
-                    key = keyValue;
+            // First phase - find where each key and value starts and ends, without creating any string.
+            // Each param takes 3 slots: start of the key, position of the '=' (or -1), end of the value
+            int[] bounds = new int[48];
+            int count = 0;
+            String providedCharset = null;
+            int start = 0;
+            while (start <= data.length) {
+                int end = indexOf(data, (byte) '&', start, data.length);
+                int eq = indexOf(data, (byte) '=', start, end);
+                // a leading '=' is part of the key
+                if (eq == start) {
+                    eq = -1;
                 }
-                if (key.length()>0) {
-                    Utils.Maps.mergeValueInMap(params, key, value);
+                if (end > start) {
+                    // to prevent the Play-server from being vulnerable to POST hash collision DOS-attack (Denial of Service through hash table multi-collisions),
+                    // we should by default not parse the params into HashMap if the count exceeds a maximum limit
+                    if (maxParams != 0 && count >= maxParams) {
+                        Logger.warn("Number of request parameters is higher than maximum of %d, aborting. Can be configured using 'http.maxParams'", maxParams);
+                        throw new Status(413); //413 Request Entity Too Large
+                    }
+                    if (maxParamSize != 0 && end - start > maxParamSize) {
+                        Logger.warn("Size of a request parameter is higher than maximum of %d bytes, aborting. Can be configured using 'http.maxParamSize'", maxParamSize);
+                        throw new Status(413); //413 Request Entity Too Large
+                    }
+                    if (3 * count + 3 > bounds.length) {
+                        int[] newBounds = new int[bounds.length * 2];
+                        System.arraycopy(bounds, 0, newBounds, 0, bounds.length);
+                        bounds = newBounds;
+                    }
+                    bounds[3 * count] = start;
+                    bounds[3 * count + 1] = eq;
+                    bounds[3 * count + 2] = end;
+                    count++;
+                    if (eq > 0 && providedCharset == null && matches(data, start, eq, CHARSET_PARAM)) {
+                        providedCharset = new String(data, eq + 1, end - eq - 1, "ISO-8859-1");
+                    }
                 }
+                start = end + 1;
             }
 
             // Second phase - look for _charset_ param and do the encoding
             String charset = encoding;
-            if (params.containsKey("_charset_")) {
+            if (providedCharset != null) {
                 // The form contains a _charset_ param - When this is used together
                 // with accept-charset, we can use _charset_ to extract the encoding.
                 // PS: When rendering the view/form, _charset_ and accept-charset must be given the
                 // same value - since only Firefox and sometimes IE actually sets it when Posting
-                String providedCharset = params.get("_charset_")[0];
                 // Must be sure the providedCharset is a valid encoding..
                 try {
                     "test".getBytes(providedCharset);
@@ -116,29 +124,26 @@ public class UrlEncodedParser extends DataParser {
                 }
             }
 
-            // We're ready to decode the params
-            Map<String, String[]> decodedParams = new HashMap<String, String[]>(params.size());
-            URLCodec codec = new URLCodec();
-            for (Map.Entry<String, String[]> e : params.entrySet()) {
-                String key = e.getKey();
-                try {
-                    key = codec.decode(e.getKey(), charset);
-                } catch (Throwable z) {
-                    // Nothing we can do about, ignore
-                }
-                for (String value : e.getValue()) {
-                    try {
-                        Utils.Maps.mergeValueInMap(decodedParams, key, (value == null ? null : codec.decode(value, charset)));
-                    } catch (Throwable z) {
-                        // Nothing we can do about, lets fill in with the non decoded value
-                        Utils.Maps.mergeValueInMap(decodedParams, key, value);
-                    }
+            // We're ready to decode the params, straight from the bytes
+            Map<String, String[]> decodedParams = new HashMap<String, String[]>(count * 4 / 3 + 1);
+            byte[] buffer = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int keyStart = bounds[3 * i];
+                int eq = bounds[3 * i + 1];
+                int end = bounds[3 * i + 2];
+                int keyEnd = eq < 0 ? end : eq;
+                int longest = Math.max(keyEnd - keyStart, eq < 0 ? 0 : end - eq - 1);
+                if (longest > buffer.length) {
+                    buffer = new byte[longest];
                 }
+                String key = decode(data, keyStart, keyEnd, charset, encoding, buffer);
+                String value = eq < 0 ? null : decode(data, eq + 1, end, charset, encoding, buffer);
+                Utils.Maps.mergeValueInMap(decodedParams, key, value);
             }
 
             // add the complete body as a parameters
             if(!forQueryString) {
-                decodedParams.put("body", new String[] {data});
+                decodedParams.put("body", new String[] {new String(data, encoding)});
             }
 
             return decodedParams;
@@ -150,4 +155,70 @@ public class UrlEncodedParser extends DataParser {
         }
     }
 
+    private static byte[] readAll(InputStream is) throws IOException {
+        int available = is.available();
+        ByteArrayOutputStream os = new ByteArrayOutputStream(available > 0 ? available : 1024);
+        byte[] buffer = new byte[available > 0 && available < 8192 ? available : 8192];
+        int bytesRead;
+        while ( (bytesRead = is.read(buffer)) > 0 ) {
+            os.write( buffer, 0, bytesRead);
+        }
+        return os.toByteArray();
+    }
+
+    private static int indexOf(byte[] data, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return b == '&' ? to : -1;
+    }
+
+    private static boolean matches(byte[] data, int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (data[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode an url-encoded part of the data. Parts without any escaped character are directly
+     * turned into a String; invalid escape sequences leave the part undecoded.
+     */
+    static String decode(byte[] data, int start, int end, String charset, String encoding, byte[] buffer) throws UnsupportedEncodingException {
+        int i = start;
+        while (i < end && data[i] != '%' && data[i] != '+') {
+            i++;
+        }
+        if (i == end) {
+            return new String(data, start, end - start, charset);
+        }
+        int length = i - start;
+        System.arraycopy(data, start, buffer, 0, length);
+        for (; i < end; i++) {
+            byte b = data[i];
+            if (b == '+') {
+                buffer[length++] = ' ';
+            } else if (b == '%') {
+                int high = i + 1 < end ? Character.digit((char) data[i + 1], 16) : -1;
+                int low = i + 2 < end ? Character.digit((char) data[i + 2], 16) : -1;
+                if (high < 0 || low < 0) {
+                    // Nothing we can do about, lets fill in with the non decoded value
+                    return new String(data, start, end - start, encoding);
+                }
+                buffer[length++] = (byte) ((high << 4) + low);
+                i += 2;
+            } else {
+                buffer[length++] = b;
+            }
+        }
+        return new String(buffer, 0, length, charset);
+    }
+
 }
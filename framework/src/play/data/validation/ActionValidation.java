@@ -0,0 +1,181 @@
+package play.data.validation;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import net.sf.oval.ConstraintViolation;
+import net.sf.oval.configuration.annotation.AbstractAnnotationCheck;
+import net.sf.oval.configuration.annotation.Constraint;
+import net.sf.oval.configuration.annotation.Constraints;
+import net.sf.oval.context.MethodParameterContext;
+import play.utils.ClassloaderCache;
+import play.utils.Java;
+
+/**
+ * The validation plan of an action's parameters.
+ *
+ * Plans are computed once per action method and cached until the application classloader
+ * state changes. When the parameters are only constrained by @Required, @Min, @Max and @Email
+ * (with plain message keys), the checks are applied directly; otherwise the parameters are
+ * validated by OVal, with a Guard shared by all requests.
+ */
+class ActionValidation {
+
+    private static final ClassloaderCache<Method, ActionValidation> cache = new ClassloaderCache<Method, ActionValidation>();
+    // The guard keeps the constraints of the classes it has validated, so it is dropped with the plans
+    private static final ClassloaderCache<String, ValidationPlugin.Validator> guards = new ClassloaderCache<String, ValidationPlugin.Validator>();
+
+    /** whether the action has annotated parameters at all */
+    final boolean validated;
+    /** the checks of each parameter, or null when OVal must be used */
+    final ParameterCheck[][] checks;
+    volatile String[] paramNames;
+
+    private ActionValidation(Method actionMethod) {
+        Annotation[][] parameterAnnotations = actionMethod.getParameterAnnotations();
+        boolean annotated = false;
+        for (Annotation[] annotations : parameterAnnotations) {
+            if (annotations.length > 0) {
+                annotated = true;
+                break;
+            }
+        }
+        this.validated = annotated;
+        this.checks = annotated ? directChecks(actionMethod, parameterAnnotations) : null;
+    }
+
+    /**
+     * Retrieve the validation plan of an action
+     */
+    static ActionValidation of(Method actionMethod) {
+        Map<Method, ActionValidation> plans = cache.get();
+        ActionValidation plan = plans.get(actionMethod);
+        if (plan == null) {
+            plan = new ActionValidation(actionMethod);
+            plans.put(actionMethod, plan);
+        }
+        return plan;
+    }
+
+    private static ValidationPlugin.Validator guard() {
+        ConcurrentMap<String, ValidationPlugin.Validator> current = guards.get();
+        ValidationPlugin.Validator guard = current.get("guard");
+        if (guard == null) {
+            ValidationPlugin.Validator created = new ValidationPlugin.Validator();
+            guard = current.putIfAbsent("guard", created);
+            if (guard == null) {
+                guard = created;
+            }
+        }
+        return guard;
+    }
+
+    /**
+     * Validate the action parameters of the current request
+     */
+    List<Error> validate(Method actionMethod) throws Exception {
+        return validate(actionMethod, ValidationPlugin.Validator.actionArgs(actionMethod));
+    }
+
+    List<Error> validate(Method actionMethod, Object[] args) throws Exception {
+        if (checks == null) {
+            List<ConstraintViolation> violations = guard().validateAction(actionMethod, args);
+            List<Error> errors = new ArrayList<Error>(violations.size());
+            String[] names = paramNames(actionMethod);
+            for (ConstraintViolation violation : violations) {
+                errors.add(new Error(names[((MethodParameterContext) violation.getContext()).getParameterIndex()], violation.getMessage(), violation.getMessageVariables() == null ? new String[0] : violation.getMessageVariables().values().toArray(new String[0])));
+            }
+            return errors;
+        }
+        List<Error> errors = new ArrayList<Error>(0);
+        String[] names = null;
+        for (int i = 0; i < checks.length; i++) {
+            for (ParameterCheck check : checks[i]) {
+                if (!check.check.isSatisfied(null, args[i], null, null)) {
+                    if (names == null) {
+                        names = paramNames(actionMethod);
+                    }
+                    errors.add(new Error(names[i], check.message, check.variables()));
+                }
+            }
+        }
+        return errors;
+    }
+
+    private String[] paramNames(Method actionMethod) throws Exception {
+        String[] names = paramNames;
+        if (names == null) {
+            names = Java.parameterNames(actionMethod);
+            paramNames = names;
+        }
+        return names;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ParameterCheck[][] directChecks(Method actionMethod, Annotation[][] parameterAnnotations) {
+        for (Annotation annotation : actionMethod.getAnnotations()) {
+            if (annotation.annotationType().getName().startsWith("net.sf.oval")) {
+                // @Pre conditions and such
+                return null;
+            }
+        }
+        ParameterCheck[][] checks = new ParameterCheck[parameterAnnotations.length][];
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            List<ParameterCheck> parameterChecks = new ArrayList<ParameterCheck>(parameterAnnotations[i].length);
+            for (Annotation annotation : parameterAnnotations[i]) {
+                AbstractAnnotationCheck check;
+                Class<? extends Annotation> type = annotation.annotationType();
+                if (type == Required.class) {
+                    check = new RequiredCheck();
+                } else if (type == Min.class) {
+                    check = new MinCheck();
+                } else if (type == Max.class) {
+                    check = new MaxCheck();
+                } else if (type == Email.class) {
+                    check = new EmailCheck();
+                } else if (type.isAnnotationPresent(Constraint.class) || type.isAnnotationPresent(Constraints.class) || type.getName().startsWith("net.sf.oval")) {
+                    return null;
+                } else {
+                    // Not a constraint (eg. @As)
+                    continue;
+                }
+                check.configure(annotation);
+                if (check.getMessage().indexOf('{') >= 0) {
+                    // The message has to be rendered by OVal
+                    return null;
+                }
+                parameterChecks.add(new ParameterCheck(check));
+            }
+            checks[i] = parameterChecks.toArray(new ParameterCheck[parameterChecks.size()]);
+        }
+        return checks;
+    }
+
+    static class ParameterCheck {
+
+        final AbstractAnnotationCheck<?> check;
+        final String message;
+        private volatile String[] variables;
+
+        ParameterCheck(AbstractAnnotationCheck<?> check) {
+            this.check = check;
+            this.message = check.getMessage();
+        }
+
+        /**
+         * The message variables, read once the check has failed (they only depend on the annotation values)
+         */
+        String[] variables() {
+            String[] result = variables;
+            if (result == null) {
+                Map<String, ? extends Object> messageVariables = check.getMessageVariables();
+                result = messageVariables == null ? new String[0] : messageVariables.values().toArray(new String[0]);
+                variables = result;
+            }
+            return result;
+        }
+    }
+}
@@ -10,9 +10,11 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import net.sf.oval.configuration.annotation.AbstractAnnotationCheck;
 import play.Play;
+import play.classloading.ApplicationClassloaderState;
 import play.classloading.enhancers.LVEnhancer.LVEnhancerRuntime;
 import play.exceptions.UnexpectedException;
 
@@ -141,12 +143,45 @@ public class Validation {
 
     // ~~~~ Integration helper
     public static Map<String, List<Validator>> getValidators(Class<?> clazz, String name) {
-        Map<String, List<Validator>> result = new HashMap<String, List<Validator>>();
-        searchValidator(clazz, name, result);
+        Map<String, Object> cache = validatorsCache();
+        String cacheKey = clazz.getName() + "#" + name;
+        @SuppressWarnings("unchecked") Map<String, List<Validator>> result = (Map<String, List<Validator>>) cache.get(cacheKey);
+        if (result == null) {
+            result = new HashMap<String, List<Validator>>();
+            searchValidator(clazz, name, result);
+            result = Collections.unmodifiableMap(result);
+            cache.put(cacheKey, result);
+        }
         return result;
     }
 
     public static List<Validator> getValidators(Class<?> clazz, String property, String name) {
+        Map<String, Object> cache = validatorsCache();
+        String cacheKey = clazz.getName() + "#" + property + "#" + name;
+        @SuppressWarnings("unchecked") List<Validator> validators = (List<Validator>) cache.get(cacheKey);
+        if (validators == null) {
+            validators = Collections.unmodifiableList(searchValidators(clazz, property, name));
+            cache.put(cacheKey, validators);
+        }
+        return validators;
+    }
+
+    // Validators of the classes, cached until the application classloader state changes
+    private static Map<String, Object> validatorsByClass = new ConcurrentHashMap<String, Object>();
+    private static ApplicationClassloaderState lastKnownState;
+
+    private static synchronized Map<String, Object> validatorsCache() {
+        if (Play.classloader != null) {
+            ApplicationClassloaderState state = Play.classloader.currentState;
+            if (!state.equals(lastKnownState)) {
+                lastKnownState = state;
+                validatorsByClass = new ConcurrentHashMap<String, Object>();
+            }
+        }
+        return validatorsByClass;
+    }
+
+    static List<Validator> searchValidators(Class<?> clazz, String property, String name) {
         try {
             List<Validator> validators = new ArrayList<Validator>();
             while (!clazz.equals(Object.class)) {
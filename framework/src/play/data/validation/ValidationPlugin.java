@@ -1,6 +1,5 @@
 package play.data.validation;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.URLDecoder;
@@ -12,15 +11,14 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.sf.oval.ConstraintViolation;
-import net.sf.oval.context.MethodParameterContext;
 import net.sf.oval.guard.Guard;
 import play.PlayPlugin;
 import play.exceptions.ActionNotFoundException;
 import play.exceptions.UnexpectedException;
-import play.utils.Java;
 import play.mvc.ActionInvoker;
 import play.mvc.Http;
 import play.mvc.Http.Cookie;
+import play.mvc.RequestTiming;
 import play.mvc.Scope;
 import play.mvc.results.Result;
 
@@ -59,23 +57,17 @@ public class ValidationPlugin extends PlayPlugin {
 
         try {
             Validation.current.set(restore());
-            boolean verify = false;
-            for (Annotation[] annotations : actionMethod.getParameterAnnotations()) {
-                if (annotations.length > 0) {
-                    verify = true;
-                    break;
-                }
-            }
-            if (!verify) {
+            ActionValidation plan = ActionValidation.of(actionMethod);
+            if (!plan.validated) {
                 return;
             }
-            List<ConstraintViolation> violations = new Validator().validateAction(actionMethod);
-            ArrayList<Error> errors = new ArrayList<Error>();
-            String[] paramNames = Java.parameterNames(actionMethod);
-            for (ConstraintViolation violation : violations) {
-                errors.add(new Error(paramNames[((MethodParameterContext) violation.getContext()).getParameterIndex()], violation.getMessage(), violation.getMessageVariables() == null ? new String[0] : violation.getMessageVariables().values().toArray(new String[0])));
+            int phase = RequestTiming.enter(RequestTiming.VALIDATE);
+            try {
+                List<Error> errors = plan.validate(actionMethod);
+                Validation.current.get().errors.addAll(errors);
+            } finally {
+                RequestTiming.exit(phase);
             }
-            Validation.current.get().errors.addAll(errors);
         } catch (Exception e) {
             throw new UnexpectedException(e);
         }
@@ -104,7 +96,17 @@ public class ValidationPlugin extends PlayPlugin {
     static class Validator extends Guard {
 
         public List<ConstraintViolation> validateAction(Method actionMethod) throws Exception {
+            return validateAction(actionMethod, actionArgs(actionMethod));
+        }
+
+        List<ConstraintViolation> validateAction(Method actionMethod, Object[] rArgs) {
             List<ConstraintViolation> violations = new ArrayList<ConstraintViolation>();
+            validateMethodParameters(null, actionMethod, rArgs, violations);
+            validateMethodPre(null, actionMethod, rArgs, violations);
+            return violations;
+        }
+
+        static Object[] actionArgs(Method actionMethod) throws Exception {
             Object instance = null;
             // Patch for scala defaults
             if (!Modifier.isStatic(actionMethod.getModifiers()) && actionMethod.getDeclaringClass().getSimpleName().endsWith("$")) {
@@ -114,10 +116,7 @@ public class ValidationPlugin extends PlayPlugin {
                     throw new ActionNotFoundException(Http.Request.current().action, e);
                 }
             }
-            Object[] rArgs = ActionInvoker.getActionMethodArgs(actionMethod, instance);
-            validateMethodParameters(null, actionMethod, rArgs, violations);
-            validateMethodPre(null, actionMethod, rArgs, violations);
-            return violations;
+            return ActionInvoker.getActionMethodArgs(actionMethod, instance);
         }
     }
     static Pattern errorsParser = Pattern.compile("\u0000([^:]*):([^\u0000]*)\u0000");
@@ -432,6 +432,74 @@ public class GenericModel extends JPABase {
                 throw new JPAQueryException("Error while executing query <strong>" + sq + "</strong>", JPAQueryException.findBestCause(e));
             }
         }
+
+        /**
+         * Iterate over the results of the query, fetching them by batches. The entities of a
+         * batch are detached from the persistence context when the next batch is fetched.
+         * @param batchSize The number of entities fetched at once
+         * @return An iterator over the entities
+         */
+        public <T> Iterator<T> iterate(final int batchSize) {
+            final int first = query.getFirstResult();
+            final int max = query.getMaxResults();
+            return new Iterator<T>() {
+
+                List<T> batch = Collections.emptyList();
+                int index;
+                int position;
+                boolean last;
+
+                public boolean hasNext() {
+                    if (index < batch.size()) {
+                        return true;
+                    }
+                    if (last) {
+                        return false;
+                    }
+                    detach(batch);
+                    int length = Math.min(batchSize, max - position);
+                    if (length <= 0) {
+                        last = true;
+                        batch = Collections.emptyList();
+                        return false;
+                    }
+                    query.setFirstResult(first + position);
+                    query.setMaxResults(length);
+                    try {
+                        batch = query.getResultList();
+                    } catch (Exception e) {
+                        throw new JPAQueryException("Error while executing query <strong>" + sq + "</strong>", JPAQueryException.findBestCause(e));
+                    }
+                    index = 0;
+                    position += batch.size();
+                    last = batch.size() < length;
+                    return !batch.isEmpty();
+                }
+
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return batch.get(index++);
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+                private void detach(List<T> entities) {
+                    if (entities.isEmpty()) {
+                        return;
+                    }
+                    EntityManager em = JPA.em();
+                    for (T entity : entities) {
+                        if (entity != null && em.contains(entity)) {
+                            em.detach(entity);
+                        }
+                    }
+                }
+            };
+        }
     }
 
     // ----- THIS CODE IS DEPRECATED AND WILL BE REMOVED IN NEXT VERSIONs
@@ -21,6 +21,7 @@ import play.db.DBConfig;
 import play.db.Model;
 import play.exceptions.JPAException;
 import play.exceptions.UnexpectedException;
+import play.mvc.RequestTiming;
 import play.utils.Utils;
 
 import javax.persistence.EmbeddedId;
@@ -356,7 +357,12 @@ public class JPAPlugin extends PlayPlugin {
 
     @Override
     public void afterInvocation() {
-        closeTx(false);
+        int phase = RequestTiming.enter(RequestTiming.COMMIT);
+        try {
+            closeTx(false);
+        } finally {
+            RequestTiming.exit(phase);
+        }
     }
 
     @Override
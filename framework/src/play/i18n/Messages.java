@@ -1,6 +1,8 @@
 package play.i18n;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,6 +28,7 @@ import play.data.binding.Binder;
 public class Messages {
 
     private static final Object[] NO_ARGS = new Object[]{null};
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
     static public Properties defaults;
 
@@ -86,24 +89,11 @@ public class Messages {
             return message;
         }
     
-        String value = null;
         if( key == null ) {
             return "";
         }
-        if (locales.containsKey(locale)) {
-            value = locales.get(locale).getProperty(key.toString());
-        }
-        if (value == null && locale != null && locale.length() == 5 && locales.containsKey(locale.substring(0, 2))) {
-            value = locales.get(locale.substring(0, 2)).getProperty(key.toString());
-        }
-        if (value == null) {
-            value = defaults.getProperty(key.toString());
-        }
-        if (value == null) {
-            value = key.toString();
-        }
-        Locale l = Lang.getLocaleOrDefault(locale);
-        return formatString(l, value, args);
+        Bundle bundle = bundle(locale);
+        return bundle.compiled(key.toString()).format(bundle.locale, args);
     }
 
     public static String formatString(String value, Object... args) {
@@ -111,8 +101,13 @@ public class Messages {
     }
 
     public static String formatString(Locale locale, String value, Object... args) {
-        String message = String.format(locale, value, coolStuff(value, args));
+        return new CompiledMessage(value).format(locale, args);
+    }
 
+    static String expand(String message) {
+        if (message.indexOf("&{") < 0) {
+            return message;
+        }
         Matcher matcher = recursive.matcher(message);
         StringBuffer sb = new StringBuffer();
         while(matcher.find()) {
@@ -124,15 +119,16 @@ public class Messages {
 
     static Pattern formatterPattern = Pattern.compile("%((\\d+)\\$)?([-#+ 0,(]+)?(\\d+)?([.]\\d+)?([bBhHsScCdoxXeEfgGaAtT])");
 
-    @SuppressWarnings("unchecked")
     static Object[] coolStuff(String pattern, Object[] args) {
-    	// when invoked with a null argument we get a null args instead of an array with a null value.
-
-    	if(args == null)
-    		return NO_ARGS;
-
-        Class<? extends Number>[] conversions = new Class[args.length];
+        return convert(conversions(pattern), args);
+    }
 
+    /**
+     * The types the arguments of a pattern are converted to, by position
+     */
+    @SuppressWarnings("unchecked")
+    static Class<? extends Number>[] conversions(String pattern) {
+        List<Class<? extends Number>> conversions = new ArrayList<Class<? extends Number>>();
         Matcher matcher = formatterPattern.matcher(pattern);
         int incrementalPosition = 1;
         while(matcher.find()) {
@@ -143,20 +139,35 @@ public class Messages {
             } else {
                 position = Integer.parseInt(matcher.group(2));
             }
-            if(conversion.equals("d") && position <= conversions.length) {
-                conversions[position-1] = Long.class;
+            Class<? extends Number> type = null;
+            if(conversion.equals("d")) {
+                type = Long.class;
             }
-            if(conversion.equals("f") && position <= conversions.length) {
-                conversions[position-1] = Double.class;
+            if(conversion.equals("f")) {
+                type = Double.class;
+            }
+            if (type != null && position > 0) {
+                while (conversions.size() < position) {
+                    conversions.add(null);
+                }
+                conversions.set(position - 1, type);
             }
         }
+        return conversions.toArray(new Class[conversions.size()]);
+    }
+
+    static Object[] convert(Class<? extends Number>[] conversions, Object[] args) {
+    	// when invoked with a null argument we get a null args instead of an array with a null value.
+
+    	if(args == null)
+    		return NO_ARGS;
 
         Object[] result = new Object[args.length];
         for(int i=0; i < args.length; i++) {
             if(args[i] == null) {
                 continue;
             }
-            if(conversions[i] == null) {
+            if(i >= conversions.length || conversions[i] == null) {
                 result[i] = args[i];
             } else {
                 try {
@@ -174,18 +185,196 @@ public class Messages {
     /**
      * return all messages for a locale
      * @param locale the locale code eg. fr, fr_FR
-     * @return messages as a {@link java.util.Properties java.util.Properties}
+     * @return a copy of the messages as a {@link java.util.Properties java.util.Properties}
      */
     public static Properties all(String locale) {
         if(locale == null || "".equals(locale))
             return defaults;
-        Properties mergedMessages = new Properties();
-        mergedMessages.putAll(defaults);
-        if (locale != null && locale.length() == 5 && locales.containsKey(locale.substring(0, 2))) {
-        	mergedMessages.putAll(locales.get(locale.substring(0, 2)));
+        Properties all = new Properties();
+        all.putAll(bundle(locale).all);
+        return all;
+    }
+
+    private static final ConcurrentMap<String, Bundle> bundles = new ConcurrentHashMap<String, Bundle>();
+
+    /**
+     * The merged messages of a locale, rebuilt when the messages are reloaded
+     */
+    static Bundle bundle(String locale) {
+        String name = locale == null ? "" : locale;
+        Bundle bundle = bundles.get(name);
+        if (bundle == null || !bundle.isCurrent()) {
+            bundle = new Bundle(name);
+            bundles.put(name, bundle);
+        }
+        return bundle;
+    }
+
+    /**
+     * The messages of a locale merged with those of its language and the defaults, and their compiled formats
+     */
+    static class Bundle {
+
+        final String name;
+        final Locale locale;
+        final Properties all;
+        private final Properties defaults;
+        private final Properties language;
+        private final Properties messages;
+        private final int size;
+        private final ConcurrentMap<String, CompiledMessage> compiled = new ConcurrentHashMap<String, CompiledMessage>();
+
+        Bundle(String name) {
+            this.name = name;
+            this.locale = Lang.getLocaleOrDefault(name.length() == 0 ? null : name);
+            this.defaults = Messages.defaults;
+            this.language = language(name);
+            this.messages = locales.get(name);
+            this.size = size();
+            Properties merged = new Properties();
+            if (defaults != null) {
+                merged.putAll(defaults);
+            }
+            if (language != null) {
+                merged.putAll(language);
+            }
+            if (messages != null) {
+                merged.putAll(messages);
+            }
+            this.all = merged;
+        }
+
+        private static Properties language(String name) {
+            return name.length() == 5 ? locales.get(name.substring(0, 2)) : null;
+        }
+
+        private int size() {
+            return (defaults == null ? 0 : defaults.size()) + (language == null ? 0 : language.size()) + (messages == null ? 0 : messages.size());
+        }
+
+        /**
+         * Whether the messages have not been replaced (or added to) since the bundle was built
+         */
+        boolean isCurrent() {
+            return defaults == Messages.defaults && language == language(name) && messages == locales.get(name) && size == size();
+        }
+
+        CompiledMessage compiled(String key) {
+            CompiledMessage message = compiled.get(key);
+            if (message == null) {
+                String value = all.getProperty(key);
+                if (value == null) {
+                    // The key is the message: not cached, it may be anything
+                    return new CompiledMessage(key);
+                }
+                message = new CompiledMessage(value);
+                compiled.put(key, message);
+            }
+            return message;
+        }
+    }
+
+    /**
+     * A message pattern, parsed once. Patterns only made of %s, %n$s, %% and %n are formatted
+     * directly, the others by String.format().
+     */
+    static class CompiledMessage {
+
+        final String pattern;
+        final Class<? extends Number>[] conversions;
+        /** literal Strings and argument indexes (Integer), or null */
+        final Object[] parts;
+
+        CompiledMessage(String pattern) {
+            this.pattern = pattern;
+            this.conversions = conversions(pattern);
+            this.parts = parse(pattern);
+        }
+
+        private static Object[] parse(String pattern) {
+            List<Object> parts = new ArrayList<Object>();
+            StringBuilder literal = new StringBuilder();
+            int index = 0;
+            int i = 0;
+            while (i < pattern.length()) {
+                char c = pattern.charAt(i);
+                if (c != '%') {
+                    literal.append(c);
+                    i++;
+                    continue;
+                }
+                if (i + 1 >= pattern.length()) {
+                    return null;
+                }
+                char next = pattern.charAt(i + 1);
+                if (next == '%') {
+                    literal.append('%');
+                    i += 2;
+                    continue;
+                }
+                if (next == 'n') {
+                    literal.append(LINE_SEPARATOR);
+                    i += 2;
+                    continue;
+                }
+                int argument;
+                int end = i + 1;
+                while (end < pattern.length() && Character.isDigit(pattern.charAt(end))) {
+                    end++;
+                }
+                if (end == i + 1 && next == 's') {
+                    argument = index++;
+                    i += 2;
+                } else if (end > i + 1 && end + 1 < pattern.length() && pattern.charAt(end) == '$' && pattern.charAt(end + 1) == 's' && pattern.charAt(i + 1) != '0') {
+                    argument = Integer.parseInt(pattern.substring(i + 1, end)) - 1;
+                    i = end + 2;
+                } else {
+                    return null;
+                }
+                if (literal.length() > 0) {
+                    parts.add(literal.toString());
+                    literal.setLength(0);
+                }
+                parts.add(argument);
+            }
+            if (literal.length() > 0) {
+                parts.add(literal.toString());
+            }
+            return parts.toArray();
+        }
+
+        String format(Locale locale, Object... args) {
+            if (args == null) {
+                args = NO_ARGS;
+            }
+            if (parts != null) {
+                String message = direct(args);
+                if (message != null) {
+                    return expand(message);
+                }
+            }
+            return expand(String.format(locale, pattern, convert(conversions, args)));
+        }
+
+        private String direct(Object[] args) {
+            if (parts.length == 1 && parts[0] instanceof String) {
+                return (String) parts[0];
+            }
+            StringBuilder message = new StringBuilder(pattern.length() + 16);
+            for (Object part : parts) {
+                if (part instanceof String) {
+                    message.append((String) part);
+                    continue;
+                }
+                int argument = (Integer) part;
+                if (argument >= args.length || args[argument] instanceof Formattable) {
+                    // Let String.format() handle (or report) it
+                    return null;
+                }
+                message.append(String.valueOf(args[argument]));
+            }
+            return message.toString();
         }
-        mergedMessages.putAll(locales.get(locale));
-        return mergedMessages;
     }
 
 }
@@ -2,6 +2,7 @@ package play.libs;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import org.apache.commons.codec.binary.Base64;
 
@@ -37,6 +38,34 @@ public class Crypto {
 
     static final char[] HEX_CHARS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
 
+    /**
+     * HMAC-SHA1 instance of each thread, with the key it has been initialized with
+     */
+    private static final ThreadLocal<SigningMac> signingMacs = new ThreadLocal<SigningMac>();
+
+    private static class SigningMac {
+
+        byte[] key;
+        Mac mac;
+    }
+
+    /**
+     * @return The HMAC-SHA1 instance of the current thread, initialized with this key
+     */
+    static Mac mac(byte[] key) throws Exception {
+        SigningMac signingMac = signingMacs.get();
+        if (signingMac == null) {
+            signingMac = new SigningMac();
+            signingMac.mac = Mac.getInstance("HmacSHA1");
+            signingMacs.set(signingMac);
+        }
+        if (!Arrays.equals(signingMac.key, key)) {
+            signingMac.mac.init(new SecretKeySpec(key, "HmacSHA1"));
+            signingMac.key = key.clone();
+        }
+        return signingMac.mac;
+    }
+
     /**
      * Sign a message using the application secret key (HMAC-SHA1)
      */
@@ -58,9 +87,7 @@ public class Crypto {
         }
 
         try {
-            Mac mac = Mac.getInstance("HmacSHA1");
-            SecretKeySpec signingKey = new SecretKeySpec(key, "HmacSHA1");
-            mac.init(signingKey);
+            Mac mac = mac(key);
             byte[] messageBytes = message.getBytes("utf-8");
             byte[] result = mac.doFinal(messageBytes);
             int len = result.length;
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Properties;
 
 import org.apache.commons.io.IOUtils;
+import play.exceptions.ConfigurationException;
 import play.exceptions.UnexpectedException;
 import play.utils.OrderSafeProperties;
 
@@ -365,4 +366,33 @@ public class IO {
         }
     }
 
+    /**
+     * Parse a size setting, in bytes or with a k, m or g unit (eg. 512kb, 32mb)
+     * @param size The size
+     * @param property The name of the setting, reported when the size is invalid
+     * @return The size in bytes
+     */
+    public static long parseSize(String size, String property) {
+        String s = size.trim().toLowerCase();
+        long unit = 1;
+        if (s.endsWith("b")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        if (s.endsWith("k")) {
+            unit = 1024;
+        } else if (s.endsWith("m")) {
+            unit = 1024 * 1024;
+        } else if (s.endsWith("g")) {
+            unit = 1024 * 1024 * 1024;
+        }
+        if (unit > 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return Long.parseLong(s.trim()) * unit;
+        } catch (NumberFormatException e) {
+            throw new ConfigurationException("Bad size for " + property + ": " + size);
+        }
+    }
+
 }
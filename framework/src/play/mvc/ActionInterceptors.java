@@ -0,0 +1,145 @@
+package play.mvc;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import play.utils.ClassloaderCache;
+import play.utils.Java;
+
+/**
+ * The resolved interceptors (@Before, @After, @Finally and @Catch) of an action.
+ *
+ * Interceptors are looked up, sorted by priority and filtered with their only/unless
+ * attributes once per controller class and action; the result is cached until the
+ * application classloader state changes. Intercepting a request is then a simple walk
+ * over these arrays.
+ */
+class ActionInterceptors {
+
+    private static final ClassloaderCache<String, ActionInterceptors> cache = new ClassloaderCache<String, ActionInterceptors>();
+
+    final Method[] befores;
+    final Method[] afters;
+    final Method[] finallies;
+    /** whether each @Finally method takes the caught Throwable as single argument */
+    final boolean[] finallyWithThrowable;
+    final Method[] catches;
+    /** exceptions handled by each @Catch method */
+    final Class<?>[][] catchExceptions;
+
+    private ActionInterceptors(Class<?> controllerClass, String action) {
+        this.befores = resolve(controllerClass, action, Before.class);
+        this.afters = resolve(controllerClass, action, After.class);
+        this.finallies = resolve(controllerClass, action, Finally.class);
+        this.finallyWithThrowable = new boolean[finallies.length];
+        for (int i = 0; i < finallies.length; i++) {
+            Class<?>[] parameterTypes = finallies[i].getParameterTypes();
+            finallyWithThrowable[i] = parameterTypes.length == 1 && parameterTypes[0] == Throwable.class;
+        }
+        this.catches = resolve(controllerClass, action, Catch.class);
+        this.catchExceptions = new Class<?>[catches.length][];
+        for (int i = 0; i < catches.length; i++) {
+            Class<?>[] exceptions = catches[i].getAnnotation(Catch.class).value();
+            if (exceptions.length == 0) {
+                exceptions = new Class<?>[]{Exception.class};
+            }
+            catchExceptions[i] = exceptions;
+        }
+    }
+
+    /**
+     * Retrieve the interceptors for an action
+     * @param controllerClass The controller class
+     * @param action The full action name (eg. Application.index)
+     */
+    static ActionInterceptors get(Class<?> controllerClass, String action) {
+        Map<String, ActionInterceptors> interceptors = cache.get();
+        String key = controllerClass.getName() + "#" + action;
+        ActionInterceptors actionInterceptors = interceptors.get(key);
+        if (actionInterceptors == null) {
+            actionInterceptors = new ActionInterceptors(controllerClass, action);
+            interceptors.put(key, actionInterceptors);
+        }
+        return actionInterceptors;
+    }
+
+    private static Method[] resolve(Class<?> controllerClass, String action, final Class<? extends Annotation> type) {
+        List<Method> methods = new ArrayList<Method>(Java.findAllAnnotatedMethods(controllerClass, type));
+        Collections.sort(methods, new Comparator<Method>() {
+
+            public int compare(Method m1, Method m2) {
+                return priority(m1, type) - priority(m2, type);
+            }
+        });
+        List<Method> resolved = new ArrayList<Method>(methods.size());
+        for (Method method : methods) {
+            if (!skip(method, type, action)) {
+                method.setAccessible(true);
+                resolved.add(method);
+            }
+        }
+        return resolved.toArray(new Method[resolved.size()]);
+    }
+
+    private static int priority(Method method, Class<?> type) {
+        if (type == Before.class) {
+            return method.getAnnotation(Before.class).priority();
+        }
+        if (type == After.class) {
+            return method.getAnnotation(After.class).priority();
+        }
+        if (type == Finally.class) {
+            return method.getAnnotation(Finally.class).priority();
+        }
+        return method.getAnnotation(Catch.class).priority();
+    }
+
+    private static boolean skip(Method method, Class<?> type, String action) {
+        String[] only;
+        String[] unless;
+        if (type == Before.class) {
+            only = method.getAnnotation(Before.class).only();
+            unless = method.getAnnotation(Before.class).unless();
+        } else if (type == After.class) {
+            only = method.getAnnotation(After.class).only();
+            unless = method.getAnnotation(After.class).unless();
+        } else if (type == Finally.class) {
+            only = method.getAnnotation(Finally.class).only();
+            unless = method.getAnnotation(Finally.class).unless();
+        } else {
+            // @Catch applies to every action
+            return false;
+        }
+        boolean skip = false;
+        for (String un : only) {
+            if (!un.contains(".")) {
+                un = controllerName(method, type) + "." + un;
+            }
+            if (un.equals(action)) {
+                skip = false;
+                break;
+            } else {
+                skip = true;
+            }
+        }
+        for (String un : unless) {
+            if (!un.contains(".")) {
+                un = controllerName(method, type) + "." + un;
+            }
+            if (un.equals(action)) {
+                skip = true;
+                break;
+            }
+        }
+        return skip;
+    }
+
+    private static String controllerName(Method method, Class<?> type) {
+        String name = method.getDeclaringClass().getName().substring(12);
+        return type == Before.class ? name.replace("$", "") : name;
+    }
+}
@@ -7,6 +7,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
 import java.util.*;
 
 import org.apache.commons.lang.StringUtils;
@@ -31,6 +32,7 @@ import play.mvc.Router.Route;
 import play.mvc.results.NoResult;
 import play.mvc.results.Result;
 import play.utils.Java;
+import play.utils.MethodInvoker;
 import play.utils.Utils;
 
 import com.jamonapi.Monitor;
@@ -71,13 +73,18 @@ public class ActionInvoker {
             return;
         }
 
-        // Route and resolve format if not already done
-        if (request.action == null) {
-            Play.pluginCollection.routeRequest(request);
-            Route route = Router.route(request);
-            Play.pluginCollection.onRequestRouting(route);
+        int phase = RequestTiming.enter(RequestTiming.ROUTE);
+        try {
+            // Route and resolve format if not already done
+            if (request.action == null) {
+                Play.pluginCollection.routeRequest(request);
+                Route route = Router.route(request);
+                Play.pluginCollection.onRequestRouting(route);
+            }
+            request.resolveFormat();
+        } finally {
+            RequestTiming.exit(phase);
         }
-        request.resolveFormat();
 
         // Find the action method
         try {
@@ -137,6 +144,7 @@ public class ActionInvoker {
             monitor = MonitorFactory.start(request.action + "()");
 
             // 3. Invoke the action
+            int phase = RequestTiming.enter(RequestTiming.ACTION);
             try {
                 // @Before
                 handleBefores(request);
@@ -144,15 +152,12 @@ public class ActionInvoker {
                 // Action
 
                 Result actionResult = null;
-                String cacheKey = null;
+                ActionResultCache cache = null;
 
                 // Check the cache (only for GET or HEAD)
                 if ((request.method.equals("GET") || request.method.equals("HEAD")) && actionMethod.isAnnotationPresent(CacheFor.class)) {
-                    cacheKey = actionMethod.getAnnotation(CacheFor.class).id();
-                    if ("".equals(cacheKey)) {
-                        cacheKey = "urlcache:" + request.url + request.querystring;
-                    }
-                    actionResult = (Result) play.cache.Cache.get(cacheKey);
+                    cache = new ActionResultCache(actionMethod.getAnnotation(CacheFor.class), request, response);
+                    actionResult = cache.lookup();
                 }
 
                 if (actionResult == null) {
@@ -162,46 +167,43 @@ public class ActionInvoker {
                     } catch(Result result) {
                         actionResult = result;
                         // Cache it if needed
-                        if (cacheKey != null) {
-                            play.cache.Cache.set(cacheKey, actionResult, actionMethod.getAnnotation(CacheFor.class).value());
+                        if (cache != null) {
+                            cache.store(actionResult);
                         }
                     } catch (InvocationTargetException ex) {
                         // It's a Result ? (expected)
                         if (ex.getTargetException() instanceof Result) {
                             actionResult = (Result) ex.getTargetException();
                             // Cache it if needed
-                            if (cacheKey != null) {
-                                play.cache.Cache.set(cacheKey, actionResult, actionMethod.getAnnotation(CacheFor.class).value());
+                            if (cache != null) {
+                                cache.store(actionResult);
                             }
 
                         } else {
-                            // @Catch
-                            Object[] args = new Object[]{ex.getTargetException()};
-                            List<Method> catches = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Catch.class);
-                            Collections.sort(catches, new Comparator<Method>() {
-
-                                public int compare(Method m1, Method m2) {
-                                    Catch catch1 = m1.getAnnotation(Catch.class);
-                                    Catch catch2 = m2.getAnnotation(Catch.class);
-                                    return catch1.priority() - catch2.priority();
-                                }
-                            });
-                            ControllerInstrumentation.stopActionCall();
-                            for (Method mCatch : catches) {
-                                Class[] exceptions = mCatch.getAnnotation(Catch.class).value();
-                                if (exceptions.length == 0) {
-                                    exceptions = new Class[]{Exception.class};
-                                }
-                                for (Class exception : exceptions) {
-                                    if (exception.isInstance(args[0])) {
-                                        mCatch.setAccessible(true);
-                                        inferResult(invokeControllerMethod(mCatch, args));
-                                        break;
+                            // Serve the previous result if it is recent enough
+                            if (cache != null) {
+                                actionResult = cache.fallback(ex.getTargetException());
+                            }
+                            if (actionResult == null) {
+                                // @Catch
+                                Object[] args = new Object[]{ex.getTargetException()};
+                                ActionInterceptors interceptors = ActionInterceptors.get(Controller.getControllerClass(), request.action);
+                                ControllerInstrumentation.stopActionCall();
+                                for (int i = 0; i < interceptors.catches.length; i++) {
+                                    for (Class<?> exception : interceptors.catchExceptions[i]) {
+                                        if (exception.isInstance(args[0])) {
+                                            inferResult(invokeControllerMethod(interceptors.catches[i], args));
+                                            break;
+                                        }
                                     }
                                 }
-                            }
 
-                            throw ex;
+                                throw ex;
+                            }
+                        }
+                    } finally {
+                        if (cache != null) {
+                            cache.release();
                         }
                     }
                 }
@@ -237,6 +239,8 @@ public class ActionInvoker {
                     throw new JavaExecutionException(Play.classes.getApplicationClass(element.getClassName()), element.getLineNumber(), ex.getTargetException());
                 }
                 throw new JavaExecutionException(Http.Request.current().action, ex);
+            } finally {
+                RequestTiming.exit(phase);
             }
 
         } catch (Result result) {
@@ -289,86 +293,18 @@ public class ActionInvoker {
     }
 
     private static void handleBefores(Http.Request request) throws Exception {
-        List<Method> befores = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Before.class);
-        Collections.sort(befores, new Comparator<Method>() {
-
-            public int compare(Method m1, Method m2) {
-                Before before1 = m1.getAnnotation(Before.class);
-                Before before2 = m2.getAnnotation(Before.class);
-                return before1.priority() - before2.priority();
-            }
-        });
+        Method[] befores = ActionInterceptors.get(Controller.getControllerClass(), request.action).befores;
         ControllerInstrumentation.stopActionCall();
         for (Method before : befores) {
-            String[] unless = before.getAnnotation(Before.class).unless();
-            String[] only = before.getAnnotation(Before.class).only();
-            boolean skip = false;
-            for (String un : only) {
-                if (!un.contains(".")) {
-                    un = before.getDeclaringClass().getName().substring(12).replace("$", "") + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = false;
-                    break;
-                } else {
-                    skip = true;
-                }
-            }
-            for (String un : unless) {
-                if (!un.contains(".")) {
-                    un = before.getDeclaringClass().getName().substring(12).replace("$", "") + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = true;
-                    break;
-                }
-            }
-            if (!skip) {
-                before.setAccessible(true);
-                inferResult(invokeControllerMethod(before));
-            }
+            inferResult(invokeControllerMethod(before));
         }
     }
 
     private static void handleAfters(Http.Request request) throws Exception {
-        List<Method> afters = Java.findAllAnnotatedMethods(Controller.getControllerClass(), After.class);
-        Collections.sort(afters, new Comparator<Method>() {
-
-            public int compare(Method m1, Method m2) {
-                After after1 = m1.getAnnotation(After.class);
-                After after2 = m2.getAnnotation(After.class);
-                return after1.priority() - after2.priority();
-            }
-        });
+        Method[] afters = ActionInterceptors.get(Controller.getControllerClass(), request.action).afters;
         ControllerInstrumentation.stopActionCall();
         for (Method after : afters) {
-            String[] unless = after.getAnnotation(After.class).unless();
-            String[] only = after.getAnnotation(After.class).only();
-            boolean skip = false;
-            for (String un : only) {
-                if (!un.contains(".")) {
-                    un = after.getDeclaringClass().getName().substring(12) + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = false;
-                    break;
-                } else {
-                    skip = true;
-                }
-            }
-            for (String un : unless) {
-                if (!un.contains(".")) {
-                    un = after.getDeclaringClass().getName().substring(12) + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = true;
-                    break;
-                }
-            }
-            if (!skip) {
-                after.setAccessible(true);
-                inferResult(invokeControllerMethod(after));
-            }
+            inferResult(invokeControllerMethod(after));
         }
     }
 
@@ -387,52 +323,16 @@ public class ActionInvoker {
         }
 
         try {
-            List<Method> allFinally = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Finally.class);
-            Collections.sort(allFinally, new Comparator<Method>() {
-
-                public int compare(Method m1, Method m2) {
-                    Finally finally1 = m1.getAnnotation(Finally.class);
-                    Finally finally2 = m2.getAnnotation(Finally.class);
-                    return finally1.priority() - finally2.priority();
-                }
-            });
+            ActionInterceptors interceptors = ActionInterceptors.get(Controller.getControllerClass(), request.action);
             ControllerInstrumentation.stopActionCall();
-            for (Method aFinally : allFinally) {
-                String[] unless = aFinally.getAnnotation(Finally.class).unless();
-                String[] only = aFinally.getAnnotation(Finally.class).only();
-                boolean skip = false;
-                for (String un : only) {
-                    if (!un.contains(".")) {
-                        un = aFinally.getDeclaringClass().getName().substring(12) + "." + un;
-                    }
-                    if (un.equals(request.action)) {
-                        skip = false;
-                        break;
-                    } else {
-                        skip = true;
-                    }
-                }
-                for (String un : unless) {
-                    if (!un.contains(".")) {
-                        un = aFinally.getDeclaringClass().getName().substring(12) + "." + un;
-                    }
-                    if (un.equals(request.action)) {
-                        skip = true;
-                        break;
-                    }
-                }
-                if (!skip) {
-                    aFinally.setAccessible(true);
-
-                    //check if method accepts Throwable as only parameter
-                    Class[] parameterTypes = aFinally.getParameterTypes();
-                    if (parameterTypes.length == 1 && parameterTypes[0] == Throwable.class) {
-                        //invoking @Finally method with caughtException as parameter
-                        invokeControllerMethod(aFinally, new Object[]{caughtException});
-                    } else {
-                        //invoce @Finally-method the regular way without caughtException
-                        invokeControllerMethod(aFinally, null);
-                    }
+            for (int i = 0; i < interceptors.finallies.length; i++) {
+                //check if method accepts Throwable as only parameter
+                if (interceptors.finallyWithThrowable[i]) {
+                    //invoking @Finally method with caughtException as parameter
+                    invokeControllerMethod(interceptors.finallies[i], new Object[]{caughtException});
+                } else {
+                    //invoce @Finally-method the regular way without caughtException
+                    invokeControllerMethod(interceptors.finallies[i], null);
                 }
             }
         } catch (InvocationTargetException ex) {
@@ -441,6 +341,9 @@ public class ActionInvoker {
                 throw new JavaExecutionException(Play.classes.getApplicationClass(element.getClassName()), element.getLineNumber(), ex.getTargetException());
             }
             throw new JavaExecutionException(Http.Request.current().action, ex);
+        } catch (Result result) {
+            // Generated invokers don't wrap results, a @Finally method can't render anything anyway
+            throw new JavaExecutionException(Http.Request.current().action, result);
         } catch (Exception e) {
             throw new UnexpectedException("Exception while doing @Finally", e);
         }
@@ -507,7 +410,7 @@ public class ActionInvoker {
         if(isActionMethod(method)) {
             return invokeWithContinuation(method, instance, realArgs);
         } else {
-            return method.invoke(instance, realArgs);
+            return MethodInvoker.of(method).invoke(instance, realArgs);
         }
     }
     static final String C = "__continuation";
@@ -554,7 +457,7 @@ public class ActionInvoker {
             pStackRecorder.isRestoring = !pStackRecorder.isEmpty();
 
             // Execute code
-            result = method.invoke(instance, realArgs);
+            result = MethodInvoker.of(method).invoke(instance, realArgs);
 
             if (pStackRecorder.isCapturing) {
                 if (pStackRecorder.isEmpty()) {
@@ -633,28 +536,40 @@ public class ActionInvoker {
             return rArgs;
         }
 
-        rArgs = new Object[method.getParameterTypes().length];
-        for (int i = 0; i < method.getParameterTypes().length; i++) {
+        Class<?>[] types = method.getParameterTypes();
+        Type[] genericTypes = method.getGenericParameterTypes();
+        Annotation[][] annotations = method.getParameterAnnotations();
+        rArgs = new Object[types.length];
+        int phase = RequestTiming.enter(RequestTiming.BIND);
+        try {
+            for (int i = 0; i < types.length; i++) {
+
+                Class<?> type = types[i];
+                RootParamNode root;
 
-            Class<?> type = method.getParameterTypes()[i];
-            Map<String, String[]> params = new HashMap<String, String[]> ();
+                // In case of simple params, we don't want to parse the body.
+                if (type.equals(String.class) || Number.class.isAssignableFrom(type) || type.isPrimitive()) {
+                    Map<String, String[]> params = new HashMap<String, String[]>(2);
+                    params.put(paramsNames[i], Scope.Params.current().getAll(paramsNames[i]));
+                    root = ParamNode.convert(params);
+                } else {
+                    // The whole params tree is built once per request and shared by all parameters
+                    root = Scope.Params.current().getRootParamNode();
+                }
+                if (Logger.isTraceEnabled()) {
+                    Logger.trace("getActionMethodArgs name [" + paramsNames[i] + "] annotation [" + Utils.join(annotations[i], " ") + "]");
+                }
 
-            // In case of simple params, we don't want to parse the body.
-            if (type.equals(String.class) || Number.class.isAssignableFrom(type) || type.isPrimitive()) {
-                params.put(paramsNames[i], Scope.Params.current().getAll(paramsNames[i]));
-            } else {
-                params.putAll(Scope.Params.current().all());
+                rArgs[i] = Binder.bind(
+                            root,
+                            paramsNames[i],
+                            type,
+                            genericTypes[i],
+                            annotations[i],
+                            new Binder.MethodAndParamInfo(o, method, i + 1));
             }
-            Logger.trace("getActionMethodArgs name [" + paramsNames[i] + "] annotation [" + Utils.join(method.getParameterAnnotations()[i], " ") + "]");
-
-            RootParamNode root = ParamNode.convert(params);
-            rArgs[i] = Binder.bind(
-                        root,
-                        paramsNames[i],
-                        method.getParameterTypes()[i],
-                        method.getGenericParameterTypes()[i],
-                        method.getParameterAnnotations()[i],
-                        new Binder.MethodAndParamInfo(o, method, i + 1));
+        } finally {
+            RequestTiming.exit(phase);
         }
 
         CachedBoundActionMethodArgs.current().storeActionMethodArgs(method, rArgs);
@@ -0,0 +1,284 @@
+package play.mvc;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import play.Logger;
+import play.cache.BinarySerializer;
+import play.cache.Cache;
+import play.cache.CacheAside;
+import play.cache.CacheFor;
+import play.i18n.Lang;
+import play.libs.Codec;
+import play.libs.Time;
+import play.mvc.results.NotModified;
+import play.mvc.results.RenderJson;
+import play.mvc.results.Result;
+
+/**
+ * The @CacheFor handling of an action invocation.
+ *
+ * A missing or expired result is computed by a single request per key: other requests of
+ * this node wait on a local latch, other nodes are kept out by the lease of the key (see
+ * CacheAside). While the lease is held, requests are served the previous result if it is in
+ * its stale-while-revalidate window. Otherwise they wait for the new one for CacheAside.WAIT at
+ most, then invoke the action too, so that a slow computation does not hold the invoker threads.
+ */
+class ActionResultCache {
+
+    private static final Pattern TAG_PARAM = Pattern.compile("\\{([^}]+)\\}");
+    private static final ConcurrentMap<String, CountDownLatch> inflight = new ConcurrentHashMap<String, CountDownLatch>();
+
+    final String key;
+    private final CacheFor cacheFor;
+    private final Http.Request request;
+    private final Http.Response response;
+
+    /** the entry found at lookup time (possibly stale) */
+    private CachedResult entry;
+    /** the local latch held by this request while it computes the result */
+    private CountDownLatch latch;
+    /** the token of the lease held by this request */
+    private String lease;
+    /** the latch of the request of this node computing the result */
+    private CountDownLatch waitingOn;
+
+    ActionResultCache(CacheFor cacheFor, Http.Request request, Http.Response response) {
+        this.cacheFor = cacheFor;
+        this.request = request;
+        this.response = response;
+        this.key = key(cacheFor, request);
+    }
+
+    static String key(CacheFor cacheFor, Http.Request request) {
+        StringBuilder key = new StringBuilder();
+        if ("".equals(cacheFor.id())) {
+            key.append("urlcache:").append(request.url).append(request.querystring);
+        } else {
+            key.append(cacheFor.id());
+        }
+        for (String header : cacheFor.vary()) {
+            Http.Header value = request.headers.get(header.toLowerCase());
+            key.append('|').append(header.toLowerCase()).append('=').append(value == null ? "" : value.value());
+        }
+        if (cacheFor.varyFormat()) {
+            key.append("|format=").append(request.format);
+        }
+        if (cacheFor.varyLang()) {
+            key.append("|lang=").append(Lang.get());
+        }
+        if (cacheFor.tags().length > 0) {
+            String[] tags = new String[cacheFor.tags().length];
+            for (int i = 0; i < tags.length; i++) {
+                tags[i] = tag(cacheFor.tags()[i], request);
+            }
+            return Cache.safeKey(Cache.tagged(key.toString(), tags));
+        }
+        // The urls and header values may be too long or contain spaces
+        return Cache.safeKey(key.toString());
+    }
+
+    /**
+     * @return The tag with its {param} parts replaced by the request parameters
+     */
+    static String tag(String tag, Http.Request request) {
+        if (tag.indexOf('{') < 0) {
+            return tag;
+        }
+        Matcher matcher = TAG_PARAM.matcher(tag);
+        StringBuffer resolved = new StringBuffer();
+        while (matcher.find()) {
+            String value = request.params.get(matcher.group(1));
+            matcher.appendReplacement(resolved, Matcher.quoteReplacement(value == null ? "" : value));
+        }
+        matcher.appendTail(resolved);
+        return resolved.toString();
+    }
+
+    /**
+     * Look the action result up
+     * @return The result to send, or null if this request has to invoke the action
+     */
+    Result lookup() throws InterruptedException {
+        if (cacheFor.vary().length > 0) {
+            StringBuilder vary = new StringBuilder();
+            for (String header : cacheFor.vary()) {
+                if (vary.length() > 0) {
+                    vary.append(", ");
+                }
+                vary.append(header);
+            }
+            response.setHeader("Vary", vary.toString());
+        }
+        entry = get();
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.freshUntil) {
+            return serve(entry);
+        }
+        if (acquire()) {
+            return null;
+        }
+        if (entry != null && now < entry.staleWhileRevalidateUntil) {
+            return serve(entry);
+        }
+        CachedResult computed = await();
+        if (computed != null) {
+            return serve(computed);
+        }
+        // The result was not computed in time, compute it too
+        return null;
+    }
+
+    /**
+     * Cache the result computed by this request
+     */
+    void store(Result result) {
+        int duration = Time.parseDuration(cacheFor.value());
+        int staleWhileRevalidate = duration(cacheFor.staleWhileRevalidate());
+        int staleIfError = duration(cacheFor.staleIfError());
+        long now = System.currentTimeMillis();
+        if (result instanceof RenderJson) {
+            // A streamed source can only be written once
+            ((RenderJson) result).getJson();
+        }
+        CachedResult cached = new CachedResult();
+        cached.result = result;
+        cached.etag = "\"" + Codec.UUID() + "\"";
+        cached.freshUntil = now + duration * 1000L;
+        cached.staleWhileRevalidateUntil = cached.freshUntil + staleWhileRevalidate * 1000L;
+        cached.staleIfErrorUntil = cached.freshUntil + staleIfError * 1000L;
+        Cache.set(key, cached, (duration + Math.max(staleWhileRevalidate, staleIfError)) + "s");
+        response.setHeader("ETag", cached.etag);
+    }
+
+    /**
+     * The result to send instead of an error raised by the action
+     * @return The previous result if it is in its stale-if-error window, or null
+     */
+    Result fallback(Throwable error) {
+        if (entry != null && System.currentTimeMillis() < entry.staleIfErrorUntil) {
+            Logger.warn("Serving a stale result for %s: %s", key, error);
+            return serve(entry);
+        }
+        return null;
+    }
+
+    /**
+     * Release the locks held by this request
+     */
+    void release() {
+        if (lease != null) {
+            CacheAside.release(key, lease);
+            lease = null;
+        }
+        if (latch != null) {
+            inflight.remove(key, latch);
+            latch.countDown();
+            latch = null;
+        }
+    }
+
+    private boolean acquire() {
+        CountDownLatch local = new CountDownLatch(1);
+        CountDownLatch existing = inflight.putIfAbsent(key, local);
+        if (existing != null) {
+            waitingOn = existing;
+            return false;
+        }
+        latch = local;
+        lease = CacheAside.lease(key);
+        if (lease == null) {
+            // Another node is computing it
+            release();
+            return false;
+        }
+        return true;
+    }
+
+    private CachedResult await() throws InterruptedException {
+        if (waitingOn != null) {
+            waitingOn.await(CacheAside.WAIT, TimeUnit.MILLISECONDS);
+            return fresh(get());
+        }
+        long deadline = System.currentTimeMillis() + CacheAside.WAIT;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            CachedResult computed = fresh(get());
+            if (computed != null) {
+                return computed;
+            }
+            if (!CacheAside.isLeased(key)) {
+                // The other node gave up
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private Result serve(CachedResult cached) {
+        response.setHeader("ETag", cached.etag);
+        Http.Header ifNoneMatch = request.headers.get("if-none-match");
+        if (ifNoneMatch != null) {
+            for (String etag : ifNoneMatch.value().split(",")) {
+                etag = etag.trim();
+                if (etag.startsWith("W/")) {
+                    etag = etag.substring(2);
+                }
+                if (etag.equals(cached.etag) || etag.equals("*")) {
+                    return new NotModified(cached.etag);
+                }
+            }
+        }
+        return cached.result;
+    }
+
+    private CachedResult get() {
+        Object cached = Cache.get(key);
+        // Results cached by a previous version are ignored
+        return cached instanceof CachedResult ? (CachedResult) cached : null;
+    }
+
+    private static CachedResult fresh(CachedResult cached) {
+        return cached != null && System.currentTimeMillis() < cached.freshUntil ? cached : null;
+    }
+
+    private static int duration(String duration) {
+        return "".equals(duration) ? 0 : Time.parseDuration(duration);
+    }
+
+    static class CachedResult implements Serializable {
+
+        Result result;
+        String etag;
+        long freshUntil;
+        long staleWhileRevalidateUntil;
+        long staleIfErrorUntil;
+
+        static {
+            BinarySerializer.register(CachedResult.class, new BinarySerializer.Codec<CachedResult>() {
+                public void write(CachedResult value, BinarySerializer.Output out) throws IOException {
+                    out.writeValue(value.result);
+                    out.writeString(value.etag);
+                    out.writeLong(value.freshUntil);
+                    out.writeLong(value.staleWhileRevalidateUntil);
+                    out.writeLong(value.staleIfErrorUntil);
+                }
+
+                public CachedResult read(BinarySerializer.Input in) throws IOException, ClassNotFoundException {
+                    CachedResult cached = new CachedResult();
+                    cached.result = (Result) in.readValue();
+                    cached.etag = in.readString();
+                    cached.freshUntil = in.readLong();
+                    cached.staleWhileRevalidateUntil = in.readLong();
+                    cached.staleIfErrorUntil = in.readLong();
+                    return cached;
+                }
+            });
+        }
+    }
+}
@@ -15,13 +15,27 @@ public class CookieDataCodec {
      * @throws UnsupportedEncodingException
      */
     public static void decode(Map<String, String> map, String data) throws UnsupportedEncodingException {
-        String[] keyValues = data.split("&");
-        for (String keyValue : keyValues) {
-            String[] splitted = keyValue.split("=", 2);
-            if (splitted.length == 2) {
-                map.put(URLDecoder.decode(splitted[0], "utf-8"), URLDecoder.decode(splitted[1], "utf-8"));
+        int length = data.length();
+        int start = 0;
+        while (start <= length) {
+            int end = data.indexOf('&', start);
+            if (end < 0) {
+                end = length;
             }
+            int eq = data.indexOf('=', start);
+            if (eq >= 0 && eq < end) {
+                map.put(decodeComponent(data.substring(start, eq)), decodeComponent(data.substring(eq + 1, end)));
+            }
+            start = end + 1;
+        }
+    }
+
+    private static String decodeComponent(String value) throws UnsupportedEncodingException {
+        // Most keys and values don't contain any escaped character
+        if (value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+            return value;
         }
+        return URLDecoder.decode(value, "utf-8");
     }
 
     /**
@@ -1,6 +1,5 @@
 package play.mvc;
 
-import com.google.gson.Gson;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -30,6 +29,7 @@ import play.libs.F.Option;
 import play.libs.F.Promise;
 import play.libs.F.EventStream;
 import play.libs.Time;
+import play.mvc.results.RenderJson;
 import play.utils.HTTP;
 import play.utils.Utils;
 
@@ -265,6 +265,10 @@ public class Http {
          * The invoked controller class
          */
         public transient Class<? extends Controller> controllerClass;
+        /**
+         * Where the time of the request goes, or null if not timed
+         */
+        public transient RequestTiming timing;
         /**
          * Free space to store your request specific data
          */
@@ -821,6 +825,13 @@ public class Http {
         public void onWriteChunk(F.Action<Object> handler) {
             writeChunkHandlers.add(handler);
         }
+
+        /**
+         * @return true if the server supports writeChunk
+         */
+        public boolean isChunkedSupported() {
+            return !writeChunkHandlers.isEmpty();
+        }
     }
 
     /**
@@ -887,7 +898,7 @@ public class Http {
         }
 
         public void sendJson(Object o) {
-            send(new Gson().toJson(o));
+            send(RenderJson.gson().toJson(o));
         }
     }
 
@@ -0,0 +1,208 @@
+package play.mvc;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.jamonapi.MonitorFactory;
+
+import play.Logger;
+import play.Play;
+
+/**
+ * Where the time of a request goes.
+ *
+ * At any time the request is in one phase, and the time is charged to it until the next
+ * phase is entered: the phases nested in another one (the templates rendered by an action)
+ * are not counted twice, and the phases add up to the total time.
+ *
+ * When the request is done, the phases are added to the "Request phase: Controller.action"
+ * monitors, logged if the request was slow, and sent in the Server-Timing header if enabled.
+ */
+public class RequestTiming {
+
+    /** Reading the request into a Http.Request */
+    public static final int PARSE = 0;
+    /** Waiting for an invoker thread */
+    public static final int QUEUE = 1;
+    /** Finding the route and the action */
+    public static final int ROUTE = 2;
+    /** Binding the action arguments */
+    public static final int BIND = 3;
+    /** Validating the action arguments */
+    public static final int VALIDATE = 4;
+    /** Running the interceptors and the action */
+    public static final int ACTION = 5;
+    /** Rendering the templates */
+    public static final int RENDER = 6;
+    /** Flushing and committing the JPA transaction */
+    public static final int COMMIT = 7;
+    /** Writing the response to the channel */
+    public static final int WRITE = 8;
+    /** Suspended by await() */
+    public static final int AWAIT = 9;
+    /** Anything else: plugins, session, result... */
+    public static final int OTHER = 10;
+
+    static final String[] NAMES = {"parse", "queue", "route", "bind", "validate", "action", "render", "commit", "write", "await", "other"};
+
+    /** the number of actions monitored, the other actions are monitored together */
+    static final int MAX_ACTIONS = 500;
+    /** the monitor labels of each action, the total last */
+    static final ConcurrentMap<String, String[]> labels = new ConcurrentHashMap<String, String[]>();
+    private static final String[] others = newLabels("*");
+
+    final long start;
+    final long[] durations = new long[NAMES.length];
+    int phase = PARSE;
+    long since;
+    boolean finished;
+
+    RequestTiming(long start) {
+        this.start = start;
+        this.since = start;
+    }
+
+    /**
+     * @return The timing of a new request, or null if disabled
+     */
+    public static RequestTiming start() {
+        if (Play.configuration.getProperty("http.timing", "enabled").equals("disabled")) {
+            return null;
+        }
+        return new RequestTiming(System.nanoTime());
+    }
+
+    /**
+     * Enter a phase of the current request
+     * @return The phase to go back to with exit()
+     */
+    public static int enter(int phase) {
+        RequestTiming timing = current();
+        return timing == null ? -1 : timing.switchTo(phase);
+    }
+
+    /**
+     * Go back to the phase left by enter()
+     */
+    public static void exit(int phase) {
+        if (phase >= 0) {
+            RequestTiming timing = current();
+            if (timing != null) {
+                timing.switchTo(phase);
+            }
+        }
+    }
+
+    static RequestTiming current() {
+        Http.Request request = Http.Request.current();
+        return request == null ? null : request.timing;
+    }
+
+    /**
+     * Charge the time since the last switch to the current phase, and enter a new one
+     * @return The phase left
+     */
+    public synchronized int switchTo(int phase) {
+        int previous = this.phase;
+        if (!finished) {
+            long now = System.nanoTime();
+            durations[previous] += now - since;
+            since = now;
+            this.phase = phase;
+        }
+        return previous;
+    }
+
+    /**
+     * @return The time charged to a phase so far, in milliseconds
+     */
+    public double get(int phase) {
+        return durations[phase] / 1000000.0;
+    }
+
+    /**
+     * @return The time since the request was received, or until it was done, in milliseconds
+     */
+    public double total() {
+        return ((finished ? since : System.nanoTime()) - start) / 1000000.0;
+    }
+
+    /**
+     * @return The Server-Timing header value, ex: route;dur=0.12, action;dur=4.51, total;dur=5.03
+     */
+    public synchronized String serverTiming() {
+        switchTo(phase);
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            if (durations[i] > 0) {
+                header.append(NAMES[i]).append(";dur=").append(format(get(i))).append(", ");
+            }
+        }
+        return header.append("total;dur=").append(format(total())).toString();
+    }
+
+    /**
+     * Stop the timing, and report it
+     */
+    public synchronized void finish(Http.Request request) {
+        if (finished) {
+            return;
+        }
+        switchTo(OTHER);
+        finished = true;
+        double total = total();
+        // Only the actions found, the others (eg. 404) could add any number of monitors
+        if (request.action != null && request.invokedMethod != null) {
+            String[] labels = labels(request.action);
+            for (int i = 0; i < NAMES.length; i++) {
+                if (durations[i] > 0) {
+                    MonitorFactory.add(labels[i], "ms.", get(i));
+                }
+            }
+            MonitorFactory.add(labels[NAMES.length], "ms.", total);
+        }
+        String slow = Play.configuration.getProperty("http.timing.slow");
+        if (slow != null && total >= Long.parseLong(slow)) {
+            Logger.warn("Slow request %s %s (%s): %s ms [%s]", request.method, request.url, request.action, format(total), breakdown());
+        }
+    }
+
+    static String[] labels(String action) {
+        String[] actionLabels = labels.get(action);
+        if (actionLabels == null) {
+            if (labels.size() >= MAX_ACTIONS) {
+                return others;
+            }
+            actionLabels = newLabels(action);
+            labels.putIfAbsent(action, actionLabels);
+        }
+        return actionLabels;
+    }
+
+    private static String[] newLabels(String action) {
+        String[] actionLabels = new String[NAMES.length + 1];
+        for (int i = 0; i < NAMES.length; i++) {
+            actionLabels[i] = "Request " + NAMES[i] + ": " + action;
+        }
+        actionLabels[NAMES.length] = "Request total: " + action;
+        return actionLabels;
+    }
+
+    String breakdown() {
+        StringBuilder breakdown = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            if (durations[i] > 0) {
+                if (breakdown.length() > 0) {
+                    breakdown.append(", ");
+                }
+                breakdown.append(NAMES[i]).append(' ').append(format(get(i)));
+            }
+        }
+        return breakdown.toString();
+    }
+
+    static String format(double millis) {
+        return String.format(Locale.ENGLISH, "%.2f", millis);
+    }
+}
@@ -6,10 +6,12 @@ import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import play.Logger;
 import play.Play;
+import play.cache.Cache;
 import play.data.binding.Binder;
 import play.data.binding.ParamNode;
 import play.data.binding.RootParamNode;
@@ -32,6 +34,7 @@ public class Scope {
     public static final String COOKIE_EXPIRE = Play.configuration.getProperty("application.session.maxAge");
     public static final boolean SESSION_HTTPONLY = Play.configuration.getProperty("application.session.httpOnly", "false").toLowerCase().equals("true");
     public static final boolean SESSION_SEND_ONLY_IF_CHANGED = Play.configuration.getProperty("application.session.sendOnlyIfChanged", "false").toLowerCase().equals("true");
+    public static final boolean SESSION_STORE_CACHE = Play.configuration.getProperty("application.session.store", "cookie").toLowerCase().equals("cache");
 
     /**
      * Flash scope
@@ -40,17 +43,27 @@ public class Scope {
 
         Map<String, String> data = new HashMap<String, String>();
         Map<String, String> out = new HashMap<String, String>();
+        // the received cookie value, decoded on first access
+        private String cookie;
 
         static Flash restore() {
-            try {
-                Flash flash = new Flash();
-                Http.Cookie cookie = Http.Request.current().cookies.get(COOKIE_PREFIX + "_FLASH");
-                if (cookie != null) {
-                    CookieDataCodec.decode(flash.data, cookie.value);
+            Flash flash = new Flash();
+            Http.Cookie cookie = Http.Request.current().cookies.get(COOKIE_PREFIX + "_FLASH");
+            if (cookie != null) {
+                flash.cookie = cookie.value;
+            }
+            return flash;
+        }
+
+        private void load() {
+            if (cookie != null) {
+                String value = cookie;
+                cookie = null;
+                try {
+                    CookieDataCodec.decode(data, value);
+                } catch (Exception e) {
+                    throw new UnexpectedException("Flash corrupted", e);
                 }
-                return flash;
-            } catch (Exception e) {
-                throw new UnexpectedException("Flash corrupted", e);
             }
         }
 
@@ -79,6 +92,7 @@ public class Scope {
         }
 
         public void put(String key, String value) {
+            load();
             if (key.contains(":")) {
                 throw new IllegalArgumentException("Character ':' is invalid in a flash key.");
             }
@@ -94,6 +108,7 @@ public class Scope {
         }
 
         public void now(String key, String value) {
+            load();
             if (key.contains(":")) {
                 throw new IllegalArgumentException("Character ':' is invalid in a flash key.");
             }
@@ -117,33 +132,40 @@ public class Scope {
         }
 
         public void keep(String key) {
+            load();
             if (data.containsKey(key)) {
                 out.put(key, data.get(key));
             }
         }
 
         public void keep() {
+            load();
             out.putAll(data);
         }
 
         public String get(String key) {
+            load();
             return data.get(key);
         }
 
         public boolean remove(String key) {
+            load();
             return data.remove(key) != null;
         }
 
         public void clear() {
+            load();
             data.clear();
         }
 
         public boolean contains(String key) {
+            load();
             return data.containsKey(key);
         }
 
         @Override
         public String toString() {
+            load();
             return data.toString();
         }
     }
@@ -156,53 +178,75 @@ public class Scope {
         static final String AT_KEY = "___AT";
         static final String ID_KEY = "___ID";
         static final String TS_KEY = "___TS";
+        static final String STORE_PREFIX = "session:";
+        // lifetime of the session data in the cache, extended while the session is used
+        static final int STORE_EXPIRATION = Time.parseDuration(COOKIE_EXPIRE == null ? "1h" : COOKIE_EXPIRE);
 
         static Session restore() {
             try {
                 Session session = new Session();
                 Http.Cookie cookie = Http.Request.current().cookies.get(COOKIE_PREFIX + "_SESSION");
-				final int duration = Time.parseDuration(COOKIE_EXPIRE) ;
-				final long expiration = (duration * 1000l);
-
                 if (cookie != null && Play.started && cookie.value != null && !cookie.value.trim().equals("")) {
-                    String value = cookie.value;
-				 	int firstDashIndex = value.indexOf("-");
-				    if(firstDashIndex > -1) {
-                    	String sign = value.substring(0, firstDashIndex);
-                    	String data = value.substring(firstDashIndex + 1);
-                    	if (CookieDataCodec.safeEquals(sign, Crypto.sign(data, Play.secretKey.getBytes()))) {
-                            CookieDataCodec.decode(session.data, data);
-                    	}
-					} 
-                    if (COOKIE_EXPIRE != null) {
+                    // Verified and decoded on first access
+                    session.cookie = cookie.value;
+                }
+                if (COOKIE_EXPIRE != null && !SESSION_STORE_CACHE) {
+                    final int duration = Time.parseDuration(COOKIE_EXPIRE);
+                    final long expiration = (duration * 1000l);
+                    if (session.cookie != null) {
                         // Verify that the session contains a timestamp, and that it's not expired
-					    if (!session.contains(TS_KEY)) {
-                            session = new Session();
-                        } else {
-					        if ((Long.parseLong(session.get(TS_KEY))) < System.currentTimeMillis()) {
-                                // Session expired
-                                session = new Session();
-                            }
+                        session.load();
+                        if (!session.data.containsKey(TS_KEY) || (Long.parseLong(session.data.get(TS_KEY))) < System.currentTimeMillis()) {
+                            session.data.clear();
                         }
-					    session.put(TS_KEY, System.currentTimeMillis() + expiration);
-                    } else {
-                        // Just restored. Nothing changed. No cookie-expire.
-                        session.changed = false;
-                    }
-                } else {
-                    // no previous cookie to restore; but we may have to set the timestamp in the new cookie
-			        if (COOKIE_EXPIRE != null) {	
-				        session.put(TS_KEY, (System.currentTimeMillis() + expiration));
                     }
+                    // no previous cookie to restore, or a sliding expiration: set the timestamp in the new cookie
+                    session.put(TS_KEY, System.currentTimeMillis() + expiration);
                 }
-
                 return session;
             } catch (Exception e) {
                 throw new UnexpectedException("Corrupted HTTP session from " + Http.Request.current().remoteAddress, e);
             }
         }
+
+        private void load() {
+            if (!loaded) {
+                loaded = true;
+                if (cookie != null) {
+                    try {
+                        int firstDashIndex = cookie.indexOf("-");
+                        if (firstDashIndex > -1) {
+                            String sign = cookie.substring(0, firstDashIndex);
+                            String value = cookie.substring(firstDashIndex + 1);
+                            if (CookieDataCodec.safeEquals(sign, Crypto.sign(value, Play.secretKey.getBytes()))) {
+                                if (SESSION_STORE_CACHE) {
+                                    // The cookie only holds the session id
+                                    storeId = value;
+                                    @SuppressWarnings("unchecked") Map<String, String> stored = (Map<String, String>) Cache.get(STORE_PREFIX + storeId);
+                                    if (stored != null) {
+                                        data.putAll(stored);
+                                    }
+                                } else {
+                                    CookieDataCodec.decode(data, value);
+                                }
+                                verified = true;
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new UnexpectedException("Corrupted HTTP session from " + Http.Request.current().remoteAddress, e);
+                    }
+                }
+            }
+        }
+
         Map<String, String> data = new HashMap<String, String>(); // ThreadLocal access
         boolean changed = false;
+        // the received cookie value, verified and decoded on first access
+        private String cookie;
+        private boolean loaded;
+        private boolean verified;
+        // the id of the session data in the cache (application.session.store=cache)
+        private String storeId;
         public static ThreadLocal<Session> current = new ThreadLocal<Session>();
 
         public static Session current() {
@@ -210,19 +254,28 @@ public class Scope {
         }
 
         public String getId() {
+            load();
             if (!data.containsKey(ID_KEY)) {
+                change();
                 data.put(ID_KEY, Codec.UUID());
             }
             return data.get(ID_KEY);
 
         }
 
+        /**
+         * @return The session data: as it can be modified directly, the session is then sent again
+         */
         public Map<String, String> all() {
+            load();
+            change();
             return data;
         }
 
         public String getAuthenticityToken() {
+            load();
             if (!data.containsKey(AT_KEY)) {
+                change();
                 data.put(AT_KEY, Crypto.sign(UUID.randomUUID().toString()));
             }
             return data.get(AT_KEY);
@@ -237,10 +290,21 @@ public class Scope {
                 // Some request like WebSocket don't have any response
                 return;
             }
-            if(!changed && SESSION_SEND_ONLY_IF_CHANGED && COOKIE_EXPIRE == null) {
-                // Nothing changed and no cookie-expire, consequently send nothing back.
+            if (SESSION_STORE_CACHE) {
+                store();
                 return;
             }
+            if (!changed && COOKIE_EXPIRE == null) {
+                if (SESSION_SEND_ONLY_IF_CHANGED) {
+                    // Nothing changed and no cookie-expire, consequently send nothing back.
+                    return;
+                }
+                if (cookie != null && (!loaded || verified)) {
+                    // Nothing changed: send back the received cookie, without encoding and signing it again
+                    Http.Response.current().setCookie(COOKIE_PREFIX + "_SESSION", cookie, null, "/", null, COOKIE_SECURE, SESSION_HTTPONLY);
+                    return;
+                }
+            }
             if (isEmpty()) {
                 // The session is empty: delete the cookie
                 if(Http.Request.current().cookies.containsKey(COOKIE_PREFIX + "_SESSION") || !SESSION_SEND_ONLY_IF_CHANGED) {
@@ -261,20 +325,73 @@ public class Scope {
             }
         }
 
+        /**
+         * Save the session data in the cache, only the signed session id is sent in the cookie.
+         * Unchanged data is written again only once half of its lifetime has passed, and the
+         * max-age of the cookie is only extended along with it.
+         */
+        private void store() {
+            String cookieName = COOKIE_PREFIX + "_SESSION";
+            Integer maxAge = COOKIE_EXPIRE == null ? null : Time.parseDuration(COOKIE_EXPIRE);
+            if (!changed) {
+                if (loaded && cookie != null && !verified) {
+                    Http.Response.current().setCookie(cookieName, "", null, "/", 0, COOKIE_SECURE, SESSION_HTTPONLY);
+                    return;
+                }
+                if (loaded && storeId != null && !isEmpty()) {
+                    String writtenAt = data.get(TS_KEY);
+                    if (writtenAt == null || Long.parseLong(writtenAt) + STORE_EXPIRATION * 500L < System.currentTimeMillis()) {
+                        write();
+                        if (maxAge != null) {
+                            Http.Response.current().setCookie(cookieName, cookie, null, "/", maxAge, COOKIE_SECURE, SESSION_HTTPONLY);
+                            return;
+                        }
+                    }
+                }
+                // A cookie with a max-age is left as is: it expires with the data written along with it
+                if (cookie != null && maxAge == null && !SESSION_SEND_ONLY_IF_CHANGED) {
+                    Http.Response.current().setCookie(cookieName, cookie, null, "/", null, COOKIE_SECURE, SESSION_HTTPONLY);
+                }
+                return;
+            }
+            if (isEmpty()) {
+                dropStore();
+                if (Http.Request.current().cookies.containsKey(cookieName) || !SESSION_SEND_ONLY_IF_CHANGED) {
+                    Http.Response.current().setCookie(cookieName, "", null, "/", 0, COOKIE_SECURE, SESSION_HTTPONLY);
+                }
+                return;
+            }
+            boolean created = storeId == null;
+            if (created) {
+                storeId = Codec.UUID();
+            }
+            write();
+            if (created || maxAge != null || !SESSION_SEND_ONLY_IF_CHANGED) {
+                String sign = Crypto.sign(storeId, Play.secretKey.getBytes());
+                Http.Response.current().setCookie(cookieName, sign + "-" + storeId, null, "/", maxAge, COOKIE_SECURE, SESSION_HTTPONLY);
+            }
+        }
+
+        private void write() {
+            data.put(TS_KEY, String.valueOf(System.currentTimeMillis()));
+            Cache.set(STORE_PREFIX + storeId, new HashMap<String, String>(data), STORE_EXPIRATION + "s");
+        }
+
         public void put(String key, String value) {
             if (key.contains(":")) {
                 throw new IllegalArgumentException("Character ':' is invalid in a session key.");
             }
-            change();
+            load();
             if (value == null) {
-                data.remove(key);
-            } else {
-                data.put(key, value);
+                if (data.remove(key) != null) {
+                    change();
+                }
+            } else if (!value.equals(data.put(key, value))) {
+                change();
             }
         }
 
         public void put(String key, Object value) {
-            change();
             if (value == null) {
                 put(key, (String) null);
             }
@@ -282,12 +399,17 @@ public class Scope {
         }
 
         public String get(String key) {
+            load();
             return data.get(key);
         }
 
         public boolean remove(String key) {
-            change();
-            return data.remove(key) != null;
+            load();
+            boolean removed = data.remove(key) != null;
+            if (removed) {
+                change();
+            }
+            return removed;
         }
 
         public void remove(String... keys) {
@@ -297,8 +419,27 @@ public class Scope {
         }
 
         public void clear() {
+            load();
             change();
             data.clear();
+            dropStore();
+        }
+
+        /**
+         * Keep the session data under a new session id, eg. after a login. With the cache store,
+         * the data previously stored is deleted and a new signed id is sent.
+         */
+        public void regenerate() {
+            load();
+            change();
+            dropStore();
+        }
+
+        private void dropStore() {
+            if (storeId != null) {
+                Cache.delete(STORE_PREFIX + storeId);
+                storeId = null;
+            }
         }
 
         /**
@@ -306,6 +447,7 @@ public class Scope {
          * e.g. does not contain anything else than the timestamp
          */
         public boolean isEmpty() {
+            load();
             for (String key : data.keySet()) {
                 if (!TS_KEY.equals(key)) {
                     return false;
@@ -315,11 +457,13 @@ public class Scope {
         }
 
         public boolean contains(String key) {
+            load();
             return data.containsKey(key);
         }
 
         @Override
         public String toString() {
+            load();
             return data.toString();
         }
     }
@@ -340,6 +484,13 @@ public class Scope {
 
         boolean rootParamsNodeIsGenerated = false;
         private RootParamNode rootParamNode = null;
+        // keys index used to find params by prefix, built on demand (a value replaced directly
+        // in data, rather than with put() or through all(), is not seen by it)
+        private TreeMap<String, String[]> sortedData = null;
+        // the map the index was built from, as data is public and may be replaced
+        private Map<String, String[]> sortedSource = null;
+        // whether all() has handed the map out, after which it may be modified without notice
+        private boolean dataExposed = false;
 
         public RootParamNode getRootParamNode() {
             checkAndParse();
@@ -387,6 +538,7 @@ public class Scope {
             data.put(key, new String[]{value});
             // make sure rootsParamsNode is regenerated if needed
             rootParamsNodeIsGenerated = false;
+            sortedData = null;
         }
 
         public void put(String key, String[] values) {
@@ -394,6 +546,7 @@ public class Scope {
             data.put(key, values);
             // make sure rootsParamsNode is regenerated if needed
             rootParamsNodeIsGenerated = false;
+            sortedData = null;
         }
 
         public void remove(String key) {
@@ -401,6 +554,7 @@ public class Scope {
             data.remove(key);
             // make sure rootsParamsNode is regenerated if needed
             rootParamsNodeIsGenerated = false;
+            sortedData = null;
         }
 
         public String get(String key) {
@@ -447,16 +601,31 @@ public class Scope {
 
         public Map<String, String[]> all() {
             checkAndParse();
+            // The map may be modified directly from now on
+            dataExposed = true;
+            sortedData = null;
             return data;
         }
 
         public Map<String, String[]> sub(String prefix) {
             checkAndParse();
             Map<String, String[]> result = new HashMap<String, String[]>();
-            for (String key : data.keySet()) {
-                if (key.startsWith(prefix + ".")) {
-                    result.put(key.substring(prefix.length() + 1), data.get(key));
+            if (dataExposed) {
+                // The index could miss the changes made through all()
+                for (String key : data.keySet()) {
+                    if (key.startsWith(prefix + ".")) {
+                        result.put(key.substring(prefix.length() + 1), data.get(key));
+                    }
                 }
+                return result;
+            }
+            if (sortedData == null || sortedSource != data || sortedData.size() != data.size()) {
+                sortedData = new TreeMap<String, String[]>(data);
+                sortedSource = data;
+            }
+            // All keys starting with "prefix." are between "prefix." and "prefix/"
+            for (Map.Entry<String, String[]> entry : sortedData.subMap(prefix + ".", prefix + "/").entrySet()) {
+                result.put(entry.getKey().substring(prefix.length() + 1), entry.getValue());
             }
             return result;
         }
@@ -474,12 +643,18 @@ public class Scope {
             for (Map.Entry<String, String[]> entry : map.entrySet()) {
                 Utils.Maps.mergeValueInMap(data, entry.getKey(), entry.getValue());
             }
+            // make sure rootsParamsNode is regenerated if needed
+            rootParamsNodeIsGenerated = false;
+            sortedData = null;
         }
 
         void __mergeWith(Map<String, String> map) {
             for (Map.Entry<String, String> entry : map.entrySet()) {
                 Utils.Maps.mergeValueInMap(data, entry.getKey(), entry.getValue());
             }
+            // make sure rootsParamsNode is regenerated if needed
+            rootParamsNodeIsGenerated = false;
+            sortedData = null;
         }
 
         public String urlEncode() {
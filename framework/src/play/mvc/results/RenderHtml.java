@@ -1,5 +1,8 @@
 package play.mvc.results;
 
+import java.io.IOException;
+
+import play.cache.BinarySerializer;
 import play.exceptions.UnexpectedException;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
@@ -10,6 +13,18 @@ import play.mvc.Http.Response;
 public class RenderHtml extends Result {
     
     String text;
+
+    static {
+        BinarySerializer.register(RenderHtml.class, new BinarySerializer.Codec<RenderHtml>() {
+            public void write(RenderHtml value, BinarySerializer.Output out) throws IOException {
+                out.writeString(value.text);
+            }
+
+            public RenderHtml read(BinarySerializer.Input in) throws IOException {
+                return new RenderHtml(in.readString());
+            }
+        });
+    }
     
     public RenderHtml(CharSequence text) {
         this.text = text.toString();
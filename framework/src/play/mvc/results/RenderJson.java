@@ -3,50 +3,212 @@ package play.mvc.results;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSerializer;
+import com.google.gson.stream.JsonWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import play.cache.BinarySerializer;
+import play.db.jpa.GenericModel.JPAQuery;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
 import play.exceptions.UnexpectedException;
 
 /**
  * 200 OK with application/json
+ *
+ * The object is serialized when the result is built. Iterators, JdbcIterators,
+ * lazy Iterables and JPAQueries are instead written element by element as a JSON array when the
+ * result is applied, in chunks when the server supports it, so that their elements never all
+ * exist in memory. An error raised while streaming them happens after the headers and part of
+ * the body may have been sent: it is not handled by the @Catch methods and ends the response,
+ * and the elements are read after the @After methods have run.
  */
 public class RenderJson extends Result {
 
+    /** the number of entities fetched at once from a JPAQuery */
+    static final int BATCH_SIZE = 100;
+    /** the size of the chunks sent when streaming a sequence */
+    static final int CHUNK_SIZE = 8192;
+
+    private static final Map<String, Object[]> adapters = new LinkedHashMap<String, Object[]>();
+    private static volatile Gson gson = new Gson();
+
     String json;
+    private transient Object source;
+    private transient Type type;
+    private transient Gson serializer;
+
+    static {
+        BinarySerializer.register(RenderJson.class, new BinarySerializer.Codec<RenderJson>() {
+            public void write(RenderJson value, BinarySerializer.Output out) throws IOException {
+                out.writeString(value.getJson());
+            }
+
+            public RenderJson read(BinarySerializer.Input in) throws IOException {
+                return new RenderJson(in.readString());
+            }
+        });
+    }
 
     public RenderJson(Object o) {
-        json = new Gson().toJson(o);
+        this(o, (Type) null);
     }
 
     public RenderJson(Object o, Type type) {
-        json = new Gson().toJson(o, type);
+        this(o, type, gson);
     }
 
     public RenderJson(Object o, JsonSerializer<?>... adapters) {
-        GsonBuilder gson = new GsonBuilder();
+        GsonBuilder builder = builder();
         for (Object adapter : adapters) {
             Type t = getMethod(adapter.getClass(), "serialize").getParameterTypes()[0];
-            gson.registerTypeAdapter(t, adapter);
+            builder.registerTypeAdapter(t, adapter);
         }
-        json = gson.create().toJson(o);
+        this.serializer = builder.create();
+        init(o);
+    }
+
+    private RenderJson(Object o, Type type, Gson serializer) {
+        this.type = type;
+        this.serializer = serializer;
+        init(o);
     }
 
     public RenderJson(String jsonString) {
         json = jsonString;
     }
 
+    private void init(Object o) {
+        if (isSequence(o)) {
+            // Streamed when the result is applied
+            source = o;
+        } else if (o == null) {
+            json = serializer.toJson(null);
+        } else {
+            json = serializer.toJson(o, type == null ? o.getClass() : type);
+        }
+    }
+
+    /**
+     * Register a Gson serializer/deserializer/instance creator used by all the JSON renderings.
+     * A type registered again (eg. after the application has been reloaded) replaces the previous one.
+     */
+    public static synchronized void registerTypeAdapter(Type type, Object adapter) {
+        adapters.put(type.toString(), new Object[]{type, adapter});
+        gson = builder().create();
+    }
+
+    /**
+     * @return The shared Gson instance, configured with the registered type adapters
+     */
+    public static Gson gson() {
+        return gson;
+    }
+
+    private static synchronized GsonBuilder builder() {
+        GsonBuilder builder = new GsonBuilder();
+        for (Object[] adapter : adapters.values()) {
+            builder.registerTypeAdapter((Type) adapter[0], adapter[1]);
+        }
+        return builder;
+    }
+
+    /**
+     * @return The JSON text. A streamed source is consumed to build it, and the text is kept
+     * for the later applications of the result.
+     */
+    public String getJson() {
+        if (json == null) {
+            StringWriter out = new StringWriter();
+            try {
+                write(out);
+            } catch (IOException e) {
+                throw new UnexpectedException(e);
+            }
+            json = out.toString();
+            source = null;
+        }
+        return json;
+    }
+
     public void apply(Request request, Response response) {
         try {
             String encoding = getEncoding();
             setContentTypeIfNotSet(response, "application/json; charset="+encoding);
-            response.out.write(json.getBytes(encoding));
+            if (json != null) {
+                response.out.write(json.getBytes(encoding));
+                return;
+            }
+            boolean chunked = response.isChunkedSupported();
+            OutputStream out = chunked ? new ChunkOutputStream(response) : response.out;
+            OutputStreamWriter writer = new OutputStreamWriter(out, encoding);
+            write(writer);
+            writer.flush();
+            if (chunked) {
+                out.flush();
+            }
         } catch (Exception e) {
             throw new UnexpectedException(e);
         }
     }
 
+    private void write(Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setLenient(true);
+        Iterator<?> iterator = iterator(source);
+        try {
+            writer.beginArray();
+            while (iterator.hasNext()) {
+                Object element = iterator.next();
+                if (element == null) {
+                    writer.nullValue();
+                } else {
+                    serializer.toJson(element, element.getClass(), writer);
+                }
+            }
+            writer.endArray();
+        } finally {
+            if (iterator instanceof Closeable) {
+                ((Closeable) iterator).close();
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Whether the source is written element by element (collections and arrays are serialized by Gson,
+     * which honours their declared element type)
+     */
+    private boolean isSequence(Object o) {
+        return type == null && (o instanceof Iterator || o instanceof JPAQuery || (o instanceof Iterable && !(o instanceof Collection)));
+    }
+
+    private static Iterator<?> iterator(Object o) {
+        if (o instanceof JPAQuery) {
+            return ((JPAQuery) o).iterate(BATCH_SIZE);
+        }
+        if (o instanceof Iterable) {
+            return ((Iterable<?>) o).iterator();
+        }
+        return (Iterator<?>) o;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // The serializer and the source are not serializable
+        getJson();
+        out.defaultWriteObject();
+    }
+
     //
     static Method getMethod(Class clazz, String methodName) {
         Method bestMatch = null;
@@ -60,5 +222,46 @@ public class RenderJson extends Result {
         return bestMatch;
     }
 
+    static class ChunkOutputStream extends OutputStream {
 
+        private final Response response;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+
+        ChunkOutputStream(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (count > 0) {
+                byte[] chunk = new byte[count];
+                System.arraycopy(buffer, 0, chunk, 0, count);
+                count = 0;
+                response.writeChunk(chunk);
+            }
+        }
+    }
 }
@@ -1,33 +1,73 @@
 package play.mvc.results;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Map;
 
+import play.cache.BinarySerializer;
 import play.exceptions.UnexpectedException;
 import play.libs.MimeTypes;
+import play.mvc.Http;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
+import play.templates.EncodedOutput;
 import play.templates.Template;
 
 /**
  * 200 OK with a template rendering
+ *
+ * The template is rendered when the result is created, so that the session changes and the
+ * errors of the rendering are handled by the action, directly into a buffer encoded in the
+ * response encoding.
  */
 public class RenderTemplate extends Result {
 
     private String name;
-    private String content;
+    private String encoding;
+    private transient EncodedOutput content;
+
+    static {
+        BinarySerializer.register(RenderTemplate.class, new BinarySerializer.Codec<RenderTemplate>() {
+            public void write(RenderTemplate value, BinarySerializer.Output out) throws IOException {
+                out.writeString(value.name);
+                out.writeString(value.encoding);
+                out.writeInt(value.content.size());
+                value.content.writeTo(out);
+            }
+
+            public RenderTemplate read(BinarySerializer.Input in) throws IOException {
+                return new RenderTemplate(in.readString(), in.readString(), in.readBytes());
+            }
+        });
+    }
 
     public RenderTemplate(Template template, Map<String, Object> args) {
         this.name = template.name;
         if (args.containsKey("out")) {
             throw new RuntimeException("Assertion failed! args shouldn't contain out");
         }
-        this.content = template.render(args);
+        this.encoding = Http.Response.current() == null ? "utf-8" : getEncoding();
+        this.content = new EncodedOutput(encoding);
+        template.render(args, content);
+    }
+
+    private RenderTemplate(String name, String encoding, byte[] content) {
+        this.name = name;
+        this.encoding = encoding;
+        this.content = new EncodedOutput(encoding);
+        this.content.writeEncoded(content);
     }
 
     public void apply(Request request, Response response) {
         try {
             final String contentType = MimeTypes.getContentType(name, "text/plain");
-            response.out.write(content.getBytes(getEncoding()));
+            if (encoding.equals(getEncoding())) {
+                content.writeTo(response.out);
+            } else {
+                // The encoding has been changed after the rendering
+                response.out.write(getContent().getBytes(getEncoding()));
+            }
             setContentTypeIfNotSet(response, contentType);
         } catch (Exception e) {
             throw new UnexpectedException(e);
@@ -35,7 +75,21 @@ public class RenderTemplate extends Result {
     }
 
     public String getContent() {
-        return content;
+        return content.toString();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(content.size());
+        content.writeTo(out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        content = new EncodedOutput(encoding);
+        content.writeEncoded(bytes);
     }
 
 }
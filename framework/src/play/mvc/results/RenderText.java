@@ -1,5 +1,8 @@
 package play.mvc.results;
 
+import java.io.IOException;
+
+import play.cache.BinarySerializer;
 import play.exceptions.UnexpectedException;
 import play.mvc.Http;
 import play.mvc.Http.Request;
@@ -11,6 +14,18 @@ import play.mvc.Http.Response;
 public class RenderText extends Result {
     
     String text;
+
+    static {
+        BinarySerializer.register(RenderText.class, new BinarySerializer.Codec<RenderText>() {
+            public void write(RenderText value, BinarySerializer.Output out) throws IOException {
+                out.writeString(value.text);
+            }
+
+            public RenderText read(BinarySerializer.Input in) throws IOException {
+                return new RenderText(in.readString());
+            }
+        });
+    }
     
     public RenderText(CharSequence text) {
         this.text = text.toString();
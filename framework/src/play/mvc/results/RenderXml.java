@@ -1,7 +1,10 @@
 package play.mvc.results;
 
+import java.io.IOException;
+
 import org.w3c.dom.Document;
 
+import play.cache.BinarySerializer;
 import play.exceptions.UnexpectedException;
 import play.libs.XML;
 import play.mvc.Http.Request;
@@ -16,6 +19,18 @@ public class RenderXml extends Result {
 
     String xml;
 
+    static {
+        BinarySerializer.register(RenderXml.class, new BinarySerializer.Codec<RenderXml>() {
+            public void write(RenderXml value, BinarySerializer.Output out) throws IOException {
+                out.writeString(value.xml);
+            }
+
+            public RenderXml read(BinarySerializer.Input in) throws IOException {
+                return new RenderXml((CharSequence) in.readString());
+            }
+        });
+    }
+
     public RenderXml(CharSequence xml) {
         this.xml = xml.toString();
     }
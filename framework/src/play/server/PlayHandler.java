@@ -103,7 +103,9 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
 
             // Plain old HttpRequest
             try {
+                RequestTiming timing = RequestTiming.start();
                 final Request request = parseRequest(ctx, nettyRequest, messageEvent);
+                request.timing = timing;
 
                 final Response response = new Response();
                 Http.Response.current.set(response);
@@ -129,6 +131,9 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 } else {
 
                     // Deleguate to Play framework
+                    if (timing != null) {
+                        timing.switchTo(RequestTiming.QUEUE);
+                    }
                     Invoker.invoke(new NettyInvocation(request, response, ctx, nettyRequest, messageEvent));
 
                 }
@@ -229,6 +234,9 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
 
         @Override
         public void run() {
+            if (request.timing != null) {
+                request.timing.switchTo(RequestTiming.OTHER);
+            }
             try {
                 if (Logger.isTraceEnabled()) {
                     Logger.trace("run: begin");
@@ -236,12 +244,23 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 super.run();
             } catch (Exception e) {
                 serve500(e, ctx, nettyRequest);
+                if (request.timing != null) {
+                    request.timing.finish(request);
+                }
             }
             if (Logger.isTraceEnabled()) {
                 Logger.trace("run: end");
             }
         }
 
+        @Override
+        public void suspend(Invoker.Suspend suspendRequest) {
+            if (request.timing != null) {
+                request.timing.switchTo(RequestTiming.AWAIT);
+            }
+            super.suspend(suspendRequest);
+        }
+
         @Override
         public void execute() throws Exception {
             if (!ctx.getChannel().isConnected()) {
@@ -261,11 +280,21 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         @Override
         public void onSuccess() throws Exception {
             super.onSuccess();
+            RequestTiming timing = request.timing;
+            if (timing != null) {
+                if (!response.chunked && Play.configuration.getProperty("http.timing.header", "false").equals("true")) {
+                    response.setHeader("Server-Timing", timing.serverTiming());
+                }
+                timing.switchTo(RequestTiming.WRITE);
+            }
             if (response.chunked) {
                 closeChunked(request, response, ctx, nettyRequest);
             } else {
                 copyResponse(ctx, request, response, nettyRequest);
             }
+            if (timing != null) {
+                timing.finish(request);
+            }
             if (Logger.isTraceEnabled()) {
                 Logger.trace("execute: end");
             }
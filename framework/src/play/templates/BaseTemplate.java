@@ -97,6 +97,8 @@ public abstract class BaseTemplate extends Template {
     public static ThreadLocal<BaseTemplate> layout = new ThreadLocal<BaseTemplate>();
     public static ThreadLocal<Map<Object, Object>> layoutData = new ThreadLocal<Map<Object, Object>>();
     public static ThreadLocal<BaseTemplate> currentTemplate = new ThreadLocal<BaseTemplate>();
+    /** the content of the template being decorated by the layout rendered by this thread (a StringBuffer or an EncodedOutput) */
+    public static ThreadLocal<Object> layoutBody = new ThreadLocal<Object>();
 
     public static class RawData {
 
@@ -0,0 +1,145 @@
+package play.templates;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import play.exceptions.UnexpectedException;
+
+/**
+ * The output of a template rendered into bytes in a given charset.
+ *
+ * The static text of the compiled templates is written already encoded, only the dynamic
+ * parts are encoded while rendering.
+ */
+public class EncodedOutput extends PrintWriter {
+
+    public final String charset;
+    /** whether the charset is a superset of ASCII: the output can be trimmed, and pieces of text encoded separately */
+    final boolean asciiCompatible;
+    private final Buffer buffer;
+
+    public EncodedOutput(String charset) {
+        this(new Buffer(), charset);
+    }
+
+    private EncodedOutput(Buffer buffer, String charset) {
+        super(writer(buffer, charset));
+        this.buffer = buffer;
+        this.charset = charset;
+        this.asciiCompatible = isAsciiCompatible(charset);
+    }
+
+    private static OutputStreamWriter writer(OutputStream out, String charset) {
+        try {
+            return new OutputStreamWriter(out, charset);
+        } catch (UnsupportedEncodingException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    static boolean isAsciiCompatible(String charset) {
+        return encode(" \t\r\na", charset).length == 5;
+    }
+
+    static byte[] encode(String text, String charset) {
+        try {
+            return text.getBytes(charset);
+        } catch (UnsupportedEncodingException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    /**
+     * Write bytes already encoded in the charset of this output
+     */
+    public void writeEncoded(byte[] bytes) {
+        flush();
+        buffer.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Write the content of another output
+     */
+    public void writeEncoded(EncodedOutput other) {
+        if (asciiCompatible && charset.equals(other.charset)) {
+            other.flush();
+            flush();
+            buffer.write(other.buffer.bytes(), 0, other.buffer.size());
+        } else {
+            print(other.toString());
+        }
+    }
+
+    /**
+     * Move the content of this output to a new one
+     * @return The new output
+     */
+    EncodedOutput detach() {
+        EncodedOutput copy = new EncodedOutput(charset);
+        copy.writeEncoded(this);
+        buffer.reset();
+        return copy;
+    }
+
+    /**
+     * @return The number of bytes written
+     */
+    public int size() {
+        flush();
+        return buffer.size();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        flush();
+        buffer.writeTo(out);
+    }
+
+    /**
+     * Remove the leading and trailing whitespaces written after a position, like String.trim()
+     * (the output must be ascii compatible)
+     */
+    void trim(int from) {
+        flush();
+        byte[] bytes = buffer.bytes();
+        int end = buffer.size();
+        int first = from;
+        while (first < end && (bytes[first] & 0xff) <= ' ') {
+            first++;
+        }
+        while (end > first && (bytes[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        if (first > from) {
+            System.arraycopy(bytes, first, bytes, from, end - first);
+        }
+        buffer.truncate(from + end - first);
+    }
+
+    @Override
+    public String toString() {
+        flush();
+        try {
+            return buffer.toString(charset);
+        } catch (UnsupportedEncodingException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    static class Buffer extends ByteArrayOutputStream {
+
+        Buffer() {
+            super(8192);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+    }
+}
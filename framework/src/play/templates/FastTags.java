@@ -2,16 +2,21 @@ package play.templates;
 
 import groovy.lang.Closure;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang.StringUtils;
@@ -21,6 +26,8 @@ import play.data.validation.Validation;
 import play.exceptions.TagInternalException;
 import play.exceptions.TemplateExecutionException;
 import play.exceptions.TemplateNotFoundException;
+import play.exceptions.UnexpectedException;
+import play.i18n.Lang;
 import play.libs.Codec;
 import play.mvc.Http;
 import play.mvc.Mailer;
@@ -36,20 +43,73 @@ import play.utils.HTML;
  */
 public class FastTags {
 
-    public static void _cache(Map<?, ?> args, Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
-        String key = args.get("arg").toString();
+    public static void _cache(Map<?, ?> args, final Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
+        StringBuilder key = new StringBuilder(args.get("arg").toString());
         String duration = null;
         if (args.containsKey("for")) {
             duration = args.get("for").toString();
         }
-        Object cached = Cache.get(key);
-        if (cached != null) {
+        String stale = null;
+        if (args.containsKey("stale")) {
+            stale = args.get("stale").toString();
+        }
+        for (String name : names(args.get("vary"))) {
+            if (name.equals("lang")) {
+                key.append("|lang:").append(Lang.get());
+            } else if (name.equals("format")) {
+                Http.Request request = Http.Request.current();
+                if (request != null && request.format != null) {
+                    key.append("|format:").append(request.format);
+                }
+            } else {
+                throw new TemplateExecutionException(template.template, fromLine, "Cannot vary the #{cache} key on " + name + " (only lang and format)", new TagInternalException("Bad vary argument"));
+            }
+        }
+        if (args.get("segment") != null) {
+            key.append("|segment:").append(args.get("segment"));
+        }
+        String cacheKey = key.toString();
+        if (args.get("tags") != null) {
+            List<String> tags = names(args.get("tags"));
+            cacheKey = Cache.tagged(cacheKey, tags.toArray(new String[tags.size()]));
+        }
+        // The segment may have spaces
+        cacheKey = Cache.safeKey(cacheKey);
+        // Rendered once at a time per key, and stored as utf-8 bytes rather than as a String
+        Object cached = Cache.getOrElse(cacheKey, duration, stale, new Callable<Object>() {
+            public Object call() throws Exception {
+                return JavaExtensions.toString(body).getBytes("utf-8");
+            }
+        });
+        if (cached instanceof byte[]) {
+            if (out instanceof EncodedOutput && "utf-8".equalsIgnoreCase(((EncodedOutput) out).charset)) {
+                ((EncodedOutput) out).writeEncoded((byte[]) cached);
+                return;
+            }
+            try {
+                out.print(new String((byte[]) cached, "utf-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new UnexpectedException(e);
+            }
+        } else if (cached != null) {
             out.print(cached);
-            return;
         }
-        String result = JavaExtensions.toString(body);
-        Cache.set(key, result, duration);
-        out.print(result);
+    }
+
+    static List<String> names(Object value) {
+        List<String> names = new ArrayList<String>();
+        if (value instanceof Collection) {
+            for (Object name : (Collection<?>) value) {
+                names.add(name.toString());
+            }
+        } else if (value instanceof Object[]) {
+            for (Object name : (Object[]) value) {
+                names.add(name.toString());
+            }
+        } else if (value != null) {
+            names.add(value.toString());
+        }
+        return names;
     }
 
     public static void _verbatim(Map<?, ?> args, Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
@@ -293,7 +353,16 @@ public class FastTags {
     }
 
     public static void _doLayout(Map<?, ?> args, Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
-        out.print("____%LAYOUT%____");
+        Object content = BaseTemplate.layoutBody.get();
+        if (content == null) {
+            out.print("____%LAYOUT%____");
+            return;
+        }
+        try {
+            GroovyTemplate.write(content, out);
+        } catch (IOException e) {
+            throw new UnexpectedException(e);
+        }
     }
 
     public static void _get(Map<?, ?> args, Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
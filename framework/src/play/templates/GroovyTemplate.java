@@ -11,11 +11,15 @@ import groovy.lang.MissingPropertyException;
 import groovy.lang.Script;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.codehaus.groovy.control.CompilationUnit;
@@ -196,6 +200,25 @@ public class GroovyTemplate extends BaseTemplate {
         compiledTemplateName = compiledTemplate.getName();
     }
 
+    /**
+     * Compile and load the template, and encode its static text for a charset
+     */
+    void warmup(String charset) {
+        compile();
+        try {
+            Field field = compiledTemplate.getDeclaredField("_segments");
+            field.setAccessible(true);
+            Segments segments = (Segments) field.get(null);
+            if (EncodedOutput.isAsciiCompatible(charset)) {
+                segments.encoded(charset);
+            }
+        } catch (NoSuchFieldException e) {
+            // Compiled by a previous version
+        } catch (IllegalAccessException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
     @Override
     public String render(Map<String, Object> args) {
         try {
@@ -205,8 +228,29 @@ public class GroovyTemplate extends BaseTemplate {
         }
     }
 
+    @Override
+    public void render(Map<String, Object> args, Writer out) {
+        try {
+            super.render(args, out);
+        } finally {
+            currentTemplate.remove();
+        }
+    }
+
     @Override
     protected String internalRender(Map<String, Object> args) {
+        if (args.containsKey("out")) {
+            // Called from another template: the output goes to its writer
+            internalRender(args, null);
+            return null;
+        }
+        StringWriter writer = new StringWriter();
+        internalRender(args, writer);
+        return writer.toString();
+    }
+
+    @Override
+    protected void internalRender(Map<String, Object> args, Writer out) {
         compile();
         Binding binding = new Binding(args);
         binding.setVariable("play", new Play());
@@ -217,7 +261,8 @@ public class GroovyTemplate extends BaseTemplate {
         if (currentResponse != null) {
             binding.setVariable("_response_encoding", currentResponse.encoding);
         }
-        StringWriter writer = null;
+        // the buffered output of this template (a StringBuffer or an EncodedOutput)
+        Object content = null;
         Boolean applyLayouts = false;
 
         // must check if this is the first template being rendered..
@@ -227,11 +272,19 @@ public class GroovyTemplate extends BaseTemplate {
         if (!args.containsKey("out")) {
             // This is the first template being rendered.
             // We have to set up the PrintWriter that this (and all sub-templates) are going
-            // to write the output to..
+            // to write the output to.. It is buffered since the template may extend a layout
             applyLayouts = true;
             layout.set(null);
-            writer = new StringWriter();
-            binding.setProperty("out", new PrintWriter(writer));
+            if (out instanceof EncodedOutput) {
+                // An empty output is written directly, its content is moved if a layout is applied
+                EncodedOutput encoded = ((EncodedOutput) out).size() == 0 ? (EncodedOutput) out : new EncodedOutput(((EncodedOutput) out).charset);
+                binding.setProperty("out", encoded);
+                content = encoded;
+            } else {
+                StringWriter writer = new StringWriter();
+                binding.setProperty("out", new PrintWriter(writer));
+                content = writer.getBuffer();
+            }
             currentTemplate.set(this);
         }
         if (!args.containsKey("_body") && !args.containsKey("_isLayout") && !args.containsKey("_isInclude")) {
@@ -275,29 +328,148 @@ public class GroovyTemplate extends BaseTemplate {
                 monitor.stop();
             }
         }
-        if (applyLayouts && layout.get() != null) {
-            Map<String, Object> layoutArgs = new HashMap<String, Object>(args);
-            layoutArgs.remove("out");
-            layoutArgs.put("_isLayout", true);
-            String layoutR = layout.get().internalRender(layoutArgs);
+        try {
+            if (applyLayouts && layout.get() != null) {
+                Map<String, Object> layoutArgs = new HashMap<String, Object>(args);
+                layoutArgs.remove("out");
+                layoutArgs.put("_isLayout", true);
+                // The layout is written directly to the output, #{doLayout /} writes
+                // the content of this template where it appears
+                if (content == out) {
+                    content = ((EncodedOutput) out).detach();
+                }
+                Object previousBody = layoutBody.get();
+                layoutBody.set(content);
+                try {
+                    if (out instanceof EncodedOutput && ((EncodedOutput) out).asciiCompatible) {
+                        EncodedOutput encoded = (EncodedOutput) out;
+                        int start = encoded.size();
+                        layout.get().internalRender(layoutArgs, encoded);
+                        encoded.trim(start);
+                    } else {
+                        TrimWriter trimmed = new TrimWriter(out);
+                        layout.get().internalRender(layoutArgs, trimmed);
+                        trimmed.flush();
+                    }
+                } finally {
+                    layoutBody.set(previousBody);
+                }
+            } else if (content != null && content != out) {
+                write(content, out);
+            }
+        } catch (IOException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    /**
+     * Write the buffered output of a template without copying it into a String
+     */
+    static void write(Object content, Writer out) throws IOException {
+        if (content instanceof EncodedOutput) {
+            if (out instanceof EncodedOutput) {
+                ((EncodedOutput) out).writeEncoded((EncodedOutput) content);
+            } else {
+                out.write(content.toString());
+            }
+            return;
+        }
+        StringBuffer buffer = (StringBuffer) content;
+        char[] chars = new char[Math.min(buffer.length(), 8192)];
+        for (int start = 0; start < buffer.length(); start += chars.length) {
+            int end = Math.min(start + chars.length, buffer.length());
+            buffer.getChars(start, end, chars, 0);
+            out.write(chars, 0, end - start);
+        }
+    }
+
+    /**
+     * The static text of a compiled template, encoded once per charset
+     */
+    public static class Segments {
+
+        private final String[] texts;
+        private final ConcurrentMap<String, byte[][]> encoded = new ConcurrentHashMap<String, byte[][]>();
+
+        public Segments(String... texts) {
+            this.texts = texts;
+        }
+
+        public void print(PrintWriter out, int index) {
+            if (out instanceof EncodedOutput && ((EncodedOutput) out).asciiCompatible) {
+                EncodedOutput output = (EncodedOutput) out;
+                output.writeEncoded(encoded(output.charset)[index]);
+            } else {
+                // Charsets such as UTF-16 can't be encoded by pieces (byte order marks)
+                out.print(texts[index]);
+            }
+        }
+
+        byte[][] encoded(String charset) {
+            byte[][] segments = encoded.get(charset);
+            if (segments == null) {
+                segments = new byte[texts.length][];
+                for (int i = 0; i < texts.length; i++) {
+                    segments[i] = EncodedOutput.encode(texts[i], charset);
+                }
+                encoded.put(charset, segments);
+            }
+            return segments;
+        }
+    }
+
+    /**
+     * A writer removing the leading and trailing whitespaces of what it writes, like String.trim()
+     */
+    static class TrimWriter extends Writer {
+
+        private final Writer out;
+        private final StringBuilder pending = new StringBuilder();
+        private boolean started;
+
+        TrimWriter(Writer out) {
+            this.out = out;
+        }
 
-            // Must replace '____%LAYOUT%____' inside the string layoutR with the content from writer..
-            final String whatToFind = "____%LAYOUT%____";
-            final int pos = layoutR.indexOf(whatToFind);
-            if (pos >=0) {
-                // prepending and appending directly to writer/buffer to prevent us
-                // from having to duplicate the string.
-                // this makes us use half of the memory!
-                writer.getBuffer().insert(0,layoutR.substring(0,pos));
-                writer.append(layoutR.substring(pos+whatToFind.length()));
-                return writer.toString().trim();
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            int start = off;
+            int end = off + len;
+            if (!started) {
+                while (start < end && cbuf[start] <= ' ') {
+                    start++;
+                }
+                if (start == end) {
+                    return;
+                }
+                started = true;
+            }
+            int last = end - 1;
+            while (last >= start && cbuf[last] <= ' ') {
+                last--;
             }
-            return layoutR;
+            if (last < start) {
+                // Only whitespaces: they are written if something follows
+                pending.append(cbuf, start, end - start);
+                return;
+            }
+            if (pending.length() > 0) {
+                out.append(pending);
+                pending.setLength(0);
+            }
+            out.write(cbuf, start, last + 1 - start);
+            pending.append(cbuf, last + 1, end - last - 1);
         }
-        if (writer != null) {
-            return writer.toString();
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
         }
-        return null;
     }
 
     Throwable cleanStackTrace(Throwable e) {
@@ -431,6 +603,21 @@ public class GroovyTemplate extends BaseTemplate {
             return (val != null) ? val.toString() : "";
         }
 
+        /**
+         * Print an expression: like out.print(__safeFaster(val)), but the HTML is escaped directly
+         * into the output
+         */
+        public void __safePrint(Writer out, Object val) throws IOException {
+            if (val != null && !(val instanceof RawData) && extension != null) {
+                SafeFormatter formatter = safeFormatters.get(extension);
+                if (formatter != null && formatter.getClass() == SafeHTMLFormatter.class && !TagContext.hasParentTag("verbatim")) {
+                    HTML.htmlEscape(val.toString(), out);
+                    return;
+                }
+            }
+            out.write(String.valueOf(__safeFaster(val)));
+        }
+
         public String __getMessage(Object[] val) {
             if (val==null) {
                 throw new NullPointerException("You are trying to resolve a message with an expression " +
@@ -19,25 +19,33 @@ import play.templates.GroovyInlineTags.CALL;
  */
 public class GroovyTemplateCompiler extends TemplateCompiler {
 
-    public static List<String> extensionsClassnames = new ArrayList<String>();
+    public static volatile List<String> extensionsClassnames = new ArrayList<String>();
+    // The extensions used by this compilation
+    List<String> extensions;
 
     // [#714] The groovy-compiler complaints if a line is more than 65535 unicode units long..
     // Have to split it if it is really that big
     protected static final int maxPlainTextLength = 60000;
 
+    // The static text of the template, emitted as a Segments constant encoded once per charset
+    List<String> segments = new ArrayList<String>();
+
 
     @Override
     public BaseTemplate compile(BaseTemplate template) {
+        // Templates may be compiled concurrently: the list is replaced, not modified
+        List<String> names = new ArrayList<String>();
         try {
-            extensionsClassnames.clear();
-            extensionsClassnames.addAll( Play.pluginCollection.addTemplateExtensions());
+            names.addAll( Play.pluginCollection.addTemplateExtensions());
             List<Class> extensionsClasses = Play.classloader.getAssignableClasses(JavaExtensions.class);
             for (Class extensionsClass : extensionsClasses) {
-                extensionsClassnames.add(extensionsClass.getName());
+                names.add(extensionsClass.getName());
             }
         } catch (Throwable e) {
             //
         }
+        extensionsClassnames = names;
+        extensions = names;
         return super.compile(template);
     }
 
@@ -124,7 +132,7 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
         print(className);
         println(" extends play.templates.GroovyTemplate.ExecutableTemplate {");
         println("public Object run() { use(play.templates.JavaExtensions) {");
-        for (String n : extensionsClassnames) {
+        for (String n : extensions) {
             println("use(_('" + n + "')) {");
         }
     }
@@ -132,13 +140,24 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
     @Override
     @SuppressWarnings("unused")
     void end() {
-        for (String n : extensionsClassnames) {
+        for (String n : extensions) {
             println(" } ");
         }
         println("} }");
+        print("static final play.templates.GroovyTemplate.Segments _segments = new play.templates.GroovyTemplate.Segments(");
+        for (int i = 0; i < segments.size(); i++) {
+            println();
+            print((i > 0 ? ", \"" : "\"") + segments.get(i) + "\"");
+        }
+        println(");");
         println("}");
     }
 
+    void printText(String text) {
+        println("_segments.print(out, " + segments.size() + ");");
+        segments.add(text);
+    }
+
 
     /**
      * Interesting performance observation:
@@ -156,12 +175,15 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
         skipLineBreak = false;
         text = text.replaceAll("\r\n", "\n").replaceAll("\n", "\\\\n");
         // we don't have to print line numbers here since this cannot fail - it is only text printing
+        if (text.length() == 0) {
+            return;
+        }
 
         // [#714] The groovy-compiler complaints if a line is more than 65535 unicode units long..
         // Have to split it if it is really that big
         if (text.length() <maxPlainTextLength) {
             // text is "short" - just print it
-            println("out.print(\""+text+"\");");
+            printText(text);
         } else {
             // text is long - must split it
             int offset = 0;
@@ -177,7 +199,7 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
                         endPos++;
                     }
                 }
-                println("out.print(\""+text.substring(offset, endPos)+"\");");
+                printText(text.substring(offset, endPos));
                 offset+= (endPos - offset);
             }while(offset < text.length());
         }
@@ -204,7 +226,7 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
     @Override
     void expr() {
         String expr = parser.getToken().trim();
-        print(";out.print(__safeFaster("+expr+"))");
+        print(";__safePrint(out, "+expr+")");
         markLine(parser.getLine());
         println();
     }
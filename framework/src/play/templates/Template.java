@@ -1,7 +1,11 @@
 package play.templates;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
+import play.exceptions.UnexpectedException;
+import play.mvc.RequestTiming;
 
 public abstract class Template {
 
@@ -23,7 +27,12 @@ public abstract class Template {
         //
         // Since the original args is not poluted it can be used as input
         // to another rendering operation later
-        return internalRender( new HashMap<String, Object>(args) );
+        int phase = RequestTiming.enter(RequestTiming.RENDER);
+        try {
+            return internalRender( new HashMap<String, Object>(args) );
+        } finally {
+            RequestTiming.exit(phase);
+        }
     }
 
 
@@ -33,9 +42,39 @@ public abstract class Template {
      * templates "communicate" with each other by storing info in the map
      */
     protected abstract String internalRender(Map<String, Object> args);
+
+    /**
+     * Starts the rendering process without modifying the args-map, writing the result
+     * to a writer instead of building it as a String
+     * @param args map containing data binding info
+     * @param out the writer receiving the result of the complete rendering
+     */
+    public void render(Map<String, Object> args, Writer out) {
+        int phase = RequestTiming.enter(RequestTiming.RENDER);
+        try {
+            internalRender(new HashMap<String, Object>(args), out);
+        } finally {
+            RequestTiming.exit(phase);
+        }
+    }
+
+    /**
+     * The internal rendering method writing to a writer - Templates able to stream
+     * their output override it
+     */
+    protected void internalRender(Map<String, Object> args, Writer out) {
+        String result = internalRender(args);
+        if (result != null) {
+            try {
+                out.write(result);
+            } catch (IOException e) {
+                throw new UnexpectedException(e);
+            }
+        }
+    }
     
     public String render() {
-        return internalRender(new HashMap<String, Object>());
+        return render(new HashMap<String, Object>());
     }
 
     public String getName() {
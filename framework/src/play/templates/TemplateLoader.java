@@ -1,29 +1,37 @@
 package play.templates;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.Collections;
 
 import play.Logger;
 import play.Play;
 import play.vfs.VirtualFile;
 import play.exceptions.TemplateCompilationException;
 import play.exceptions.TemplateNotFoundException;
+import play.exceptions.UnexpectedException;
 
 /**
  * Load templates
  */
 public class TemplateLoader {
 
-    protected static Map<String, BaseTemplate> templates = new HashMap<String, BaseTemplate>();
+    protected static Map<String, BaseTemplate> templates = new ConcurrentHashMap<String, BaseTemplate>();
     /**
      * See getUniqueNumberForTemplateFile() for more info
      */
     private static AtomicLong nextUniqueNumber = new AtomicLong(1000);//we start on 1000
-    private static Map<String, String> templateFile2UniqueNumber = Collections.synchronizedMap(new HashMap<String, String>());
+    private static ConcurrentMap<String, String> templateFile2UniqueNumber = new ConcurrentHashMap<String, String>();
 
     /**
      * All loaded templates is cached in the templates-list using a key.
@@ -46,7 +54,11 @@ public class TemplateLoader {
         if (uniqueNumber == null) {
             //this is the first time we see this path - must assign a unique number to it.
             uniqueNumber = Long.toString(nextUniqueNumber.getAndIncrement());
-            templateFile2UniqueNumber.put(path, uniqueNumber);
+            String assigned = templateFile2UniqueNumber.putIfAbsent(path, uniqueNumber);
+            if (assigned != null) {
+                // assigned concurrently by another thread
+                uniqueNumber = assigned;
+            }
         }
         return uniqueNumber;
     }
@@ -65,7 +77,8 @@ public class TemplateLoader {
 
         // Use default engine
         final String key = getUniqueNumberForTemplateFile(file.relativePath());
-        if (!templates.containsKey(key) || templates.get(key).compiledTemplate == null) {
+        BaseTemplate loaded = templates.get(key);
+        if (loaded == null || loaded.compiledTemplate == null) {
             if (Play.usePrecompiled) {
                 BaseTemplate template = new GroovyTemplate(file.relativePath().replaceAll("\\{(.*)\\}", "from_$1").replace(":", "_").replace("..", "parent"), file.contentAsString());
                 try {
@@ -83,15 +96,15 @@ public class TemplateLoader {
                 templates.put(key, new GroovyTemplateCompiler().compile(file));
             }
         } else {
-            BaseTemplate template = templates.get(key);
-            if (Play.mode == Play.Mode.DEV && template.timestamp < file.lastModified()) {
+            if (Play.mode == Play.Mode.DEV && loaded.timestamp < file.lastModified()) {
                 templates.put(key, new GroovyTemplateCompiler().compile(file));
             }
         }
-        if (templates.get(key) == null) {
+        BaseTemplate template = templates.get(key);
+        if (template == null) {
             throw new TemplateNotFoundException(file.relativePath());
         }
-        return templates.get(key);
+        return template;
     }
 
     /**
@@ -197,45 +210,108 @@ public class TemplateLoader {
     }
 
     /**
-     * List all found templates
+     * List all found templates, compiling them in parallel
      * @return A list of executable templates
      */
     public static List<Template> getAllTemplate() {
-        List<Template> res = new ArrayList<Template>();
+        List<VirtualFile> files = new ArrayList<VirtualFile>();
         for (VirtualFile virtualFile : Play.templatesPath) {
-            scan(res, virtualFile);
+            scan(files, virtualFile);
         }
+        // The routes files are compiled but not listed
+        int templatesCount = files.size();
         for (VirtualFile root : Play.roots) {
             VirtualFile vf = root.child("conf/routes");
             if (vf != null && vf.exists()) {
-                Template template = load(vf);
-                if (template != null) {
-                    template.compile();
+                files.add(vf);
+            }
+        }
+        int threads = Math.max(1, Math.min(files.size(), Integer.parseInt(Play.configuration.getProperty("play.templates.compile.threads", String.valueOf(Runtime.getRuntime().availableProcessors())))));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "play-templates-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setContextClassLoader(Play.classloader);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Template>> compilations = new ArrayList<Future<Template>>(files.size());
+            for (final VirtualFile file : files) {
+                compilations.add(executor.submit(new Callable<Template>() {
+
+                    public Template call() {
+                        return compile(file);
+                    }
+                }));
+            }
+            List<Template> res = new ArrayList<Template>();
+            for (int i = 0; i < files.size(); i++) {
+                Template template = get(compilations.get(i));
+                if (template != null && i < templatesCount) {
+                    res.add(template);
                 }
             }
+            return res;
+        } finally {
+            executor.shutdownNow();
         }
-        return res;
     }
 
-    private static void scan(List<Template> templates, VirtualFile current) {
-        if (!current.isDirectory() && !current.getName().startsWith(".")) {
-            long start = System.currentTimeMillis();
-            Template template = load(current);
-            if (template != null) {
-                try {
-                    template.compile();
-                    if (Logger.isTraceEnabled()) {
-                        Logger.trace("%sms to load %s", System.currentTimeMillis() - start, current.getName());
-                    }
-                } catch (TemplateCompilationException e) {
-                    Logger.error("Template %s does not compile at line %d", e.getTemplate().name, e.getLineNumber());
-                    throw e;
+    /**
+     * Load and compile all the templates, and prepare their static text for the default response encoding,
+     * so that the first requests don't pay for it
+     */
+    public static void warmup() {
+        long start = System.currentTimeMillis();
+        List<Template> all = getAllTemplate();
+        for (Template template : all) {
+            if (template instanceof GroovyTemplate) {
+                ((GroovyTemplate) template).warmup(Play.defaultWebEncoding);
+            }
+        }
+        Logger.info("%d templates warmed up in %sms", all.size(), System.currentTimeMillis() - start);
+    }
+
+    private static Template compile(VirtualFile file) {
+        long start = System.currentTimeMillis();
+        Template template = load(file);
+        if (template != null) {
+            try {
+                template.compile();
+                if (Logger.isTraceEnabled()) {
+                    Logger.trace("%sms to load %s", System.currentTimeMillis() - start, file.getName());
                 }
-                templates.add(template);
+            } catch (TemplateCompilationException e) {
+                Logger.error("Template %s does not compile at line %d", e.getTemplate().name, e.getLineNumber());
+                throw e;
+            }
+        }
+        return template;
+    }
+
+    private static Template get(Future<Template> compilation) {
+        try {
+            return compilation.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new UnexpectedException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
+    private static void scan(List<VirtualFile> files, VirtualFile current) {
+        if (!current.isDirectory() && !current.getName().startsWith(".")) {
+            files.add(current);
         } else if (!current.getName().startsWith(".")) {
             for (VirtualFile virtualFile : current.list()) {
-                scan(templates, virtualFile);
+                scan(files, virtualFile);
             }
         }
     }
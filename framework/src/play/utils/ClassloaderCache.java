@@ -0,0 +1,53 @@
+package play.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import play.Play;
+import play.classloading.ApplicationClassloaderState;
+
+/**
+ * A concurrent map of data resolved from the application classes, dropped as soon as the
+ * application classloader state changes (ie. when the application is reloaded).
+ *
+ * Reading the map takes no lock: the lock is only taken to replace it after a reload.
+ */
+public class ClassloaderCache<K, V> {
+
+    private volatile Holder<K, V> holder = new Holder<K, V>(null);
+
+    /**
+     * @return The map for the current application classloader state
+     */
+    public ConcurrentMap<K, V> get() {
+        Holder<K, V> current = holder;
+        ApplicationClassloaderState state = Play.classloader == null ? null : Play.classloader.currentState;
+        if (state == null || state.equals(current.state)) {
+            return current.map;
+        }
+        synchronized (this) {
+            current = holder;
+            if (!state.equals(current.state)) {
+                current = new Holder<K, V>(state);
+                holder = current;
+            }
+            return current.map;
+        }
+    }
+
+    /**
+     * Drop all the entries
+     */
+    public synchronized void clear() {
+        holder = new Holder<K, V>(holder.state);
+    }
+
+    private static class Holder<K, V> {
+
+        final ApplicationClassloaderState state;
+        final ConcurrentMap<K, V> map = new ConcurrentHashMap<K, V>();
+
+        Holder(ApplicationClassloaderState state) {
+            this.state = state;
+        }
+    }
+}
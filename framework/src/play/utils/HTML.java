@@ -2,6 +2,7 @@ package play.utils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -39,6 +40,11 @@ public class HTML {
      */
     private static final HtmlCharacterEntityReferences characterEntityReferences = new HtmlCharacterEntityReferences();
 
+    /*
+     * The references indexed by character, up to the last character having one.
+     */
+    private static final String[] references = characterEntityReferences.toArray();
+
     /**
      * Turn special characters into HTML character references.
      * Handles complete character set defined in HTML 4.01 recommendation.
@@ -49,23 +55,72 @@ public class HTML {
      * http://www.w3.org/TR/html4/sgml/entities.html
      * </a>
      * @param input the (unescaped) input string
-     * @return the escaped string
+     * @return the escaped string, the input itself if there is nothing to escape
      */
     public static String htmlEscape(String input) {
         if (input == null) {
             return null;
         }
-        StringBuffer escaped = new StringBuffer(input.length() * 2);
-        for (int i = 0; i < input.length(); i++) {
-            char character = input.charAt(i);
-            String reference = characterEntityReferences.convertToReference(character);
-            if (reference != null) {
-                escaped.append(reference);
-            } else {
-                escaped.append(character);
+        int first = indexOfSpecial(input, 0);
+        if (first < 0) {
+            return input;
+        }
+        int length = input.length();
+        char[] escaped = new char[length + 16 + (length >> 3)];
+        input.getChars(0, first, escaped, 0);
+        int size = first;
+        int start = first;
+        for (int i = first; i >= 0; i = indexOfSpecial(input, i + 1)) {
+            String reference = references[input.charAt(i)];
+            int needed = size + (i - start) + reference.length() + (length - i);
+            if (needed > escaped.length) {
+                char[] bigger = new char[Math.max(needed, escaped.length * 2)];
+                System.arraycopy(escaped, 0, bigger, 0, size);
+                escaped = bigger;
             }
+            input.getChars(start, i, escaped, size);
+            size += i - start;
+            reference.getChars(0, reference.length(), escaped, size);
+            size += reference.length();
+            start = i + 1;
         }
-        return escaped.toString();
+        input.getChars(start, length, escaped, size);
+        size += length - start;
+        return new String(escaped, 0, size);
+    }
+
+    /**
+     * Turn special characters into HTML character references, writing the result directly.
+     * @param input the (unescaped) input string
+     * @param out where to write the escaped string
+     * @see #htmlEscape(String)
+     */
+    public static void htmlEscape(String input, Writer out) throws IOException {
+        if (input == null) {
+            return;
+        }
+        int length = input.length();
+        int start = 0;
+        for (int i = indexOfSpecial(input, 0); i >= 0; i = indexOfSpecial(input, i + 1)) {
+            out.write(input, start, i - start);
+            out.write(references[input.charAt(i)]);
+            start = i + 1;
+        }
+        out.write(input, start, length - start);
+    }
+
+    /**
+     * @return The index of the next character having a reference, or -1
+     */
+    private static int indexOfSpecial(String input, int from) {
+        String[] references = HTML.references;
+        for (int i = from; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c < references.length && references[c] != null) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public static class HtmlCharacterEntityReferences {
@@ -142,6 +197,23 @@ public class HTML {
             return null;
         }
 
+        /**
+         * Return the references indexed by character, up to the last character having one.
+         */
+        String[] toArray() {
+            int last = 0;
+            for (char c = 0; c < 10000; c++) {
+                if (convertToReference(c) != null) {
+                    last = c;
+                }
+            }
+            String[] references = new String[last + 1];
+            for (char c = 0; c <= last; c++) {
+                references[c] = convertToReference(c);
+            }
+            return references;
+        }
+
         /**
          * Return the char mapped to the given entityReference or -1.
          */
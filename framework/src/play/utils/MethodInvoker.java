@@ -0,0 +1,325 @@
+package play.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import play.Logger;
+import play.Play;
+import play.classloading.enhancers.Enhancer;
+
+/**
+ * Direct (non reflective) method invoker.
+ *
+ * For each public method of a public class a small invoker class is generated with javassist the
+ * first time the method is called, so that actions and interceptors are dispatched with a plain
+ * method call instead of Method.invoke(). Results are rethrown as is; any other exception is wrapped
+ * in an InvocationTargetException, exactly like Method.invoke() does.
+ *
+ * Methods that can't be called directly (non public, bridge, ...) fall back to reflection.
+ * Generated invokers are dropped as soon as the application classloader state changes.
+ *
+ * Set play.invokers.generated=false to always use reflection.
+ */
+public abstract class MethodInvoker {
+
+    private static final AtomicInteger generatedCount = new AtomicInteger();
+    private static final ClassloaderCache<Method, MethodInvoker> invokers = new ClassloaderCache<Method, MethodInvoker>();
+
+    /**
+     * Invoke the method
+     * @param instance The target instance (null for static methods)
+     * @param args The arguments
+     * @return The result, boxed (null for void methods)
+     */
+    public abstract Object invoke(Object instance, Object[] args) throws Exception;
+
+    /**
+     * Retrieve (and generate if needed) the invoker for this method
+     */
+    public static MethodInvoker of(Method method) {
+        Map<Method, MethodInvoker> cache = invokers.get();
+        MethodInvoker invoker = cache.get(method);
+        if (invoker == null) {
+            invoker = create(method);
+            cache.put(method, invoker);
+        }
+        return invoker;
+    }
+
+    /**
+     * Drop all generated invokers
+     */
+    public static void clear() {
+        invokers.clear();
+    }
+
+    static MethodInvoker create(Method method) {
+        if (isGenerationEnabled() && isDirectlyInvokable(method)) {
+            try {
+                return generate(method);
+            } catch (Throwable e) {
+                Logger.debug("Cannot generate an invoker for %s (%s), using reflection", method, e);
+            }
+        }
+        return new ReflectionInvoker(method);
+    }
+
+    static boolean isGenerationEnabled() {
+        return Play.configuration == null || !"false".equals(Play.configuration.getProperty("play.invokers.generated", "true"));
+    }
+
+    static boolean isDirectlyInvokable(Method method) {
+        Class<?> clazz = method.getDeclaringClass();
+        if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(clazz.getModifiers())) {
+            return false;
+        }
+        if (method.isBridge() || method.isSynthetic() || clazz.isAnonymousClass() || clazz.isLocalClass()) {
+            return false;
+        }
+        // Nested classes must be public all the way up
+        for (Class<?> c = clazz.getEnclosingClass(); c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        for (Class<?> type : method.getParameterTypes()) {
+            if (!isVisible(type)) {
+                return false;
+            }
+        }
+        return isVisible(method.getReturnType());
+    }
+
+    private static boolean isVisible(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+    }
+
+    static MethodInvoker generate(Method method) throws Exception {
+        Class<?> clazz = method.getDeclaringClass();
+        ClassLoader parent = clazz.getClassLoader() != null ? clazz.getClassLoader() : MethodInvoker.class.getClassLoader();
+
+        ClassPool classPool = new ClassPool();
+        classPool.appendSystemPath();
+        classPool.appendClassPath(new LoaderClassPath(MethodInvoker.class.getClassLoader()));
+        classPool.appendClassPath(new LoaderClassPath(parent));
+        if (Play.classes != null) {
+            classPool.appendClassPath(new Enhancer.ApplicationClassesClasspath());
+        }
+
+        String name = MethodInvoker.class.getName() + "$Generated$" + generatedCount.incrementAndGet();
+        CtClass ctClass = classPool.makeClass(name);
+        ctClass.setSuperclass(classPool.get(MethodInvoker.class.getName()));
+        ctClass.addMethod(CtNewMethod.make(invokeSource(method), ctClass));
+        byte[] bytecode = ctClass.toBytecode();
+        ctClass.detach();
+
+        Class<?> invokerClass = new InvokerClassloader(parent).define(name, bytecode);
+        return (MethodInvoker) invokerClass.newInstance();
+    }
+
+    static String invokeSource(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        StringBuilder src = new StringBuilder();
+        src.append("public Object invoke(Object instance, Object[] args) throws Exception {");
+        src.append("if ($2 == null ? ").append(types.length).append(" != 0 : $2.length != ").append(types.length).append(") {");
+        src.append("throw new IllegalArgumentException(\"wrong number of arguments\");");
+        src.append("}");
+
+        // Arguments are converted outside of the try block: conversion errors are not wrapped
+        StringBuilder call = new StringBuilder();
+        if (Modifier.isStatic(method.getModifiers())) {
+            call.append(typeName(method.getDeclaringClass()));
+        } else {
+            src.append(typeName(method.getDeclaringClass())).append(" target = (").append(typeName(method.getDeclaringClass())).append(") $1;");
+            call.append("target");
+        }
+        call.append('.').append(method.getName()).append('(');
+        for (int i = 0; i < types.length; i++) {
+            src.append(typeName(types[i])).append(" p").append(i).append(" = ").append(unbox(types[i], "$2[" + i + "]")).append(';');
+            if (i > 0) {
+                call.append(", ");
+            }
+            call.append('p').append(i);
+        }
+        call.append(')');
+
+        src.append("try {");
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class) {
+            src.append(call).append("; return null;");
+        } else {
+            src.append("return ").append(box(returnType, call.toString())).append(';');
+        }
+        src.append("} catch (play.mvc.results.Result e) {");
+        src.append("throw e;");
+        src.append("} catch (Throwable e) {");
+        src.append("throw new java.lang.reflect.InvocationTargetException(e);");
+        src.append("}");
+        src.append("}");
+        return src.toString();
+    }
+
+    private static String typeName(Class<?> type) {
+        if (type.isArray()) {
+            return typeName(type.getComponentType()) + "[]";
+        }
+        return type.getName().replace('$', '.');
+    }
+
+    private static String unbox(Class<?> type, String value) {
+        if (!type.isPrimitive()) {
+            return "(" + typeName(type) + ") " + value;
+        }
+        return "play.utils.MethodInvoker.to" + capitalize(type.getName()) + "(" + value + ")";
+    }
+
+    private static String box(Class<?> type, String value) {
+        if (type == boolean.class) {
+            return "Boolean.valueOf(" + value + ")";
+        }
+        if (type == byte.class) {
+            return "Byte.valueOf(" + value + ")";
+        }
+        if (type == char.class) {
+            return "Character.valueOf(" + value + ")";
+        }
+        if (type == short.class) {
+            return "Short.valueOf(" + value + ")";
+        }
+        if (type == int.class) {
+            return "Integer.valueOf(" + value + ")";
+        }
+        if (type == long.class) {
+            return "Long.valueOf(" + value + ")";
+        }
+        if (type == float.class) {
+            return "Float.valueOf(" + value + ")";
+        }
+        if (type == double.class) {
+            return "Double.valueOf(" + value + ")";
+        }
+        return value;
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    // ~~~ Unboxing helpers used by generated invokers (same rules as Method.invoke)
+
+    public static boolean toBoolean(Object o) {
+        if (o instanceof Boolean) {
+            return (Boolean) o;
+        }
+        throw argumentTypeMismatch(o);
+    }
+
+    public static char toChar(Object o) {
+        if (o instanceof Character) {
+            return (Character) o;
+        }
+        throw argumentTypeMismatch(o);
+    }
+
+    public static byte toByte(Object o) {
+        if (o instanceof Byte) {
+            return (Byte) o;
+        }
+        throw argumentTypeMismatch(o);
+    }
+
+    public static short toShort(Object o) {
+        if (o instanceof Short || o instanceof Byte) {
+            return ((Number) o).shortValue();
+        }
+        throw argumentTypeMismatch(o);
+    }
+
+    public static int toInt(Object o) {
+        if (o instanceof Integer || o instanceof Short || o instanceof Byte) {
+            return ((Number) o).intValue();
+        }
+        if (o instanceof Character) {
+            return (Character) o;
+        }
+        throw argumentTypeMismatch(o);
+    }
+
+    public static long toLong(Object o) {
+        if (o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte) {
+            return ((Number) o).longValue();
+        }
+        if (o instanceof Character) {
+            return (Character) o;
+        }
+        throw argumentTypeMismatch(o);
+    }
+
+    public static float toFloat(Object o) {
+        if (o instanceof Number && !(o instanceof Double)) {
+            return ((Number) o).floatValue();
+        }
+        if (o instanceof Character) {
+            return (Character) o;
+        }
+        throw argumentTypeMismatch(o);
+    }
+
+    public static double toDouble(Object o) {
+        if (o instanceof Number) {
+            return ((Number) o).doubleValue();
+        }
+        if (o instanceof Character) {
+            return (Character) o;
+        }
+        throw argumentTypeMismatch(o);
+    }
+
+    private static IllegalArgumentException argumentTypeMismatch(Object o) {
+        return new IllegalArgumentException(o == null ? "null value for a primitive argument" : "argument type mismatch: " + o.getClass().getName());
+    }
+
+    /**
+     * Reflection based invoker, used when no direct invoker can be generated
+     */
+    static class ReflectionInvoker extends MethodInvoker {
+
+        final Method method;
+
+        ReflectionInvoker(Method method) {
+            this.method = method;
+            if (!method.isAccessible()) {
+                method.setAccessible(true);
+            }
+        }
+
+        @Override
+        public Object invoke(Object instance, Object[] args) throws Exception {
+            return method.invoke(instance, args);
+        }
+    }
+
+    /**
+     * Child classloader holding generated invokers, so they are garbage collected
+     * together with the classes they call.
+     */
+    static class InvokerClassloader extends ClassLoader {
+
+        InvokerClassloader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
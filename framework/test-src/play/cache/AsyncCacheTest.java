@@ -0,0 +1,106 @@
+package play.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+import play.cache.NearCacheImplTest.RemoteCache;
+import play.libs.F;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class AsyncCacheTest {
+
+    @Test
+    public void getsWithinTheWindowAreCoalesced() throws Exception {
+        RemoteCache remote = new RemoteCache();
+        for (int i = 0; i < 30; i++) {
+            remote.set("key" + i, i, 0);
+        }
+        AsyncCache cache = new AsyncCache(remote, 50, 100, 1);
+        try {
+            List<F.Promise<Object>> promises = new ArrayList<F.Promise<Object>>();
+            for (int i = 0; i < 30; i++) {
+                promises.add(cache.get("key" + i));
+            }
+            F.Promise<Map<String, Object>> bulk = cache.get(new String[]{"key1", "missing"});
+            for (int i = 0; i < 30; i++) {
+                assertThat(promises.get(i).get()).isEqualTo(i);
+            }
+            assertThat(bulk.get()).hasSize(1).includes(org.fest.assertions.MapAssert.entry("key1", 1));
+            assertThat(remote.reads).isEqualTo(1);
+        } finally {
+            cache.stop();
+        }
+    }
+
+    @Test
+    public void anInvalidKeyOnlyFailsItsOwnGets() throws Exception {
+        RemoteCache remote = new RemoteCache() {
+            @Override
+            public Object get(String key) {
+                check(key);
+                return super.get(key);
+            }
+
+            @Override
+            public Map<String, Object> get(String[] keys) {
+                for (String key : keys) {
+                    check(key);
+                }
+                return super.get(keys);
+            }
+
+            private void check(String key) {
+                if (key.contains(" ")) {
+                    throw new IllegalArgumentException("Key contains invalid characters: " + key);
+                }
+            }
+        };
+        remote.set("a", "A", 0);
+        AsyncCache cache = new AsyncCache(remote, 50, 100, 1);
+        try {
+            F.Promise<Object> a = cache.get("a");
+            F.Promise<Object> invalid = cache.get("a b");
+            F.Promise<Map<String, Object>> bulk = cache.get(new String[]{"a", "b"});
+            assertThat(a.get()).isEqualTo("A");
+            assertThat(bulk.get()).hasSize(1);
+            try {
+                invalid.get();
+                throw new AssertionError("no error");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+            }
+        } finally {
+            cache.stop();
+        }
+    }
+
+    @Test
+    public void fullBatchesAreSentAtOnce() throws Exception {
+        RemoteCache remote = new RemoteCache();
+        remote.set("a", "A", 0);
+        AsyncCache cache = new AsyncCache(remote, 60000, 2, 1);
+        try {
+            F.Promise<Object> a = cache.get("a");
+            F.Promise<Object> b = cache.get("b");
+            assertThat(a.get()).isEqualTo("A");
+            assertThat(b.get()).isNull();
+        } finally {
+            cache.stop();
+        }
+    }
+
+    @Test
+    public void setsRunInTheBackground() throws Exception {
+        RemoteCache remote = new RemoteCache();
+        AsyncCache cache = new AsyncCache(remote, 0, 100, 1);
+        try {
+            assertThat(cache.set("a", "A", 10).get()).isTrue();
+            assertThat(cache.get("a").get()).isEqualTo("A");
+        } finally {
+            cache.stop();
+        }
+    }
+}
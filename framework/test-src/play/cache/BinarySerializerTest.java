@@ -0,0 +1,114 @@
+package play.cache;
+
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import play.mvc.Http;
+import play.mvc.results.RenderJson;
+import play.mvc.results.RenderText;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BinarySerializerTest {
+
+    BinarySerializer serializer = new BinarySerializer();
+
+    @Test
+    public void commonValuesRoundTrip() throws Exception {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("string", "héllo");
+        map.put("int", 42);
+        map.put("long", 42L);
+        map.put("double", 4.2);
+        map.put("boolean", true);
+        map.put("char", 'x');
+        map.put("date", new Date(1234567890L));
+        map.put("bytes", new byte[]{1, 2, 3});
+        map.put("null", null);
+        map.put("list", new ArrayList<Object>(Arrays.asList("a", 1, null)));
+        map.put("set", new TreeSet<String>(Arrays.asList("b", "a")));
+        map.put("fixedList", Arrays.asList("a", "b"));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> read = (Map<String, Object>) serializer.deserialize(serializer.serialize(map));
+        assertThat(read.getClass()).isEqualTo(LinkedHashMap.class);
+        assertThat(new ArrayList<String>(read.keySet())).isEqualTo(new ArrayList<String>(map.keySet()));
+        for (String key : map.keySet()) {
+            if (!key.equals("bytes")) {
+                assertThat(read.get(key)).as(key).isEqualTo(map.get(key));
+            }
+        }
+        assertThat((byte[]) read.get("bytes")).isEqualTo(new byte[]{1, 2, 3});
+        assertThat(read.get("set")).isInstanceOf(TreeSet.class);
+    }
+
+    @Test
+    public void isSmallerThanJavaSerialization() throws Exception {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> row = new HashMap<String, Object>();
+            row.put("id", (long) i);
+            row.put("name", "user" + i);
+            rows.add(row);
+        }
+        byte[] binary = serializer.serialize(rows);
+        assertThat(binary.length).isLessThan(new JavaSerializer().serialize(rows).length);
+        assertThat(serializer.deserialize(binary)).isEqualTo(rows);
+    }
+
+    @Test
+    public void resultsUseTheirCodec() throws Exception {
+        Http.Response response = new Http.Response();
+        response.encoding = "utf-8";
+        response.out = new ByteArrayOutputStream();
+        Http.Response.current.set(response);
+        try {
+            RenderText text = (RenderText) serializer.deserialize(serializer.serialize(new RenderText("hello")));
+            text.apply(new Http.Request(), response);
+            assertThat(new String(response.out.toByteArray(), "utf-8")).isEqualTo("hello");
+
+            byte[] json = serializer.serialize(new RenderJson(Arrays.asList(1, 2)));
+            assertThat(((RenderJson) serializer.deserialize(json)).getJson()).isEqualTo("[1,2]");
+            assertThat(json.length).isLessThan(new JavaSerializer().serialize(new RenderJson("[1,2]")).length);
+        } finally {
+            Http.Response.current.remove();
+        }
+    }
+
+    @Test
+    public void javaSerializedValuesCanBeRead() throws Exception {
+        byte[] java = new JavaSerializer().serialize(new StringBuilder("legacy").toString());
+        assertThat(serializer.deserialize(java)).isEqualTo("legacy");
+        Object other = new Point(1, 2);
+        assertThat(serializer.deserialize(serializer.serialize(other))).isEqualTo(other);
+    }
+
+    @Test
+    public void bigValuesAreCompressed() throws Exception {
+        CompressingSerializer compressing = new CompressingSerializer(serializer, 1024);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("line ").append(i % 10).append('\n');
+        }
+        byte[] compressed = compressing.serialize(text.toString());
+        assertThat(CompressingSerializer.isCompressed(compressed)).isTrue();
+        assertThat(compressed.length).isLessThan(text.length() / 10);
+        assertThat(compressing.deserialize(compressed)).isEqualTo(text.toString());
+
+        // The small values are left as written by the serializer
+        byte[] small = compressing.serialize("small");
+        assertThat(small).isEqualTo(serializer.serialize("small"));
+        assertThat(compressing.deserialize(small)).isEqualTo("small");
+        CompressingSerializer java = new CompressingSerializer(new JavaSerializer(), 1024);
+        assertThat(java.serialize("plain")).isEqualTo(new JavaSerializer().serialize("plain"));
+        assertThat(java.deserialize(new JavaSerializer().serialize("old"))).isEqualTo("old");
+    }
+}
@@ -0,0 +1,217 @@
+package play.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jamonapi.MonitorFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.Play;
+import play.cache.NearCacheImplTest.RemoteCache;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CacheAsideTest {
+
+    CacheImpl previous;
+    RemoteCache remote;
+
+    @Before
+    public void setUp() {
+        Play.configuration = new Properties();
+        previous = Cache.cacheImpl;
+        remote = new RemoteCache() {
+            @Override
+            public synchronized boolean safeAdd(String key, Object value, int expiration) {
+                return super.safeAdd(key, value, expiration);
+            }
+        };
+        Cache.cacheImpl = remote;
+    }
+
+    @After
+    public void tearDown() {
+        Cache.cacheImpl = previous;
+    }
+
+    @Test
+    public void aMissingValueIsComputedOnce() throws Exception {
+        final AtomicInteger computations = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final Callable<String> compute = new Callable<String>() {
+            public String call() throws Exception {
+                computations.incrementAndGet();
+                started.countDown();
+                Thread.sleep(200);
+                return "roles";
+            }
+        };
+        final List<Object> values = new ArrayList<Object>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 5; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    Object value = Cache.getOrElse("user:1:roles", "1mn", compute);
+                    synchronized (values) {
+                        values.add(value);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+            if (i == 0) {
+                started.await();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(computations.get()).isEqualTo(1);
+        assertThat(values).hasSize(5).containsOnly("roles");
+        assertThat(remote.values.get("user:1:roles")).isEqualTo("roles");
+        assertThat(remote.values.containsKey("user:1:roles|lease")).isFalse();
+
+        double hits = MonitorFactory.getMonitor("Cache hit: user", "hits").getHits();
+        assertThat(Cache.getOrElse("user:1:roles", "1mn", compute)).isEqualTo("roles");
+        assertThat(MonitorFactory.getMonitor("Cache hit: user", "hits").getHits()).isEqualTo(hits + 1);
+        assertThat(MonitorFactory.getMonitor("Cache compute: user", "ms.").getHits()).isGreaterThan(0);
+    }
+
+    @Test
+    public void otherNodesServeTheStaleValue() {
+        remote.set("menu|lease", Boolean.TRUE, 30);
+        remote.set("menu|stale", "old menu", 90);
+        assertThat(Cache.getOrElse("menu", "1mn", "30s", failing())).isEqualTo("old menu");
+    }
+
+    @Test
+    public void otherThreadsServeTheStaleValue() throws Exception {
+        remote.set("news|stale", "old news", 90);
+        final CountDownLatch computing = new CountDownLatch(1);
+        final CountDownLatch served = new CountDownLatch(1);
+        Thread owner = new Thread() {
+            @Override
+            public void run() {
+                Cache.getOrElse("news", "1mn", "30s", new Callable<String>() {
+                    public String call() throws Exception {
+                        computing.countDown();
+                        served.await();
+                        return "new news";
+                    }
+                });
+            }
+        };
+        owner.start();
+        computing.await();
+        try {
+            assertThat(Cache.getOrElse("news", "1mn", "30s", failing())).isEqualTo("old news");
+        } finally {
+            served.countDown();
+            owner.join();
+        }
+        assertThat(remote.values.get("news")).isEqualTo("new news");
+    }
+
+    @Test
+    public void onlyTheOwnLeaseIsReleased() {
+        String lease = CacheAside.lease("job");
+        assertThat(lease).isNotNull();
+        assertThat(CacheAside.lease("job")).isNull();
+        // expired and taken by another node
+        remote.set("job|lease", "other", 30);
+        CacheAside.release("job", lease);
+        assertThat(CacheAside.isLeased("job")).isTrue();
+        CacheAside.release("job", "other");
+        assertThat(CacheAside.isLeased("job")).isFalse();
+    }
+
+    @Test
+    public void otherNodesWaitForTheValue() {
+        remote.set("report|lease", Boolean.TRUE, 30);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                }
+                remote.set("report", "new report", 60);
+                remote.delete("report|lease");
+            }
+        }.start();
+        assertThat(Cache.getOrElse("report", "1mn", failing())).isEqualTo("new report");
+    }
+
+    @Test
+    public void slowComputationsAreNotWaitedFor() throws Exception {
+        final CountDownLatch computing = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread owner = new Thread() {
+            @Override
+            public void run() {
+                Cache.getOrElse("stats", "1mn", new Callable<String>() {
+                    public String call() throws Exception {
+                        computing.countDown();
+                        done.await();
+                        return "slow stats";
+                    }
+                });
+            }
+        };
+        owner.start();
+        computing.await();
+        try {
+            assertThat(Cache.getOrElse("stats", "1mn", new Callable<String>() {
+                public String call() {
+                    return "stats";
+                }
+            })).isEqualTo("stats");
+        } finally {
+            done.countDown();
+            owner.join();
+        }
+
+        remote.set("audit|lease", Boolean.TRUE, 30);
+        assertThat(Cache.getOrElse("audit", "1mn", new Callable<String>() {
+            public String call() {
+                return "audit";
+            }
+        })).isEqualTo("audit");
+    }
+
+    @Test
+    public void errorsAreThrownAndReleaseTheLease() {
+        try {
+            Cache.getOrElse("broken", "1mn", failing());
+            throw new AssertionError("no error");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).isEqualTo("should not be computed");
+        }
+        assertThat(remote.values.containsKey("broken|lease")).isFalse();
+        assertThat(Cache.getOrElse("broken", "1mn", new Callable<String>() {
+            public String call() {
+                return "fixed";
+            }
+        })).isEqualTo("fixed");
+    }
+
+    @Test
+    public void prefixes() {
+        assertThat(CacheAside.prefix("user:42:roles")).isEqualTo("user");
+        assertThat(CacheAside.prefix("product_12")).isEqualTo("product");
+        assertThat(CacheAside.prefix("menu")).isEqualTo("menu");
+    }
+
+    static Callable<String> failing() {
+        return new Callable<String>() {
+            public String call() {
+                throw new IllegalStateException("should not be computed");
+            }
+        };
+    }
+}
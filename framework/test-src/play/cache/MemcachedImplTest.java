@@ -0,0 +1,69 @@
+package play.cache;
+
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import net.spy.memcached.ConnectionFactory;
+import net.spy.memcached.FailureMode;
+import net.spy.memcached.HashAlgorithm;
+import org.junit.Test;
+import play.Play;
+import play.exceptions.ConfigurationException;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MemcachedImplTest {
+
+    @Test
+    public void theKeysAreSpreadAsConfigured() {
+        Play.configuration = new Properties();
+        ConnectionFactory cf = MemcachedImpl.connectionFactory();
+        assertThat(cf.getHashAlg()).isEqualTo(HashAlgorithm.NATIVE_HASH);
+        assertThat(cf.getFailureMode()).isEqualTo(FailureMode.Redistribute);
+        assertThat(cf.getOperationTimeout()).isEqualTo(1000L);
+
+        Play.configuration.setProperty("memcached.locator", "consistent");
+        Play.configuration.setProperty("memcached.failureMode", "cancel");
+        Play.configuration.setProperty("memcached.timeout", "250");
+        cf = MemcachedImpl.connectionFactory();
+        assertThat(cf.getHashAlg()).isEqualTo(HashAlgorithm.KETAMA_HASH);
+        assertThat(cf.getFailureMode()).isEqualTo(FailureMode.Cancel);
+        assertThat(cf.getOperationTimeout()).isEqualTo(250L);
+
+        Play.configuration.setProperty("memcached.failureMode", "ignore");
+        try {
+            MemcachedImpl.connectionFactory();
+            throw new AssertionError("no error");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("ignore");
+        }
+    }
+
+    @Test
+    public void hotKeysAreReadFromTheirReplicas() throws Exception {
+        Play.configuration = new Properties();
+        Play.configuration.setProperty("memcached.host", "127.0.0.1:1");
+        Play.configuration.setProperty("memcached.connections", "2");
+        Play.configuration.setProperty("memcached.replicas", "2");
+        Play.configuration.setProperty("memcached.replicas.keys", "menu., config.");
+        MemcachedImpl memcached = MemcachedImpl.getInstance(true);
+        try {
+            assertThat(memcached.clients).hasSize(2);
+            assertThat(memcached.client()).isNotSameAs(memcached.client());
+
+            assertThat(memcached.isReplicated("menu.main")).isTrue();
+            assertThat(memcached.isReplicated("config.site")).isTrue();
+            assertThat(memcached.isReplicated("user.1")).isFalse();
+            assertThat(memcached.readCopy("user.1")).isEqualTo("user.1");
+            Set<String> copies = new HashSet<String>();
+            for (int i = 0; i < 100; i++) {
+                copies.add(memcached.readCopy("menu.main"));
+            }
+            assertThat(copies).containsOnly("menu.main", "menu.main#1", "menu.main#2");
+            memcached.replicated.clear();
+            assertThat(memcached.isReplicated("menu.main")).isFalse();
+        } finally {
+            memcached.stop();
+        }
+    }
+}
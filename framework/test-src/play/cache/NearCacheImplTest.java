@@ -0,0 +1,275 @@
+package play.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class NearCacheImplTest {
+
+    List<NearCacheImpl> nodes = new ArrayList<NearCacheImpl>();
+
+    @After
+    public void tearDown() {
+        for (NearCacheImpl node : nodes) {
+            node.stop();
+        }
+    }
+
+    NearCacheImpl node(RemoteCache remote, Properties configuration) {
+        NearCacheImpl node = new NearCacheImpl(remote, configuration);
+        nodes.add(node);
+        return node;
+    }
+
+    @Test
+    public void readsAreServedLocally() {
+        RemoteCache remote = new RemoteCache();
+        NearCacheImpl cache = node(remote, configuration("version"));
+        remote.set("menu", "home,about", 0);
+
+        assertThat(cache.get("menu")).isEqualTo("home,about");
+        int reads = remote.reads;
+        assertThat(cache.get("menu")).isEqualTo("home,about");
+        assertThat(cache.get(new String[]{"menu"}).get("menu")).isEqualTo("home,about");
+        assertThat(remote.reads).isEqualTo(reads);
+    }
+
+    @Test
+    public void excludedKeysAreAlwaysRead() {
+        RemoteCache remote = new RemoteCache();
+        Properties configuration = configuration("version");
+        configuration.setProperty("memcached.nearcache.exclude", "counter., lock.");
+        NearCacheImpl cache = node(remote, configuration);
+        cache.set("counter.visits", 1, 0);
+        cache.get("counter.visits");
+        int reads = remote.reads;
+        assertThat(cache.get("counter.visits")).isEqualTo(1);
+        assertThat(remote.reads).isEqualTo(reads + 1);
+        assertThat(cache.localSize()).isZero();
+    }
+
+    @Test
+    public void entriesAreBounded() throws Exception {
+        RemoteCache remote = new RemoteCache();
+        Properties configuration = configuration("version");
+        configuration.setProperty("memcached.nearcache.maxEntries", "2");
+        NearCacheImpl cache = node(remote, configuration);
+        cache.set("a", "1", 0);
+        cache.set("b", "2", 0);
+        cache.get("a");
+        cache.set("c", "3", 0);
+        cache.awaitVersions();
+        assertThat(cache.localSize()).isEqualTo(2);
+        int reads = remote.reads;
+        cache.get("a");
+        assertThat(remote.reads).isEqualTo(reads);
+        cache.get("b");
+        assertThat(remote.reads).isEqualTo(reads + 1);
+
+        configuration.setProperty("memcached.nearcache.maxSize", "1kb");
+        cache = node(remote, configuration);
+        cache.set("big", new byte[2048], 0);
+        assertThat(cache.localSize()).isZero();
+    }
+
+    @Test
+    public void writesOfOtherNodesAreSeenThroughTheVersion() throws Exception {
+        RemoteCache remote = new RemoteCache();
+        Properties configuration = configuration("version");
+        configuration.setProperty("memcached.nearcache.versionCheck", "0s");
+        NearCacheImpl node1 = node(remote, configuration);
+        NearCacheImpl node2 = node(remote, configuration);
+        node1.set("roles", "admin", 0);
+        node1.awaitVersions();
+        assertThat(node2.get("roles")).isEqualTo("admin");
+
+        node1.set("roles", "guest", 0);
+        assertThat(node1.get("roles")).isEqualTo("guest");
+        node1.awaitVersions();
+        // versionCheck=0s: the version is read again on each access
+        assertThat(node2.get("roles")).isEqualTo("guest");
+        node2.delete("roles");
+        node2.awaitVersions();
+        assertThat(node1.get("roles")).isNull();
+    }
+
+    @Test
+    public void writesOnlyDropTheEntriesWithTheSamePrefix() throws Exception {
+        RemoteCache remote = new RemoteCache();
+        Properties configuration = configuration("version");
+        configuration.setProperty("memcached.nearcache.versionCheck", "0s");
+        NearCacheImpl node1 = node(remote, configuration);
+        NearCacheImpl node2 = node(remote, configuration);
+        node1.set("menu:main", "home", 0);
+        node1.set("user:1", "Bob", 0);
+        node1.awaitVersions();
+        assertThat(node2.get("menu:main")).isEqualTo("home");
+        assertThat(node2.get("user:1")).isEqualTo("Bob");
+
+        node1.set("user:1", "Alice", 0);
+        node1.awaitVersions();
+        int reads = remote.reads;
+        assertThat(node2.get("menu:main")).isEqualTo("home");
+        // only the versions were read
+        assertThat(remote.reads).isEqualTo(reads + 1);
+        assertThat(node2.get("user:1")).isEqualTo("Alice");
+    }
+
+    @Test
+    public void writesDoNotWaitForTheVersion() throws Exception {
+        final CountDownLatch incremented = new CountDownLatch(1);
+        RemoteCache remote = new RemoteCache() {
+            @Override
+            public synchronized long incr(String key, int by) {
+                try {
+                    incremented.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return super.incr(key, by);
+            }
+        };
+        NearCacheImpl cache = node(remote, configuration("version"));
+        for (int i = 0; i < 100; i++) {
+            cache.set("user:" + i, "user " + i, 0);
+        }
+        assertThat(cache.get("user:42")).isEqualTo("user 42");
+        assertThat(cache.localSize()).isEqualTo(100);
+        incremented.countDown();
+        cache.awaitVersions();
+        // the writes made while an increment was waiting shared it: one or two increments
+        assertThat(Long.parseLong(remote.values.get(NearCacheImpl.VERSION_KEY + "user").toString())).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    public void valuesAreWeighedWithoutBeingSerialized() {
+        assertThat(NearCacheImpl.weigh("abc")).isEqualTo(46);
+        assertThat(NearCacheImpl.weigh(new byte[1000])).isEqualTo(1016);
+        Map<String, String> map = new HashMap<String, String>();
+        for (int i = 0; i < 100; i++) {
+            map.put("k" + i, "value");
+        }
+        assertThat(NearCacheImpl.weigh(map)).isGreaterThan(100 * 2 * 40);
+        assertThat(NearCacheImpl.weigh(new StringBuilder("not estimated"))).isGreaterThan(0);
+        assertThat(NearCacheImpl.weigh(new Object())).isEqualTo(-1);
+    }
+
+    @Test
+    public void writesOfOtherNodesAreBroadcast() {
+        RemoteCache remote = new RemoteCache();
+        NearCacheImpl node1 = node(remote, configuration("broadcast"));
+        NearCacheImpl node2 = node(remote, configuration("broadcast"));
+        try {
+            node1.set("roles", "admin", 0);
+            assertThat(node2.get("roles")).isEqualTo("admin");
+            int reads = remote.reads;
+            node1.set("roles", "guest", 0);
+            assertThat(node1.get("roles")).isEqualTo("guest");
+            assertThat(remote.reads).isEqualTo(reads);
+            assertThat(node2.get("roles")).isEqualTo("guest");
+            node2.clear();
+            assertThat(node1.localSize()).isZero();
+        } finally {
+            node1.stop();
+            node2.stop();
+        }
+    }
+
+    static Properties configuration(String invalidation) {
+        Properties configuration = new Properties();
+        configuration.setProperty("memcached.nearcache.invalidation", invalidation);
+        return configuration;
+    }
+
+    /**
+     * Stands in for memcached
+     */
+    public static class RemoteCache implements CacheImpl {
+
+        public final Map<String, Object> values = new ConcurrentHashMap<String, Object>();
+        int reads;
+
+        public void add(String key, Object value, int expiration) {
+            safeAdd(key, value, expiration);
+        }
+
+        public boolean safeAdd(String key, Object value, int expiration) {
+            if (values.containsKey(key)) {
+                return false;
+            }
+            values.put(key, value);
+            return true;
+        }
+
+        public void set(String key, Object value, int expiration) {
+            values.put(key, value);
+        }
+
+        public boolean safeSet(String key, Object value, int expiration) {
+            set(key, value, expiration);
+            return true;
+        }
+
+        public void replace(String key, Object value, int expiration) {
+            safeReplace(key, value, expiration);
+        }
+
+        public boolean safeReplace(String key, Object value, int expiration) {
+            if (!values.containsKey(key)) {
+                return false;
+            }
+            values.put(key, value);
+            return true;
+        }
+
+        public Object get(String key) {
+            reads++;
+            return values.get(key);
+        }
+
+        public Map<String, Object> get(String[] keys) {
+            reads++;
+            Map<String, Object> result = new HashMap<String, Object>();
+            for (String key : keys) {
+                if (values.containsKey(key)) {
+                    result.put(key, values.get(key));
+                }
+            }
+            return result;
+        }
+
+        public synchronized long incr(String key, int by) {
+            // like memcached, a missing counter is created
+            long value = values.containsKey(key) ? Long.parseLong(values.get(key).toString()) + by : 0;
+            values.put(key, String.valueOf(value));
+            return value;
+        }
+
+        public synchronized long decr(String key, int by) {
+            return incr(key, -by);
+        }
+
+        public void clear() {
+            values.clear();
+        }
+
+        public void delete(String key) {
+            values.remove(key);
+        }
+
+        public boolean safeDelete(String key) {
+            return values.remove(key) != null;
+        }
+
+        public void stop() {
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package play.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class OffHeapCacheImplTest {
+
+    @Test
+    public void valuesAreStoredOffHeap() {
+        OffHeapCacheImpl cache = new OffHeapCacheImpl(64 * 1024, 64);
+        List<String> list = new ArrayList<String>(Arrays.asList("a", "b"));
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            big.append(i);
+        }
+        cache.set("list", list, 0);
+        cache.set("big", big.toString(), 0);
+        assertThat(cache.get("list")).isEqualTo(list);
+        assertThat(cache.get("big")).isEqualTo(big.toString());
+        assertThat(cache.get("missing")).isNull();
+
+        assertThat(cache.safeAdd("list", "other", 0)).isFalse();
+        assertThat(cache.safeReplace("missing", "other", 0)).isFalse();
+        assertThat(cache.safeReplace("list", "other", 0)).isTrue();
+        assertThat(cache.get("list")).isEqualTo("other");
+
+        cache.delete("big");
+        assertThat(cache.get("big")).isNull();
+        cache.clear();
+        assertThat(cache.count()).isZero();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void incrAndDecrKeepTheExpiration() throws Exception {
+        OffHeapCacheImpl cache = new OffHeapCacheImpl(64 * 1024, 64);
+        assertThat(cache.incr("counter", 1)).isEqualTo(-1);
+        cache.add("counter", 1, 1);
+        assertThat(cache.incr("counter", 4)).isEqualTo(5);
+        assertThat(cache.decr("counter", 3)).isEqualTo(2);
+        assertThat(cache.get("counter")).isEqualTo(2L);
+        Thread.sleep(1100);
+        assertThat(cache.get("counter")).isNull();
+    }
+
+    @Test
+    public void theLeastRecentlyReadEntriesAreEvicted() {
+        OffHeapCacheImpl cache = new OffHeapCacheImpl(16 * 1024, 1024);
+        byte[] value = new byte[900];
+        for (int i = 0; i < 16; i++) {
+            cache.set("key" + i, value, 0);
+        }
+        assertThat(cache.count()).isEqualTo(16);
+        cache.get("key0");
+        cache.set("key16", value, 0);
+        assertThat(cache.count()).isEqualTo(16);
+        assertThat(cache.get("key0")).isNotNull();
+        assertThat(cache.get("key1")).isNull();
+        assertThat(cache.size()).isEqualTo(16 * 1024);
+
+        // A value bigger than the whole cache is refused
+        byte[] huge = new byte[32 * 1024];
+        new Random(0).nextBytes(huge);
+        assertThat(cache.safeSet("huge", huge, 0)).isFalse();
+    }
+
+    @Test
+    public void concurrentAccesses() throws Exception {
+        final OffHeapCacheImpl cache = new OffHeapCacheImpl(32 * 1024, 256);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int n = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            String key = "key" + (i % 50);
+                            String value = key + "-" + n + "-" + i;
+                            cache.set(key, value, 0);
+                            Object read = cache.get(key);
+                            if (read != null && !((String) read).startsWith(key + "-")) {
+                                throw new AssertionError(read);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(error.get()).isNull();
+    }
+}
@@ -0,0 +1,65 @@
+package play.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import play.mvc.Http;
+import play.mvc.results.RenderText;
+
+/**
+ * Compares the cache serializers on typical values (not run with the tests):
+ *
+ * java -cp ... play.cache.SerializerBenchmark
+ */
+public class SerializerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Http.Response.current.set(new Http.Response());
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("string", "Lorem ipsum dolor sit amet, consectetur adipiscing elit");
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 50; i++) {
+            Map<String, Object> row = new HashMap<String, Object>();
+            row.put("id", (long) i);
+            row.put("name", "user" + i);
+            row.put("active", i % 2 == 0);
+            rows.add(row);
+        }
+        values.put("rows", rows);
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            page.append("<li class=\"item\">Item ").append(i).append("</li>\n");
+        }
+        values.put("result", new RenderText(page));
+
+        CacheSerializer[] serializers = {new JavaSerializer(), new BinarySerializer(),
+            new CompressingSerializer(new BinarySerializer(), 16384), new CompressingSerializer(new BinarySerializer(), 1024)};
+        String[] names = {"java", "binary", "binary+deflate>16kb", "binary+deflate>1kb"};
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            for (int s = 0; s < serializers.length; s++) {
+                run(value.getKey(), names[s], serializers[s], value.getValue());
+            }
+        }
+    }
+
+    static void run(String value, String name, CacheSerializer serializer, Object o) throws Exception {
+        int iterations = 20000;
+        byte[] bytes = null;
+        for (int i = 0; i < iterations; i++) {
+            serializer.deserialize(serializer.serialize(o));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes = serializer.serialize(o);
+        }
+        long serialized = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            serializer.deserialize(bytes);
+        }
+        long deserialized = System.nanoTime();
+        System.out.println(String.format("%-8s %-20s %7d bytes  write %6.2f us  read %6.2f us", value, name, bytes.length,
+                (serialized - start) / 1000.0 / iterations, (deserialized - serialized) / 1000.0 / iterations));
+    }
+}
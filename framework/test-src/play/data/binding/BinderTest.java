@@ -262,6 +262,47 @@ public class BinderTest {
         assertThat(binded).isEqualTo(original);
     }
 
+    public static class Money {
+        public final long cents;
+
+        public Money(long cents) {
+            this.cents = cents;
+        }
+    }
+
+    @Test
+    public void registered_binders_replace_resolved_binding_plans() throws Exception {
+        // resolve (and cache) the binding plan of Money before any binder is registered
+        assertThat(Binder.directBind("12.50", Money.class)).isNull();
+
+        try {
+            Binder.register(Money.class, new TypeBinder<Money>() {
+                public Object bind(String name, Annotation[] annotations, String value, Class actualClass, java.lang.reflect.Type genericType) {
+                    return new Money(Math.round(Double.parseDouble(value) * 100));
+                }
+            });
+            assertThat(((Money) Binder.directBind("12.50", Money.class)).cents).isEqualTo(1250L);
+        } finally {
+            Binder.supportedTypes.remove(Money.class);
+            Binder.directBindingPlans.clear();
+        }
+        assertThat(Binder.directBind("12.50", Money.class)).isNull();
+    }
+
+    @Test
+    public void bean_properties_are_bound_through_cached_wrappers() throws Exception {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("data1.a", new String[]{"x"});
+        params.put("data1.b", new String[]{"7"});
+        RootParamNode root = ParamNode.convert(params);
+
+        Data1 first = (Data1) Binder.bind(root, "data1", Data1.class, Data1.class, noAnnotations);
+        Data1 second = (Data1) Binder.bind(root, "data1", Data1.class, Data1.class, noAnnotations);
+        assertThat(first).isEqualTo(second);
+        assertThat(first.b).isEqualTo(7);
+        assertThat(BeanWrapper.forClass(Data1.class)).isSameAs(BeanWrapper.forClass(Data1.class));
+    }
+
     /**
      * Transforms map from Unbinder to Binder
      * @param r map filled by Unbinder
@@ -0,0 +1,63 @@
+package play.data.binding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ParamNodeTest {
+
+    @Test
+    public void allKeySyntaxesResolveToTheSameTree() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("a.b.c", new String[]{"1"});
+        params.put("a[b].d", new String[]{"2"});
+        params.put("a[b][e]", new String[]{"3"});
+        params.put("a.b[f]", new String[]{"4"});
+        params.put("x", new String[]{"5"});
+        RootParamNode root = ParamNode.convert(params);
+
+        ParamNode b = root.getChild("a.b");
+        assertThat(b.getAllChildrenKeys()).containsOnly("c", "d", "e", "f");
+        assertThat(root.getChild("a").getChild("b").getChild("e").getFirstValue(null)).isEqualTo("3");
+        assertThat(root.getChild("a[b][f]").getOriginalKey()).isEqualTo("a.b[f]");
+        assertThat(root.getChild("x").getValues()).isEqualTo(new String[]{"5"});
+        assertThat(root.getChild("a.b.z")).isNull();
+        assertThat(root.getChild("a.b.z", true).getName()).isEqualTo("a.b.z");
+    }
+
+    @Test
+    public void edgeCasesMatchStringSplit() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("[lead]", new String[]{"1"});
+        params.put("trail.", new String[]{"2"});
+        params.put("", new String[]{"3"});
+        params.put("...", new String[]{"4"});
+        params.put("empty", new String[0]);
+        RootParamNode root = ParamNode.convert(params);
+
+        assertThat(root.getChild("").getValues()).isEqualTo(new String[]{"3"});
+        assertThat(root.getChild("").getChild("lead").getValues()).isEqualTo(new String[]{"1"});
+        assertThat(root.getChild("trail").getValues()).isEqualTo(new String[]{"2"});
+        assertThat(root.getValues()).isEqualTo(new String[]{"4"});
+        assertThat(root.getChild("empty").getValues()).isNull();
+    }
+
+    @Test
+    public void removedChildrenCanBeRestored() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("user.name", new String[]{"bob"});
+        params.put("user.id", new String[]{"1"});
+        RootParamNode root = ParamNode.convert(params);
+
+        List<ParamNode.RemovedNode> removed = new ArrayList<ParamNode.RemovedNode>();
+        assertThat(root.getChild("user").removeChild("id", removed)).isTrue();
+        assertThat(root.getChild("user.id")).isNull();
+        ParamNode.restoreRemovedChildren(removed);
+        assertThat(root.getChild("user.id").getFirstValue(null)).isEqualTo("1");
+    }
+}
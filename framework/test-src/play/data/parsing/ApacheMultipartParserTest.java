@@ -0,0 +1,178 @@
+package play.data.parsing;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import play.PlayBuilder;
+import play.data.Upload;
+import play.mvc.Http;
+import play.mvc.results.Status;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ApacheMultipartParserTest {
+
+    static final String BODY = "--XX\r\n"
+            + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+            + "été\r\n"
+            + "--XX\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"hello.txt\"\r\n"
+            + "Content-Type: text/plain\r\n\r\n"
+            + "hello world\r\n"
+            + "--XX\r\n"
+            + "Content-Disposition: form-data; name=\"ignored\"; filename=\"ignored.txt\"\r\n\r\n"
+            + "dropped\r\n"
+            + "--XX--\r\n";
+
+    static class MemorySink implements UploadSink {
+
+        public Upload store(String fieldName, String fileName, String contentType, InputStream data) throws IOException {
+            byte[] content = IOUtils.toByteArray(data);
+            if (fieldName.equals("ignored")) {
+                return null;
+            }
+            return new StoredUpload(fieldName, fileName, contentType, content);
+        }
+    }
+
+    static class StoredUpload implements Upload {
+
+        final String fieldName;
+        final String fileName;
+        final String contentType;
+        final byte[] content;
+
+        StoredUpload(String fieldName, String fileName, String contentType, byte[] content) {
+            this.fieldName = fieldName;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.content = content;
+        }
+
+        public byte[] asBytes() {
+            return content;
+        }
+
+        public InputStream asStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        public Long getSize() {
+            return (long) content.length;
+        }
+
+        public boolean isInMemory() {
+            return true;
+        }
+
+        public File asFile() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private void init(Properties configuration) {
+        new PlayBuilder().withConfiguration(configuration).build();
+        Http.Request.current.remove();
+        new PlayBuilder().initMvcObject();
+        Http.Request.current().encoding = "utf-8";
+        Http.Request.current().headers.put("content-type", new Http.Header("content-type", "multipart/form-data; boundary=XX"));
+    }
+
+    private Map<String, String[]> parse() throws Exception {
+        return new ApacheMultipartParser().parse(new ByteArrayInputStream(BODY.getBytes("utf-8")));
+    }
+
+    @Test
+    public void streamsFilePartsToTheSink() throws Exception {
+        init(new Properties());
+        ApacheMultipartParser.streamTo(new MemorySink());
+        Map<String, String[]> params = parse();
+        assertThat(params.get("title")).isEqualTo(new String[]{"été"});
+        assertThat(params.get("file")).isEqualTo(new String[]{"file"});
+        assertThat(params.containsKey("ignored")).isFalse();
+
+        @SuppressWarnings("unchecked") List<Upload> uploads = (List<Upload>) Http.Request.current().args.get("__UPLOADS");
+        assertThat(uploads).hasSize(1);
+        assertThat(uploads.get(0).getFileName()).isEqualTo("hello.txt");
+        assertThat(uploads.get(0).getContentType()).isEqualTo("text/plain");
+        assertThat(new String(uploads.get(0).asBytes(), "utf-8")).isEqualTo("hello world");
+    }
+
+    @Test
+    public void theSinkCannotBeSetOnceTheBodyIsParsed() throws Exception {
+        Properties configuration = new Properties();
+        configuration.setProperty("upload.sink", MemorySink.class.getName());
+        init(configuration);
+        parse();
+        try {
+            ApacheMultipartParser.streamTo(new MemorySink());
+            fail("The sink was set after the body was parsed");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("already parsed");
+        }
+    }
+
+    @Test
+    public void usesTheConfiguredSink() throws Exception {
+        Properties configuration = new Properties();
+        configuration.setProperty("upload.sink", MemorySink.class.getName());
+        init(configuration);
+        parse();
+        @SuppressWarnings("unchecked") List<Upload> uploads = (List<Upload>) Http.Request.current().args.get("__UPLOADS");
+        assertThat(uploads.get(0)).isInstanceOf(StoredUpload.class);
+    }
+
+    @Test
+    public void rejectsTooLargeParts() throws Exception {
+        Properties configuration = new Properties();
+        configuration.setProperty("upload.maxPartSize", "5");
+        init(configuration);
+        ApacheMultipartParser.streamTo(new MemorySink());
+        try {
+            parse();
+            fail();
+        } catch (Status status) {
+            assertThat(status.getMessage()).isEqualTo("413");
+        }
+    }
+
+    @Test
+    public void rejectsTooLargeRequestsBeforeReadingThem() throws Exception {
+        Properties configuration = new Properties();
+        configuration.setProperty("upload.maxSize", "100");
+        init(configuration);
+        Http.Request.current().headers.put("content-length", new Http.Header("content-length", "1000000"));
+        try {
+            new ApacheMultipartParser().parse(new InputStream() {
+
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("the body must not be read");
+                }
+            });
+            fail();
+        } catch (Status status) {
+            assertThat(status.getMessage()).isEqualTo("413");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package play.data.parsing;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import play.PlayBuilder;
+import play.mvc.Http;
+import play.mvc.results.Status;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class UrlEncodedParserTest {
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        Http.Request.current.remove();
+        new PlayBuilder().initMvcObject();
+        Http.Request.current().encoding = "utf-8";
+    }
+
+    private Map<String, String[]> parse(String body) throws Exception {
+        return new UrlEncodedParser().parse(new ByteArrayInputStream(body.getBytes("utf-8")));
+    }
+
+    @Test
+    public void parsesAndDecodesParams() throws Exception {
+        Map<String, String[]> params = parse("a=1&b=hello+world&c=%C3%A9t%C3%A9&a=2&empty=&flag&user.name=Jo%20e");
+        assertThat(params.get("a")).isEqualTo(new String[]{"1", "2"});
+        assertThat(params.get("b")).isEqualTo(new String[]{"hello world"});
+        assertThat(params.get("c")).isEqualTo(new String[]{"été"});
+        assertThat(params.get("empty")).isEqualTo(new String[]{""});
+        assertThat(params.get("flag")).isEqualTo(new String[]{null});
+        assertThat(params.get("user.name")).isEqualTo(new String[]{"Jo e"});
+        assertThat(params.get("body")).isEqualTo(new String[]{"a=1&b=hello+world&c=%C3%A9t%C3%A9&a=2&empty=&flag&user.name=Jo%20e"});
+    }
+
+    @Test
+    public void skipsEmptyKeysAndKeepsInvalidEscapes() throws Exception {
+        Map<String, String[]> params = parse("&&=x&a=100%&b%zz=1&");
+        assertThat(params.get("=x")).isEqualTo(new String[]{null});
+        assertThat(params.get("a")).isEqualTo(new String[]{"100%"});
+        assertThat(params.get("b%zz")).isEqualTo(new String[]{"1"});
+        assertThat(params).hasSize(4);
+    }
+
+    @Test
+    public void usesProvidedCharset() throws Exception {
+        Map<String, String[]> params = parse("_charset_=ISO-8859-1&name=%E9");
+        assertThat(params.get("name")).isEqualTo(new String[]{"é"});
+    }
+
+    @Test
+    public void emptyBodyGivesNoParams() throws Exception {
+        assertThat(parse("")).isEmpty();
+    }
+
+    @Test
+    public void queryStringHasNoBody() throws Exception {
+        Map<String, String[]> params = UrlEncodedParser.parseQueryString(new ByteArrayInputStream("x=1".getBytes("utf-8")));
+        assertThat(params).hasSize(1);
+        assertThat(params.get("x")).isEqualTo(new String[]{"1"});
+    }
+
+    @Test
+    public void rejectsTooManyParams() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1001; i++) {
+            body.append("p").append(i).append("=v&");
+        }
+        try {
+            parse(body.toString());
+            fail();
+        } catch (Status status) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package play.data.validation;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import play.PlayBuilder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ActionValidationTest {
+
+    public static void simple(@Required String name, @Min(18) int age, @Max(10) Long count, @Email String email) {
+    }
+
+    public static void custom(@Required String name, @Match("[a-z]+") String code) {
+    }
+
+    public static void notValidated(String name) {
+    }
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        new PlayBuilder().initMvcObject();
+    }
+
+    @Test
+    public void appliesCommonChecksDirectly() throws Exception {
+        ActionValidation plan = plan("simple");
+        assertThat(plan.validated).isTrue();
+        assertThat(plan.checks).isNotNull();
+        plan.paramNames = new String[]{"name", "age", "count", "email"};
+
+        assertThat(plan.validate(method("simple"), new Object[]{"bob", 20, 3L, "bob@example.com"})).isEmpty();
+
+        List<Error> errors = plan.validate(method("simple"), new Object[]{" ", 12, 30L, "bob"});
+        assertThat(errors).hasSize(4);
+        assertError(errors.get(0), "name", "validation.required");
+        assertError(errors.get(1), "age", "validation.min", "18.0");
+        assertError(errors.get(2), "count", "validation.max", "10.0");
+        assertError(errors.get(3), "email", "validation.email");
+    }
+
+    @Test
+    public void otherConstraintsAreValidatedByOval() throws Exception {
+        ActionValidation plan = plan("custom");
+        assertThat(plan.checks).isNull();
+        plan.paramNames = new String[]{"name", "code"};
+
+        List<Error> errors = plan.validate(method("custom"), new Object[]{null, "ABC"});
+        assertThat(errors).hasSize(2);
+        assertError(errors.get(0), "name", "validation.required");
+        assertError(errors.get(1), "code", "validation.match", "[a-z]+");
+    }
+
+    @Test
+    public void plansAreCached() throws Exception {
+        assertThat(plan("simple")).isSameAs(plan("simple"));
+        assertThat(plan("notValidated").validated).isFalse();
+    }
+
+    private static void assertError(Error error, String key, String message, String... variables) {
+        assertThat(error.getKey()).isEqualTo(key);
+        assertThat(error.message).isEqualTo(message);
+        assertThat(error.variables).isEqualTo(variables);
+    }
+
+    private static ActionValidation plan(String name) throws Exception {
+        return ActionValidation.of(method(name));
+    }
+
+    private static Method method(String name) throws Exception {
+        for (Method method : ActionValidationTest.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+}
@@ -0,0 +1,84 @@
+package play.i18n;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MessagesTest {
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        MessagesBuilder builder = new MessagesBuilder();
+        builder.defaults.setProperty("hello", "Hello %s!");
+        builder.defaults.setProperty("count", "%d items, %.1f%%");
+        builder.defaults.setProperty("swap", "%2$s then %1$s");
+        builder.defaults.setProperty("nested", "Say &{only.default}");
+        builder.defaults.setProperty("only.default", "default");
+        builder.build();
+        Properties fr = new Properties();
+        fr.setProperty("hello", "Bonjour %s !");
+        Messages.locales.put("fr", fr);
+        Properties frCA = new Properties();
+        frCA.setProperty("only.default", "canadien");
+        Messages.locales.put("fr_CA", frCA);
+        Play.langs = Arrays.asList("fr", "fr_CA");
+        Lang.set("fr");
+    }
+
+    @After
+    public void tearDown() {
+        Messages.locales.clear();
+        Lang.current.remove();
+    }
+
+    @Test
+    public void mergesLocaleLanguageAndDefaults() {
+        assertThat(Messages.getMessage("fr_CA", "hello", "Bob")).isEqualTo("Bonjour Bob !");
+        assertThat(Messages.getMessage("fr_CA", "only.default")).isEqualTo("canadien");
+        assertThat(Messages.getMessage("fr", "only.default")).isEqualTo("default");
+        assertThat(Messages.getMessage("de", "hello", "Bob")).isEqualTo("Hello Bob!");
+        assertThat(Messages.getMessage("de", "unknown %s", "key")).isEqualTo("unknown key");
+        assertThat(Messages.all("fr_CA").getProperty("hello")).isEqualTo("Bonjour %s !");
+        assertThat(Messages.all("fr_CA")).isEqualTo(Messages.all("fr_CA")).isNotSameAs(Messages.all("fr_CA"));
+    }
+
+    @Test
+    public void formatsMessages() {
+        assertThat(Messages.getMessage("en", "hello", (Object) null)).isEqualTo("Hello null!");
+        assertThat(Messages.getMessage("en", "count", "3", 2.25)).isEqualTo(String.format(Locale.ENGLISH, "%d items, %.1f%%", 3L, 2.25));
+        assertThat(Messages.getMessage("en", "swap", "a", "b")).isEqualTo("b then a");
+        assertThat(Messages.getMessage("en", "nested")).isEqualTo("Say default");
+        assertThat(Messages.formatString(Locale.ENGLISH, "%s%n%%", "x")).isEqualTo(String.format("%s%n%%", "x"));
+    }
+
+    @Test(expected = java.util.MissingFormatArgumentException.class)
+    public void missingArgumentsAreReported() {
+        Messages.getMessage("en", "swap", "a");
+    }
+
+    @Test
+    public void bundlesAreRebuiltWhenMessagesChange() {
+        assertThat(Messages.getMessage("fr", "hello", "Bob")).isEqualTo("Bonjour Bob !");
+        Properties fr = new Properties();
+        fr.setProperty("hello", "Salut %s");
+        Messages.locales.put("fr", fr);
+        assertThat(Messages.getMessage("fr", "hello", "Bob")).isEqualTo("Salut Bob");
+        Messages.defaults.setProperty("added", "added");
+        assertThat(Messages.getMessage("fr", "added")).isEqualTo("added");
+    }
+
+    @Test
+    public void mergedMessagesAreCopied() {
+        Messages.all("fr").setProperty("hello", "changed");
+        assertThat(Messages.getMessage("fr", "hello", "Bob")).isEqualTo("Bonjour Bob !");
+    }
+}
@@ -0,0 +1,28 @@
+package play.libs;
+
+import org.junit.Test;
+import play.exceptions.ConfigurationException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class IOTest {
+
+    @Test
+    public void parsesSizes() {
+        assertThat(IO.parseSize("512", "size")).isEqualTo(512);
+        assertThat(IO.parseSize("16kb", "size")).isEqualTo(16 * 1024);
+        assertThat(IO.parseSize("32MB", "size")).isEqualTo(32 * 1024 * 1024);
+        assertThat(IO.parseSize(" 2g ", "size")).isEqualTo(2L * 1024 * 1024 * 1024);
+    }
+
+    @Test
+    public void badSizesNameTheSetting() {
+        try {
+            IO.parseSize("lots", "cache.offheap.size");
+            fail("The size was parsed");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("cache.offheap.size");
+        }
+    }
+}
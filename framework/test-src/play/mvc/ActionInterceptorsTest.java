@@ -0,0 +1,109 @@
+package play.mvc;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.classloading.ApplicationClassloaderState;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ActionInterceptorsTest {
+
+    public static class Shop {
+
+        @play.mvc.Before(priority = 2)
+        static void second() {
+        }
+
+        @play.mvc.Before(priority = 1)
+        static void first() {
+        }
+
+        @play.mvc.Before(only = "Shop.checkout")
+        static void authenticate() {
+        }
+
+        @After(unless = {"Shop.index", "Shop.list"})
+        static void audit() {
+        }
+
+        @After
+        static void log() {
+        }
+
+        @Finally
+        static void cleanup(Throwable error) {
+        }
+
+        @Finally(only = "Shop.checkout")
+        static void release() {
+        }
+
+        @Catch(value = IOException.class, priority = 1)
+        static void io(Throwable error) {
+        }
+
+        @Catch(priority = 2)
+        static void any(Throwable error) {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+    }
+
+    @Test
+    public void beforesAreSortedByPriorityAndFiltered() {
+        assertThat(names(ActionInterceptors.get(Shop.class, "Shop.index").befores)).containsExactly("first", "second");
+        assertThat(names(ActionInterceptors.get(Shop.class, "Shop.checkout").befores)).containsExactly("authenticate", "first", "second");
+    }
+
+    @Test
+    public void aftersAreFilteredWithUnless() {
+        assertThat(names(ActionInterceptors.get(Shop.class, "Shop.index").afters)).containsOnly("log");
+        assertThat(names(ActionInterceptors.get(Shop.class, "Shop.checkout").afters)).containsOnly("audit", "log");
+    }
+
+    @Test
+    public void finalliesKnowWhetherTheyTakeTheError() {
+        ActionInterceptors interceptors = ActionInterceptors.get(Shop.class, "Shop.checkout");
+        List<String> finallies = names(interceptors.finallies);
+        assertThat(finallies).containsOnly("cleanup", "release");
+        assertThat(interceptors.finallyWithThrowable[finallies.indexOf("cleanup")]).isTrue();
+        assertThat(interceptors.finallyWithThrowable[finallies.indexOf("release")]).isFalse();
+        assertThat(names(ActionInterceptors.get(Shop.class, "Shop.index").finallies)).containsExactly("cleanup");
+    }
+
+    @Test
+    public void catchesApplyToEveryActionWithTheirExceptions() {
+        ActionInterceptors interceptors = ActionInterceptors.get(Shop.class, "Shop.index");
+        assertThat(names(interceptors.catches)).containsExactly("io", "any");
+        assertThat(interceptors.catchExceptions[0]).isEqualTo(new Class<?>[]{IOException.class});
+        assertThat(interceptors.catchExceptions[1]).isEqualTo(new Class<?>[]{Exception.class});
+    }
+
+    @Test
+    public void interceptorsAreResolvedAgainAfterAReload() {
+        ActionInterceptors interceptors = ActionInterceptors.get(Shop.class, "Shop.index");
+        assertThat(ActionInterceptors.get(Shop.class, "Shop.index")).isSameAs(interceptors);
+        assertThat(ActionInterceptors.get(Shop.class, "Shop.list")).isNotSameAs(interceptors);
+
+        Play.classloader.currentState = new ApplicationClassloaderState();
+        assertThat(ActionInterceptors.get(Shop.class, "Shop.index")).isNotSameAs(interceptors);
+    }
+
+    private static List<String> names(Method[] methods) {
+        List<String> names = new ArrayList<String>();
+        for (Method method : methods) {
+            names.add(method.getName());
+        }
+        return names;
+    }
+}
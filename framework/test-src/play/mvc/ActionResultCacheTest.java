@@ -0,0 +1,187 @@
+package play.mvc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.PlayBuilder;
+import play.cache.Cache;
+import play.cache.CacheAside;
+import play.cache.CacheFor;
+import play.cache.EhCacheImpl;
+import play.cache.NearCacheImplTest.RemoteCache;
+import play.mvc.results.NotModified;
+import play.mvc.results.Ok;
+import play.mvc.results.Result;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ActionResultCacheTest {
+
+    @CacheFor("1h")
+    public void simple() {
+    }
+
+    @CacheFor(value = "1h", vary = "Accept-Encoding", varyFormat = true)
+    public void variants() {
+    }
+
+    @CacheFor(value = "1h", staleWhileRevalidate = "1mn", staleIfError = "1h")
+    public void stale() {
+    }
+
+    @CacheFor(value = "1h", tags = {"products", "product:{id}"})
+    public void tagged() {
+    }
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        Http.Request.current.remove();
+        Http.Response.current.remove();
+        new PlayBuilder().initMvcObject();
+        Http.Request.current().url = "/test";
+        Cache.forcedCacheImpl = EhCacheImpl.getInstance() != null ? EhCacheImpl.getInstance() : EhCacheImpl.newInstance();
+        Cache.init();
+        Cache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        Cache.forcedCacheImpl = null;
+    }
+
+    private ActionResultCache cache(String action) throws Exception {
+        return new ActionResultCache(getClass().getMethod(action).getAnnotation(CacheFor.class), Http.Request.current(), Http.Response.current());
+    }
+
+    @Test
+    public void cachesResultsWithAnEtag() throws Exception {
+        ActionResultCache cache = cache("simple");
+        assertThat(cache.lookup()).isNull();
+        Ok ok = new Ok();
+        cache.store(ok);
+        cache.release();
+        String etag = Http.Response.current().getHeader("ETag");
+        assertThat(etag).isNotNull();
+
+        assertThat(cache("simple").lookup()).isSameAs(ok);
+
+        Http.Request.current().headers.put("if-none-match", new Http.Header("if-none-match", etag));
+        assertThat(cache("simple").lookup()).isInstanceOf(NotModified.class);
+    }
+
+    @Test
+    public void tagsInvalidateResults() throws Exception {
+        Http.Request request = Http.Request.current();
+        request.params.put("id", "42");
+        ActionResultCache cache = cache("tagged");
+        assertThat(cache.key).isEqualTo(cache("tagged").key);
+        assertThat(cache.lookup()).isNull();
+        Ok ok = new Ok();
+        cache.store(ok);
+        cache.release();
+        assertThat(cache("tagged").lookup()).isSameAs(ok);
+        request.params.put("id", "43");
+        String other = cache("tagged").key;
+
+        Cache.invalidate("product:42");
+        request.params.put("id", "42");
+        assertThat(cache("tagged").key).isNotEqualTo(cache.key);
+        assertThat(cache("tagged").lookup()).isNull();
+        request.params.put("id", "43");
+        assertThat(cache("tagged").key).isEqualTo(other);
+
+        Cache.invalidate("products");
+        assertThat(cache("tagged").key).isNotEqualTo(other);
+        assertThat(ActionResultCache.tag("product:{id}/{missing}", request)).isEqualTo("product:43/");
+    }
+
+    @Test
+    public void tagsFromParametersMakeValidKeys() throws Exception {
+        RemoteCache remote = new RemoteCache();
+        Cache.cacheImpl = remote;
+        Http.Request request = Http.Request.current();
+        request.params.put("id", "a b\nc");
+        String key = cache("tagged").key;
+        assertThat(cache("tagged").key).isEqualTo(key);
+        for (String stored : remote.values.keySet()) {
+            assertThat(stored).doesNotMatch("(?s).*\\s.*");
+        }
+        Cache.invalidate("product:a b\nc");
+        assertThat(cache("tagged").key).isNotEqualTo(key);
+    }
+
+    @Test
+    public void keysDependOnVariants() throws Exception {
+        Http.Request request = Http.Request.current();
+        request.format = "html";
+        request.headers.put("accept-encoding", new Http.Header("accept-encoding", "gzip"));
+        String gzip = cache("variants").key;
+        request.headers.put("accept-encoding", new Http.Header("accept-encoding", "identity"));
+        String identity = cache("variants").key;
+        request.format = "json";
+        String json = cache("variants").key;
+        assertThat(gzip).isNotEqualTo(identity);
+        assertThat(identity).isNotEqualTo(json);
+        assertThat(cache("simple").key).isEqualTo("urlcache:/test");
+    }
+
+    @Test
+    public void keysAreValidMemcachedKeys() throws Exception {
+        Http.Request request = Http.Request.current();
+        request.headers.put("accept-encoding", new Http.Header("accept-encoding", "gzip, deflate"));
+        String spaces = cache("variants").key;
+        assertThat(spaces).startsWith("urlcache:").doesNotMatch(".*\\s.*");
+        request.headers.put("accept-encoding", new Http.Header("accept-encoding", "gzip,  deflate"));
+        assertThat(cache("variants").key).isNotEqualTo(spaces);
+
+        request.url = "/test?" + new String(new char[300]).replace('\0', 'x');
+        assertThat(cache("simple").key.length()).isLessThan(250);
+        assertThat(Cache.safeKey("user:42")).isEqualTo("user:42");
+        assertThat(Cache.safeKey("a key")).startsWith("hash:");
+    }
+
+    @Test
+    public void servesStaleResultsWhileOneRequestRecomputes() throws Exception {
+        Ok previous = new Ok();
+        storeExpired("stale", previous);
+
+        ActionResultCache computing = cache("stale");
+        assertThat(computing.lookup()).isNull();
+        assertThat(cache("stale").lookup()).isSameAs(previous);
+        Result fallback = computing.fallback(new RuntimeException("boom"));
+        assertThat(fallback).isSameAs(previous);
+        computing.release();
+
+        assertThat(cache("stale").lookup()).isNull();
+    }
+
+    @Test
+    public void requestsWaitBrieflyForAResultComputedElsewhere() throws Exception {
+        ActionResultCache computing = cache("simple");
+        assertThat(computing.lookup()).isNull();
+
+        long start = System.currentTimeMillis();
+        assertThat(cache("simple").lookup()).isNull();
+        assertThat(System.currentTimeMillis() - start).isLessThan(CacheAside.LEASE * 1000L);
+        computing.release();
+    }
+
+    @Test
+    public void errorsAreNotHiddenWithoutStaleResult() throws Exception {
+        ActionResultCache cache = cache("simple");
+        assertThat(cache.lookup()).isNull();
+        assertThat(cache.fallback(new RuntimeException("boom"))).isNull();
+        cache.release();
+    }
+
+    private void storeExpired(String action, Result result) throws Exception {
+        ActionResultCache.CachedResult cached = new ActionResultCache.CachedResult();
+        cached.result = result;
+        cached.etag = "\"v1\"";
+        cached.freshUntil = System.currentTimeMillis() - 1000;
+        cached.staleWhileRevalidateUntil = System.currentTimeMillis() + 60000;
+        cached.staleIfErrorUntil = System.currentTimeMillis() + 60000;
+        Cache.set(cache(action).key, cached, "1h");
+    }
+}
@@ -0,0 +1,55 @@
+package play.mvc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ParamsTest {
+
+    @Test
+    public void subSeesTheChangesMadeThroughAll() {
+        Scope.Params params = params();
+        params.put("user.name", "guillaume");
+        assertThat(params.sub("user").get("name")).isEqualTo(new String[]{"guillaume"});
+
+        // As when a continuation restores the params
+        Map<String, String[]> restored = new HashMap<String, String[]>();
+        restored.put("user.name", new String[]{"nicolas"});
+        params.all().clear();
+        params.all().putAll(restored);
+        assertThat(params.sub("user").get("name")).isEqualTo(new String[]{"nicolas"});
+    }
+
+    @Test
+    public void subSeesTheValuesReplacedThroughAll() {
+        Scope.Params params = params();
+        params.put("user.name", "guillaume");
+        Map<String, String[]> all = params.all();
+        assertThat(params.sub("user").get("name")).isEqualTo(new String[]{"guillaume"});
+
+        all.put("user.name", new String[]{"nicolas"});
+        assertThat(params.sub("user").get("name")).isEqualTo(new String[]{"nicolas"});
+    }
+
+    @Test
+    public void subSeesTheChangesMadeToData() {
+        Scope.Params params = params();
+        params.put("user.name", "guillaume");
+        assertThat(params.sub("user")).hasSize(1);
+
+        params.data.put("user.email", new String[]{"g@example.com"});
+        assertThat(params.sub("user")).hasSize(2);
+
+        params.data = new HashMap<String, String[]>();
+        params.data.put("user.name", new String[]{"nicolas"});
+        assertThat(params.sub("user").get("name")).isEqualTo(new String[]{"nicolas"});
+    }
+
+    static Scope.Params params() {
+        Scope.Params params = new Scope.Params();
+        params.requestIsParsed = true;
+        return params;
+    }
+}
@@ -0,0 +1,110 @@
+package play.mvc;
+
+import java.util.Properties;
+
+import com.jamonapi.MonitorFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.Play;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+public class RequestTimingTest {
+
+    Http.Request request;
+    RequestTiming timing;
+
+    @Before
+    public void setUp() throws Exception {
+        Play.configuration = new Properties();
+        request = new Http.Request();
+        request.action = "Application.timed";
+        request.invokedMethod = RequestTimingTest.class.getMethod("setUp");
+        request.method = "GET";
+        request.url = "/timed";
+        timing = RequestTiming.start();
+        request.timing = timing;
+        Http.Request.current.set(request);
+    }
+
+    @After
+    public void tearDown() {
+        Http.Request.current.remove();
+    }
+
+    @Test
+    public void nestedPhasesAreNotCountedTwice() throws Exception {
+        timing.switchTo(RequestTiming.OTHER);
+        int action = RequestTiming.enter(RequestTiming.ACTION);
+        Thread.sleep(30);
+        int render = RequestTiming.enter(RequestTiming.RENDER);
+        Thread.sleep(30);
+        RequestTiming.exit(render);
+        Thread.sleep(10);
+        RequestTiming.exit(action);
+        timing.finish(request);
+
+        assertThat(timing.get(RequestTiming.ACTION)).isGreaterThanOrEqualTo(40).isLessThan(60);
+        assertThat(timing.get(RequestTiming.RENDER)).isGreaterThanOrEqualTo(30).isLessThan(50);
+        double sum = 0;
+        for (int i = 0; i < RequestTiming.NAMES.length; i++) {
+            sum += timing.get(i);
+        }
+        assertThat(sum).isEqualTo(timing.total(), delta(0.001));
+    }
+
+    @Test
+    public void theTimingIsReportedOnce() throws Exception {
+        double hits = MonitorFactory.getMonitor("Request total: Application.timed", "ms.").getHits();
+        RequestTiming.enter(RequestTiming.ACTION);
+        Thread.sleep(5);
+        timing.finish(request);
+        double action = timing.get(RequestTiming.ACTION);
+        timing.finish(request);
+        RequestTiming.enter(RequestTiming.RENDER);
+        Thread.sleep(5);
+        RequestTiming.enter(RequestTiming.OTHER);
+
+        assertThat(timing.get(RequestTiming.ACTION)).isEqualTo(action);
+        assertThat(timing.get(RequestTiming.RENDER)).isZero();
+        assertThat(MonitorFactory.getMonitor("Request total: Application.timed", "ms.").getHits()).isEqualTo(hits + 1);
+        assertThat(MonitorFactory.getMonitor("Request action: Application.timed", "ms.").getHits()).isGreaterThan(0);
+    }
+
+    @Test
+    public void onlyTheActionsFoundAreMonitored() {
+        request.action = "Application.notFound";
+        request.invokedMethod = null;
+        timing.finish(request);
+        assertThat(MonitorFactory.exists("Request total: Application.notFound", "ms.")).isFalse();
+
+        try {
+            for (int i = 0; i < RequestTiming.MAX_ACTIONS; i++) {
+                RequestTiming.labels("Generated.action" + i);
+            }
+            assertThat(RequestTiming.labels("Generated.more")[RequestTiming.NAMES.length]).isEqualTo("Request total: *");
+        } finally {
+            RequestTiming.labels.clear();
+        }
+    }
+
+    @Test
+    public void serverTimingHeader() throws Exception {
+        timing.switchTo(RequestTiming.ROUTE);
+        Thread.sleep(2);
+        timing.switchTo(RequestTiming.ACTION);
+        Thread.sleep(2);
+        String header = timing.serverTiming();
+        assertThat(header).matches("parse;dur=\\d+\\.\\d\\d, route;dur=\\d+\\.\\d\\d, action;dur=\\d+\\.\\d\\d, total;dur=\\d+\\.\\d\\d");
+    }
+
+    @Test
+    public void theTimingCanBeDisabled() {
+        Play.configuration.setProperty("http.timing", "disabled");
+        assertThat(RequestTiming.start()).isNull();
+        request.timing = null;
+        assertThat(RequestTiming.enter(RequestTiming.ACTION)).isEqualTo(-1);
+        RequestTiming.exit(-1);
+    }
+}
@@ -2,12 +2,15 @@ package play.mvc;
 
 import java.lang.reflect.*;
 import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.*;
 
 import play.Play;
 import play.libs.Crypto;
 import play.PlayBuilder;
+import play.cache.Cache;
+import play.cache.EhCacheImpl;
 import play.mvc.Http.*;
 import play.mvc.Scope.Session;
 
@@ -26,18 +29,26 @@ public class SessionTest {
     }
 
     public static void setSendOnlyIfChangedConstant(boolean value) {
+        setConstant("SESSION_SEND_ONLY_IF_CHANGED", value);
+    }
+
+    public static void setConstant(String name, boolean value) {
+        setConstant(name, (Object) value);
+    }
+
+    public static void setConstant(String name, Object value) {
         try {
             /*
-             * Set the final static value Scope.SESSION_SEND_ONLY_IF_CHANGED using reflection.
+             * Set the final static value using reflection.
              */
-            Field field = Scope.class.getField("SESSION_SEND_ONLY_IF_CHANGED");
+            Field field = Scope.class.getField(name);
             field.setAccessible(true);
             Field modifiersField = Field.class.getDeclaredField("modifiers");
             modifiersField.setAccessible(true);
             modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
 
             // Set the new value
-            field.setBoolean(null, value);
+            field.set(null, value);
         } catch(Exception e) {
             throw new RuntimeException(e);
         }
@@ -105,6 +116,166 @@ public class SessionTest {
         assertNotNull(Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION"));
     }
 
+    @Test
+    public void testUnchangedSessionIsSentBackAsReceived() {
+        Play.secretKey = "0112358";
+        Play.started = true;
+        setSendOnlyIfChangedConstant(false);
+        try {
+            mockRequestAndResponse();
+            String data = "username=Bob";
+            String value = Crypto.sign(data, Play.secretKey.getBytes()) + "-" + data;
+            Cookie cookie = new Cookie();
+            cookie.name = Scope.COOKIE_PREFIX + "_SESSION";
+            cookie.value = value;
+            Request.current().cookies.put(cookie.name, cookie);
+
+            Session session = Session.restore();
+            assertEquals("Bob", session.get("username"));
+            session.put("username", "Bob");
+            assertFalse(session.changed);
+            session.save();
+            assertEquals(value, Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION").value);
+
+            // Changes made through all() are sent
+            mockRequestAndResponse();
+            Request.current().cookies.put(cookie.name, cookie);
+            session = Session.restore();
+            session.all().put("username", "Alice");
+            session.save();
+            assertTrue(Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION").value.contains("Alice"));
+
+            // A tampered cookie is dropped
+            mockRequestAndResponse();
+            cookie.value = value.replace("Bob", "Eve");
+            Request.current().cookies.put(cookie.name, cookie);
+            session = Session.restore();
+            assertNull(session.get("username"));
+            session.save();
+            assertEquals("", Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION").value);
+        } finally {
+            Play.started = false;
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCacheStore() {
+        Play.secretKey = "0112358";
+        Play.started = true;
+        setConstant("SESSION_STORE_CACHE", true);
+        setSendOnlyIfChangedConstant(true);
+        Cache.forcedCacheImpl = EhCacheImpl.getInstance() != null ? EhCacheImpl.getInstance() : EhCacheImpl.newInstance();
+        Cache.init();
+        try {
+            mockRequestAndResponse();
+            Session session = Session.restore();
+            session.put("username", "Bob");
+            session.save();
+            Cookie cookie = Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION");
+            assertFalse(cookie.value.contains("Bob"));
+            String id = cookie.value.substring(cookie.value.indexOf('-') + 1);
+            assertEquals("Bob", ((Map<?, ?>) Cache.get(Session.STORE_PREFIX + id)).get("username"));
+
+            // Unchanged sessions are not written again
+            mockRequestAndResponse();
+            Request.current().cookies.put(cookie.name, cookie);
+            session = Session.restore();
+            assertEquals("Bob", session.get("username"));
+            Map<String, String> stored = new HashMap<String, String>((Map<String, String>) Cache.get(Session.STORE_PREFIX + id));
+            stored.put("marker", "1");
+            Cache.set(Session.STORE_PREFIX + id, stored);
+            session.save();
+            assertEquals("1", ((Map<?, ?>) Cache.get(Session.STORE_PREFIX + id)).get("marker"));
+            assertNull(Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION"));
+
+            // An emptied session is removed from the cache
+            mockRequestAndResponse();
+            Request.current().cookies.put(cookie.name, cookie);
+            session = Session.restore();
+            session.clear();
+            session.save();
+            assertNull(Cache.get(Session.STORE_PREFIX + id));
+            assertEquals("", Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION").value);
+
+            // A cleared or regenerated session gets a new id
+            mockRequestAndResponse();
+            session = Session.restore();
+            session.put("username", "Bob");
+            session.save();
+            cookie = Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION");
+            id = cookie.value.substring(cookie.value.indexOf('-') + 1);
+            mockRequestAndResponse();
+            Request.current().cookies.put(cookie.name, cookie);
+            session = Session.restore();
+            session.regenerate();
+            session.save();
+            Cookie regenerated = Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION");
+            assertFalse(regenerated.value.equals(cookie.value));
+            assertNull(Cache.get(Session.STORE_PREFIX + id));
+            String newId = regenerated.value.substring(regenerated.value.indexOf('-') + 1);
+            assertEquals("Bob", ((Map<?, ?>) Cache.get(Session.STORE_PREFIX + newId)).get("username"));
+
+            mockRequestAndResponse();
+            Request.current().cookies.put(regenerated.name, regenerated);
+            session = Session.restore();
+            session.clear();
+            session.put("username", "Eve");
+            session.save();
+            assertNull(Cache.get(Session.STORE_PREFIX + newId));
+            assertFalse(Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION").value.equals(regenerated.value));
+        } finally {
+            Play.started = false;
+            setConstant("SESSION_STORE_CACHE", false);
+            Cache.forcedCacheImpl = null;
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCacheStoreCookieExpiresWithTheData() {
+        Play.secretKey = "0112358";
+        Play.started = true;
+        setConstant("SESSION_STORE_CACHE", true);
+        setConstant("COOKIE_EXPIRE", "1h");
+        setSendOnlyIfChangedConstant(false);
+        Cache.forcedCacheImpl = EhCacheImpl.getInstance() != null ? EhCacheImpl.getInstance() : EhCacheImpl.newInstance();
+        Cache.init();
+        try {
+            mockRequestAndResponse();
+            Session session = Session.restore();
+            session.put("username", "Bob");
+            session.save();
+            Cookie cookie = Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION");
+            assertEquals(Integer.valueOf(3600), cookie.maxAge);
+            String id = cookie.value.substring(cookie.value.indexOf('-') + 1);
+
+            // The data is not read: its expiration is unknown, the cookie is not extended
+            mockRequestAndResponse();
+            Request.current().cookies.put(cookie.name, cookie);
+            Session.restore().save();
+            assertNull(Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION"));
+
+            // The data is written again: the cookie is extended with it
+            Map<String, String> stored = new HashMap<String, String>((Map<String, String>) Cache.get(Session.STORE_PREFIX + id));
+            stored.put(Session.TS_KEY, String.valueOf(System.currentTimeMillis() - 3000 * 1000L));
+            Cache.set(Session.STORE_PREFIX + id, stored);
+            mockRequestAndResponse();
+            Request.current().cookies.put(cookie.name, cookie);
+            session = Session.restore();
+            assertEquals("Bob", session.get("username"));
+            session.save();
+            assertEquals(cookie.value, Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION").value);
+            assertEquals(Integer.valueOf(3600), Response.current().cookies.get(Scope.COOKIE_PREFIX + "_SESSION").maxAge);
+            assertFalse(stored.get(Session.TS_KEY).equals(((Map<?, ?>) Cache.get(Session.STORE_PREFIX + id)).get(Session.TS_KEY)));
+        } finally {
+            Play.started = false;
+            setConstant("SESSION_STORE_CACHE", false);
+            setConstant("COOKIE_EXPIRE", (Object) null);
+            Cache.forcedCacheImpl = null;
+        }
+    }
+
     @After
     public void restoreDefault() {
         final boolean SESSION_SEND_ONLY_IF_CHANGED = Play.configuration.getProperty("application.session.sendOnlyIfChanged", "false").toLowerCase().equals("true"); 
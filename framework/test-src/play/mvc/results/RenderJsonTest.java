@@ -0,0 +1,142 @@
+package play.mvc.results;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import org.junit.Before;
+import org.junit.Test;
+import play.PlayBuilder;
+import play.libs.F;
+import play.mvc.Http;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RenderJsonTest {
+
+    public static class Point {
+        int x = 1;
+        int y = 2;
+    }
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        Http.Request.current.remove();
+        Http.Response.current.remove();
+        new PlayBuilder().initMvcObject();
+    }
+
+    @Test
+    public void writesObjectsIntoTheResponse() throws Exception {
+        assertThat(render(new RenderJson(new Point()))).isEqualTo("{\"x\":1,\"y\":2}");
+        assertThat(render(new RenderJson(Arrays.asList(1, 2)))).isEqualTo("[1,2]");
+        assertThat(render(new RenderJson((Object) null))).isEqualTo("null");
+        assertThat(render(new RenderJson("{}"))).isEqualTo("{}");
+        assertThat(Http.Response.current().contentType).isEqualTo("application/json; charset=utf-8");
+    }
+
+    @Test
+    public void objectsAreSerializedWhenTheResultIsBuilt() throws Exception {
+        Point point = new Point();
+        RenderJson result = new RenderJson(point);
+        point.x = 3;
+        assertThat(render(result)).isEqualTo("{\"x\":1,\"y\":2}");
+    }
+
+    @Test
+    public void streamsIteratorsAndClosesThem() throws Exception {
+        CloseableIterator iterator = new CloseableIterator(Arrays.<Object>asList(new Point(), null, "a"));
+        assertThat(render(new RenderJson(iterator))).isEqualTo("[{\"x\":1,\"y\":2},null,\"a\"]");
+        assertThat(iterator.closed).isTrue();
+    }
+
+    @Test
+    public void streamsIteratorsInChunksWhenSupported() throws Exception {
+        final List<Object> chunks = new ArrayList<Object>();
+        Http.Response response = Http.Response.current();
+        response.onWriteChunk(new F.Action<Object>() {
+            public void invoke(Object chunk) {
+                chunks.add(chunk);
+            }
+        });
+        List<Integer> numbers = new ArrayList<Integer>();
+        for (int i = 0; i < 10000; i++) {
+            numbers.add(i);
+        }
+        new RenderJson(numbers.iterator()).apply(Http.Request.current(), response);
+
+        assertThat(response.out.size()).isEqualTo(0);
+        assertThat(chunks.size()).isGreaterThan(1);
+        StringBuilder json = new StringBuilder();
+        for (Object chunk : chunks) {
+            json.append(new String((byte[]) chunk, "utf-8"));
+        }
+        assertThat(json.toString()).isEqualTo(RenderJson.gson().toJson(numbers));
+    }
+
+    @Test
+    public void streamedSourcesAreMaterializedWhenSerialized() throws Exception {
+        RenderJson result = new RenderJson(Arrays.asList("a", "b").iterator());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ObjectOutputStream(bytes).writeObject(result);
+        RenderJson copy = (RenderJson) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertThat(render(copy)).isEqualTo("[\"a\",\"b\"]");
+        assertThat(render(result)).isEqualTo("[\"a\",\"b\"]");
+    }
+
+    @Test
+    public void usesRegisteredAdapters() throws Exception {
+        RenderJson.registerTypeAdapter(Date.class, new JsonSerializer<Date>() {
+            public JsonElement serialize(Date date, java.lang.reflect.Type type, JsonSerializationContext context) {
+                return new JsonPrimitive(date.getTime());
+            }
+        });
+        assertThat(render(new RenderJson(new Date(42)))).isEqualTo("42");
+        assertThat(RenderJson.gson().toJson(new Date(42))).isEqualTo("42");
+    }
+
+    private static String render(RenderJson result) throws Exception {
+        Http.Response response = Http.Response.current();
+        response.out.reset();
+        result.apply(Http.Request.current(), response);
+        return new String(response.out.toByteArray(), "utf-8");
+    }
+
+    static class CloseableIterator implements Iterator<Object>, Closeable {
+
+        final Iterator<Object> iterator;
+        boolean closed;
+
+        CloseableIterator(List<Object> elements) {
+            this.iterator = elements.iterator();
+        }
+
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        public Object next() {
+            return iterator.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package play.templates;
+
+import groovy.lang.Closure;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.Play;
+import play.cache.Cache;
+import play.cache.CacheImpl;
+import play.cache.NearCacheImplTest.RemoteCache;
+import play.i18n.Lang;
+import play.mvc.Http;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FastTagsTest {
+
+    CacheImpl previous;
+    RemoteCache remote;
+
+    @Before
+    public void setUp() {
+        Play.configuration = new Properties();
+        Play.langs = Arrays.asList("en", "fr");
+        previous = Cache.cacheImpl;
+        remote = new RemoteCache();
+        Cache.cacheImpl = remote;
+        Http.Request request = new Http.Request();
+        request.format = "html";
+        Http.Request.current.set(request);
+        Lang.set("en");
+    }
+
+    @After
+    public void tearDown() {
+        Cache.cacheImpl = previous;
+        Http.Request.current.remove();
+    }
+
+    @Test
+    public void theBodyIsRenderedOnce() {
+        Body body = new Body("<p>menu</p>");
+        assertThat(cache(body, "menu")).isEqualTo("<p>menu</p>");
+        assertThat(cache(body, "menu")).isEqualTo("<p>menu</p>");
+        assertThat(body.renders).isEqualTo(1);
+        assertThat(remote.values.get("menu")).isInstanceOf(byte[].class);
+    }
+
+    @Test
+    public void theKeyCanVaryOnTheLanguageAndFormat() {
+        Body body = new Body("<p>menu</p>");
+        Map<String, Object> args = args("menu");
+        args.put("vary", Arrays.asList("lang", "format"));
+        assertThat(render(body, args)).isEqualTo("<p>menu</p>");
+        assertThat(remote.values.get("menu|lang:en|format:html")).isInstanceOf(byte[].class);
+
+        Lang.set("fr");
+        assertThat(render(body, args)).isEqualTo("<p>menu</p>");
+        assertThat(body.renders).isEqualTo(2);
+    }
+
+    @Test
+    public void cachedBytesAreWrittenAsIsToAnUtf8Output() {
+        Body body = new Body("caf\u00e9");
+        EncodedOutput out = new EncodedOutput("utf-8");
+        body.setOut(out);
+        FastTags._cache(args("cafe"), body, out, null, 1);
+        EncodedOutput again = new EncodedOutput("utf-8");
+        FastTags._cache(args("cafe"), body, again, null, 1);
+        assertThat(again.toString()).isEqualTo("caf\u00e9");
+        assertThat(body.renders).isEqualTo(1);
+
+        EncodedOutput latin = new EncodedOutput("iso-8859-1");
+        FastTags._cache(args("cafe"), body, latin, null, 1);
+        assertThat(latin.toString()).isEqualTo("caf\u00e9");
+    }
+
+    @Test
+    public void theKeyCanVaryOnASegment() {
+        Body body = new Body("offers");
+        Map<String, Object> args = args("offers");
+        args.put("vary", "lang");
+        args.put("segment", "gold");
+        assertThat(render(body, args)).isEqualTo("offers");
+        assertThat(remote.values.containsKey("offers|lang:en|segment:gold")).isTrue();
+
+        args.put("segment", "gold plan");
+        assertThat(render(body, args)).isEqualTo("offers");
+        for (String key : remote.values.keySet()) {
+            assertThat(key).doesNotContain(" ");
+        }
+    }
+
+    @Test
+    public void aStringCachedBeforeIsStillRendered() {
+        remote.set("legacy", "<p>legacy</p>", 60);
+        assertThat(cache(new Body("new"), "legacy")).isEqualTo("<p>legacy</p>");
+    }
+
+    static String cache(Body body, String key) {
+        return render(body, args(key));
+    }
+
+    static Map<String, Object> args(String key) {
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("arg", key);
+        return args;
+    }
+
+    static String render(Body body, Map<String, Object> args) {
+        StringWriter result = new StringWriter();
+        PrintWriter out = new PrintWriter(result);
+        body.setOut(out);
+        FastTags._cache(args, body, out, null, 1);
+        out.flush();
+        return result.toString();
+    }
+
+    /**
+     * Like the template owning a tag body, holds the writer the body prints to
+     */
+    public static class Template {
+
+        PrintWriter out;
+
+        public PrintWriter getOut() {
+            return out;
+        }
+
+        public void setOut(PrintWriter out) {
+            this.out = out;
+        }
+    }
+
+    public static class Body extends Closure {
+
+        final String content;
+        int renders;
+
+        Body(String content) {
+            super(new Template());
+            this.content = content;
+        }
+
+        void setOut(PrintWriter out) {
+            ((Template) getOwner()).out = out;
+        }
+
+        public Object doCall() {
+            renders++;
+            ((Template) getOwner()).out.print(content);
+            return null;
+        }
+    }
+}
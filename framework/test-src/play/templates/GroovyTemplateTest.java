@@ -3,8 +3,15 @@ package play.templates;
 import org.junit.Before;
 import org.junit.Test;
 
+import play.Play;
 import play.PlayBuilder;
+import play.libs.Files;
+import play.libs.IO;
+import play.vfs.VirtualFile;
 
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -34,6 +41,24 @@ public class GroovyTemplateTest {
 
     }
 
+    @Test
+    public void expressionsAreEscapedInHtmlTemplates() {
+        String groovySrc = "<p>${text}|${raw.raw()}|${missing}|${count}</p>";
+
+        GroovyTemplate t = new GroovyTemplate("escape.html", groovySrc);
+        new GroovyTemplateCompiler().compile(t);
+
+        Map<String, Object> args = new HashMap<String,Object>();
+        args.put("text", "Tom & <Jerry>");
+        args.put("raw", "<b>bold</b>");
+        args.put("count", 3);
+        assertThat( t.render( args ) ).isEqualTo("<p>Tom &amp; &lt;Jerry&gt;|<b>bold</b>||3</p>");
+
+        t = new GroovyTemplate("escape.txt", groovySrc);
+        new GroovyTemplateCompiler().compile(t);
+        assertThat( t.render( args ) ).isEqualTo("<p>Tom & <Jerry>|<b>bold</b>||3</p>");
+    }
+
     @Test
     public void verifyCompilingExtremelyLongLines() {
         StringBuilder longString = new StringBuilder();
@@ -124,4 +149,61 @@ public class GroovyTemplateTest {
         new GroovyTemplateCompiler().compile(groovyTemplate);
         assertEquals("123", groovyTemplate.render());
     }
+
+    @Test
+    public void verifyStreamingLayouts() throws Exception {
+        File root = new File(System.getProperty("java.io.tmpdir"), "layouts-" + System.nanoTime());
+        root.mkdirs();
+        IO.writeContent("  <html>#{doLayout /}#{get 'title' /}</html>\n", new File(root, "main.html"));
+        IO.writeContent("#{extends 'main.html' /}<body>#{doLayout /}</body>", new File(root, "page.html"));
+        IO.writeContent("#{extends 'page.html' /}#{set title:'T' /}\n  ${name}  \n", new File(root, "child.html"));
+        Play.templatesPath = new ArrayList<VirtualFile>();
+        Play.templatesPath.add(VirtualFile.open(root));
+        try {
+            Template t = TemplateLoader.load("child.html");
+            Map<String, Object> args = new HashMap<String, Object>();
+            args.put("name", "Morten");
+            String expected = "<html><body>  Morten  \n</body>T</html>";
+            assertThat(t.render(args)).isEqualTo(expected);
+
+            StringWriter out = new StringWriter();
+            t.render(args, out);
+            assertThat(out.toString()).isEqualTo(expected);
+
+            EncodedOutput encoded = new EncodedOutput("utf-8");
+            t.render(args, encoded);
+            assertThat(encoded.toString()).isEqualTo(expected);
+        } finally {
+            Files.deleteDirectory(root);
+        }
+    }
+
+    @Test
+    public void verifyTrimmingWriter() throws Exception {
+        StringWriter out = new StringWriter();
+        GroovyTemplate.TrimWriter writer = new GroovyTemplate.TrimWriter(out);
+        for (String s : new String[]{" \n ", "", " a ", "  ", "b", " \t", "c  ", "\n"}) {
+            writer.write(s);
+        }
+        writer.flush();
+        assertThat(out.toString()).isEqualTo("a   b \tc");
+    }
+
+    @Test
+    public void verifyRenderingPreEncodedText() throws Exception {
+        GroovyTemplate t = new GroovyTemplate("Template_encoded", "caf\u00e9 ${name} \u00e0 ${'\u00e9t\u00e9'}");
+        new GroovyTemplateCompiler().compile(t);
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("name", "Morten");
+        String expected = "caf\u00e9 Morten \u00e0 \u00e9t\u00e9";
+
+        for (String charset : new String[]{"utf-8", "iso-8859-1", "utf-16"}) {
+            EncodedOutput out = new EncodedOutput(charset);
+            t.render(args, out);
+            java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+            out.writeTo(bytes);
+            assertThat(bytes.toString(charset)).isEqualTo(expected);
+        }
+        assertThat(t.render(args)).isEqualTo(expected);
+    }
 }
@@ -0,0 +1,78 @@
+package play.templates;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.libs.Files;
+import play.libs.IO;
+import play.vfs.VirtualFile;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TemplateLoaderTest {
+
+    File root;
+    List<VirtualFile> previousTemplatesPath;
+    List<VirtualFile> previousRoots;
+
+    @Before
+    public void setUp() {
+        Properties configuration = new Properties();
+        configuration.setProperty("play.templates.compile.threads", "4");
+        new PlayBuilder().withConfiguration(configuration).build();
+        root = new File(System.getProperty("java.io.tmpdir"), "templates-" + System.nanoTime());
+        new File(root, "tags").mkdirs();
+        for (int i = 0; i < 20; i++) {
+            IO.writeContent("template ${" + i + " + n}", new File(root, "t" + i + ".html"));
+        }
+        IO.writeContent("tag", new File(root, "tags/tag.html"));
+        IO.writeContent("hidden", new File(root, ".hidden.html"));
+        previousTemplatesPath = Play.templatesPath;
+        previousRoots = Play.roots;
+        Play.templatesPath = new ArrayList<VirtualFile>();
+        Play.templatesPath.add(VirtualFile.open(root));
+        Play.roots = new ArrayList<VirtualFile>();
+    }
+
+    @After
+    public void tearDown() {
+        Play.templatesPath = previousTemplatesPath;
+        Play.roots = previousRoots;
+        Files.deleteDirectory(root);
+        TemplateLoader.cleanCompiledCache();
+    }
+
+    @Test
+    public void compilesAllTemplatesInParallel() {
+        List<Template> templates = TemplateLoader.getAllTemplate();
+        assertThat(templates).hasSize(21);
+        HashMap<String, Object> args = new HashMap<String, Object>();
+        args.put("n", 1);
+        for (Template template : templates) {
+            assertThat(((BaseTemplate) template).compiledTemplate).isNotNull();
+        }
+        Template template = TemplateLoader.load("t7.html");
+        assertThat(templates).contains(template);
+        assertThat(template.render(args)).isEqualTo("template 8");
+    }
+
+    @Test
+    public void warmsUpTemplates() {
+        TemplateLoader.warmup();
+        GroovyTemplate template = (GroovyTemplate) TemplateLoader.load("t3.html");
+        assertThat(template.compiledTemplate).isNotNull();
+        EncodedOutput out = new EncodedOutput("utf-8");
+        HashMap<String, Object> args = new HashMap<String, Object>();
+        args.put("n", 1);
+        template.render(args, out);
+        assertThat(out.toString()).isEqualTo("template 4");
+    }
+}
@@ -0,0 +1,29 @@
+package play.utils;
+
+import java.util.Properties;
+
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.classloading.ApplicationClassloaderState;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ClassloaderCacheTest {
+
+    @Test
+    public void entriesAreDroppedWhenTheClassloaderStateChanges() {
+        new PlayBuilder().withConfiguration(new Properties()).build();
+        ClassloaderCache<String, String> cache = new ClassloaderCache<String, String>();
+        cache.get().put("a", "1");
+        assertThat(cache.get().get("a")).isEqualTo("1");
+
+        Play.classloader.currentState = new ApplicationClassloaderState();
+        assertThat(cache.get()).isEmpty();
+        cache.get().put("b", "2");
+        assertThat(cache.get().get("b")).isEqualTo("2");
+
+        cache.clear();
+        assertThat(cache.get()).isEmpty();
+    }
+}
@@ -0,0 +1,71 @@
+package play.utils;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Compares the HTML escaping with the previous implementation on typical template values
+ * (not run with the tests):
+ *
+ * java -cp ... play.utils.HTMLBenchmark
+ */
+public class HTMLBenchmark {
+
+    static final HTML.HtmlCharacterEntityReferences references = new HTML.HtmlCharacterEntityReferences();
+
+    public static void main(String[] args) throws Exception {
+        StringBuilder paragraph = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            paragraph.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ");
+        }
+        String[] names = {"id", "name", "url", "paragraph", "markup"};
+        String[] values = {"12345", "Guillaume Bort", "/products?category=12&page=3",
+            paragraph.toString(), paragraph + "<b>\"Café\" & co</b>"};
+        // The first round warms the code up
+        for (int round = 0; round < 2; round++) {
+            for (int v = 0; v < values.length; v++) {
+                run(names[v], values[v], round > 0);
+            }
+        }
+    }
+
+    static void run(String name, String value, boolean print) throws Exception {
+        int iterations = 200000;
+        StringWriter sink = new StringWriter();
+        PrintWriter out = new PrintWriter(sink);
+        // The lengths are summed so that the calls are not optimized away
+        long length = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            length += legacyEscape(value).length();
+        }
+        long legacy = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            length += HTML.htmlEscape(value).length();
+        }
+        long escaped = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            HTML.htmlEscape(value, out);
+            sink.getBuffer().setLength(0);
+        }
+        long written = System.nanoTime();
+        if (print && length > 0) {
+            System.out.println(String.format("%-10s %5d chars  before %8.1f ns  escape %8.1f ns  write %8.1f ns", name, value.length(),
+                    (legacy - start) / (double) iterations, (escaped - legacy) / (double) iterations, (written - escaped) / (double) iterations));
+        }
+    }
+
+    static String legacyEscape(String input) {
+        StringBuffer escaped = new StringBuffer(input.length() * 2);
+        for (int i = 0; i < input.length(); i++) {
+            char character = input.charAt(i);
+            String reference = references.convertToReference(character);
+            if (reference != null) {
+                escaped.append(reference);
+            } else {
+                escaped.append(character);
+            }
+        }
+        return escaped.toString();
+    }
+}
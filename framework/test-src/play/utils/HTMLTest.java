@@ -0,0 +1,38 @@
+package play.utils;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class HTMLTest {
+
+    @Test
+    public void theInputIsReturnedWhenThereIsNothingToEscape() {
+        String text = "Nothing to escape here, 42 times.";
+        assertThat(HTML.htmlEscape(text)).isSameAs(text);
+        assertThat(HTML.htmlEscape("")).isEmpty();
+        assertThat(HTML.htmlEscape(null)).isNull();
+    }
+
+    @Test
+    public void specialCharactersAreEscaped() {
+        assertThat(HTML.htmlEscape("<a href=\"/?a=1&b=2\">")).isEqualTo("&lt;a href=&quot;/?a=1&amp;b=2&quot;&gt;");
+        assertThat(HTML.htmlEscape("Café €5 ♦")).isEqualTo("Caf&eacute; &euro;5 &diams;");
+        assertThat(HTML.htmlEscape("&")).isEqualTo("&amp;");
+        assertThat(HTML.htmlEscape("中文")).isEqualTo("中文");
+    }
+
+    @Test
+    public void everyCharacterIsEscapedAsBefore() throws Exception {
+        HTML.HtmlCharacterEntityReferences references = new HTML.HtmlCharacterEntityReferences();
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            String reference = references.convertToReference(c);
+            String expected = "a" + (reference != null ? reference : String.valueOf(c)) + "b";
+            assertThat(HTML.htmlEscape("a" + c + "b")).isEqualTo(expected);
+            StringWriter out = new StringWriter();
+            HTML.htmlEscape("a" + c + "b", out);
+            assertThat(out.toString()).isEqualTo(expected);
+        }
+    }
+}
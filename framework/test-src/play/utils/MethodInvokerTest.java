@@ -0,0 +1,121 @@
+package play.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+import play.mvc.results.Ok;
+import play.mvc.results.Result;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class MethodInvokerTest {
+
+    public static class Target {
+
+        public static String concat(String a, int b, long c, boolean d) {
+            return a + b + c + d;
+        }
+
+        public static int twice(int i) {
+            return i * 2;
+        }
+
+        public static void render() {
+            throw new Ok();
+        }
+
+        public static void fail() throws Exception {
+            throw new IllegalStateException("boom");
+        }
+
+        public static void failFast() {
+            throw new FastRuntimeException("fast");
+        }
+
+        public String hello(String name) {
+            return "hello " + name;
+        }
+
+        static String hidden() {
+            return "hidden";
+        }
+    }
+
+    @Test
+    public void generatesDirectInvokers() throws Exception {
+        MethodInvoker invoker = MethodInvoker.of(method("concat"));
+        assertThat(invoker instanceof MethodInvoker.ReflectionInvoker).isFalse();
+        assertThat(invoker.invoke(null, new Object[]{"a", 1, 2L, true})).isEqualTo("a12true");
+        assertThat(MethodInvoker.of(method("twice")).invoke(null, new Object[]{21})).isEqualTo(42);
+        assertThat(MethodInvoker.of(method("hello")).invoke(new Target(), new Object[]{"play"})).isEqualTo("hello play");
+    }
+
+    @Test
+    public void cachesInvokers() throws Exception {
+        assertThat(MethodInvoker.of(method("twice"))).isSameAs(MethodInvoker.of(method("twice")));
+    }
+
+    @Test
+    public void resultsAreNotWrapped() throws Exception {
+        try {
+            MethodInvoker.of(method("render")).invoke(null, new Object[0]);
+            fail();
+        } catch (Result result) {
+            assertThat(result).isInstanceOf(Ok.class);
+        }
+    }
+
+    @Test
+    public void exceptionsAreWrappedLikeReflection() throws Exception {
+        try {
+            MethodInvoker.of(method("fail")).invoke(null, new Object[0]);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getTargetException()).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void otherFastExceptionsAreWrapped() throws Exception {
+        try {
+            MethodInvoker.of(method("failFast")).invoke(null, new Object[0]);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getTargetException()).isInstanceOf(FastRuntimeException.class);
+        }
+    }
+
+    @Test
+    public void rejectsInvalidArguments() throws Exception {
+        try {
+            MethodInvoker.of(method("twice")).invoke(null, new Object[]{null});
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            MethodInvoker.of(method("twice")).invoke(null, new Object[0]);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void nonPublicMethodsUseReflection() throws Exception {
+        MethodInvoker invoker = MethodInvoker.of(method("hidden"));
+        assertThat(invoker).isInstanceOf(MethodInvoker.ReflectionInvoker.class);
+        assertThat(invoker.invoke(null, null)).isEqualTo("hidden");
+    }
+
+    private static Method method(String name) {
+        for (Method m : Target.class.getDeclaredMethods()) {
+            if (m.getName().equals(name)) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+}